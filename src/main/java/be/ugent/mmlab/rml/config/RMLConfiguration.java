@@ -1,6 +1,9 @@
 package be.ugent.mmlab.rml.config;
 
 import static be.ugent.mmlab.rml.config.RMLConfiguration.getCliOptions;
+import be.ugent.mmlab.rml.dataset.DatasetConfiguration;
+import be.ugent.mmlab.rml.dataset.NativeStoreDataset;
+import be.ugent.mmlab.rml.join.JoinConfiguration;
 import java.io.File;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -28,7 +31,30 @@ public class RMLConfiguration {
     public static CommandLine parseArguments(String[] args) throws ParseException {
         
         CommandLineParser cliParser = new GnuParser();
-        return cliParser.parse(getCliOptions(), args);
+        CommandLine commandLine = cliParser.parse(getCliOptions(), args);
+        checkShardedOutput(commandLine);
+        return commandLine;
+    }
+    
+    /**
+     * The sharded output is written by a dataset of its own, which does not
+     * deduplicate on disk, compress or split the graphs: these options are 
+     * rejected instead of being ignored.
+     * 
+     * @param commandLine 
+     */
+    private static void checkShardedOutput(CommandLine commandLine) {
+        if (!commandLine.hasOption("sh") && !commandLine.hasOption("rt") 
+                && !commandLine.hasOption("rb")) {
+            return;
+        }
+        String outputFile = commandLine.getOptionValue("o", "");
+        if (commandLine.hasOption("dm") || commandLine.hasOption("z") 
+                || outputFile.endsWith(".gz") || commandLine.hasOption("gf")) {
+            log.error("The sharded output of -sh, -rt and -rb "
+                    + "cannot be combined with -dm, -z, a .gz output file or -gf.");
+            displayHelp();
+        }
     }
 
     private static Options generateCLIOptions() {
@@ -41,7 +67,9 @@ public class RMLConfiguration {
         cliOptions.addOption("o", "output file", true, 
                 "the URI of the output file (required)");
         cliOptions.addOption("f", "file format", true, 
-                "the output format of the results: turtle, n3, ntriples (default), rdfxml (optional)");
+                "the output format of the results: turtle, n3, ntriples (default), nquads, "
+                + "trig, rdfxml, rdfjson, jsonld, jsonld-flat, "
+                + "rmlb (binary, dictionary encoded, without graphs or metadata) (optional)");
         cliOptions.addOption("tm", "Triples Map", true, 
                 "Triples Map to be executed.");
         cliOptions.addOption("b", "base IRI", true, 
@@ -60,6 +88,74 @@ public class RMLConfiguration {
                 "the metadata format: same as output by default");
         cliOptions.addOption("s", "schemas", false, 
                 "schemas");
+        cliOptions.addOption("dd", "deduplication", false, 
+                "suppresses the duplicate triples with a set of the fingerprints "
+                + "of the generated triples (default: off)");
+        cliOptions.addOption("do", "deduplication off-heap", false, 
+                "suppresses the duplicate triples, keeping the fingerprints "
+                + "of the generated triples outside of the heap");
+        cliOptions.addOption("dm", "deduplication memory", true, 
+                "the memory budget in MB of the duplicate suppression of the output file, "
+                + "the candidate duplicates are spilled to disk and verified "
+                + "when the file is closed (default: none)");
+        cliOptions.addOption("wb", "writer buffer", true, 
+                "the number of statements buffered for a writer thread, "
+                + "which writes the output file while the triples are generated "
+                + "(default: 0, written on the mapping thread)");
+        cliOptions.addOption("z", "compression", true, 
+                "the gzip compression level of the output file, from 1 to 9 "
+                + "(default: none, 6 if the output file ends with .gz)");
+        cliOptions.addOption("zb", "compression block", true, 
+                "the uncompressed size in KB of the blocks compressed in parallel "
+                + "(default: 128)");
+        cliOptions.addOption("zt", "compression threads", true, 
+                "the number of threads compressing the blocks "
+                + "(default: the number of processors)");
+        cliOptions.addOption("sh", "shards", true, 
+                "the number of files the output is sharded over by subject, "
+                + "written concurrently and listed in a manifest, "
+                + "not with -dm, -z or -gf (default: 1 file)");
+        cliOptions.addOption("rt", "rollover triples", true, 
+                "the number of triples of an output file "
+                + "before the next file is started (default: no limit)");
+        cliOptions.addOption("rb", "rollover bytes", true, 
+                "the size in MB of an output file "
+                + "before the next file is started (default: no limit)");
+        cliOptions.addOption("gf", "graph files", true, 
+                "writes each named graph to a file of its own, listed in a manifest, "
+                + "with at most the given number of files open at once "
+                + "(default: the graphs are written to the output file)");
+        cliOptions.addOption("ns", "native store", false, 
+                "loads the output into a native store in the directory "
+                + "given as output, instead of writing a file");
+        cliOptions.addOption("nsi", "native store indexes", true, 
+                "the index orders of the native store (default: spoc,posc)");
+        cliOptions.addOption("jm", "join memory", true, 
+                "the memory budget of a join index in MB, "
+                + "larger indexes are spilled to disk (default: unbounded)");
+        cliOptions.addOption("jd", "join directory", true, 
+                "the directory of the spilled join indexes (default: temporary directory)");
+        cliOptions.addOption("js", "join strategy", true, 
+                "the join strategy of every join without metric: hash (default) or merge, "
+                + "if the sources are sorted on their join keys as strings, "
+                + "falling back to hash for the sources out of order");
+        cliOptions.addOption("jtj", "join Jaccard distance", true, 
+                "the maximum Jaccard distance of the joins with the Jaccard metric, "
+                + "from 0 to 1 (default: 0)");
+        cliOptions.addOption("jtl", "join Levenshtein distance", true, 
+                "the maximum number of edits of the joins with the Levenshtein metric "
+                + "(default: 0)");
+        cliOptions.addOption("ji", "join index directory", true, 
+                "the directory where the join indexes are persisted "
+                + "and reused by later runs, the indexes unused for 30 days "
+                + "are deleted (default: none)");
+        cliOptions.addOption("jf", "join filter", true, 
+                "the false positive rate of the Bloom filters of the join indexes, "
+                + "0 disables them (default: 0.01)");
+        cliOptions.addOption("jc", "join cache", true, 
+                "the number of parameterized parent sources kept in memory (default: 1024)");
+        cliOptions.addOption("jcm", "join cache memory", true, 
+                "the memory budget of the parameterized parent sources in MB (default: 64)");
         //cliOptions.addOption("t", "tests are enabled", false, 
         //      "the RDFUnit tests are called");
         return cliOptions;
@@ -95,4 +191,207 @@ public class RMLConfiguration {
         }
     }
     
+    public static JoinConfiguration processJoinConfiguration(
+            CommandLine commandLine) {
+        JoinConfiguration joinConfiguration = new JoinConfiguration();
+        if (commandLine.hasOption("jm")) {
+            try {
+                long megabytes = Long.parseLong(
+                        commandLine.getOptionValue("jm", "0").trim());
+                joinConfiguration.setMemoryBudget(megabytes * 1024 * 1024);
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The join indexes are kept in memory.");
+            }
+        }
+        if (commandLine.hasOption("jtj")) {
+            try {
+                double distance = Double.parseDouble(
+                        commandLine.getOptionValue("jtj", "0").trim());
+                if (distance >= 0 && distance <= 1) {
+                    joinConfiguration.setMaxJaccardDistance(distance);
+                } else {
+                    log.error("Jaccard distance " + distance + " is not between 0 and 1,"
+                            + " the joins with the Jaccard metric require equal values.");
+                }
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The joins with the Jaccard metric require equal values.");
+            }
+        }
+        if (commandLine.hasOption("jtl")) {
+            try {
+                int distance = Integer.parseInt(
+                        commandLine.getOptionValue("jtl", "0").trim());
+                if (distance >= 0) {
+                    joinConfiguration.setMaxLevenshteinDistance(distance);
+                } else {
+                    log.error("Levenshtein distance " + distance + " is negative,"
+                            + " the joins with the Levenshtein metric require equal values.");
+                }
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The joins with the Levenshtein metric require equal values.");
+            }
+        }
+        if (commandLine.hasOption("js")) {
+            String joinStrategy = commandLine.getOptionValue(
+                    "js", JoinConfiguration.HASH).trim().toLowerCase();
+            if (joinStrategy.equals(JoinConfiguration.MERGE)
+                    || joinStrategy.equals(JoinConfiguration.HASH)) {
+                joinConfiguration.setJoinStrategy(joinStrategy);
+            } else {
+                log.error("Unknown join strategy " + joinStrategy 
+                        + ", the hash join is used.");
+            }
+        }
+        if (commandLine.hasOption("jc")) {
+            try {
+                joinConfiguration.setCacheEntries(Integer.parseInt(
+                        commandLine.getOptionValue("jc", "1024").trim()));
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The default source cache size is used.");
+            }
+        }
+        if (commandLine.hasOption("jcm")) {
+            try {
+                long megabytes = Long.parseLong(
+                        commandLine.getOptionValue("jcm", "64").trim());
+                joinConfiguration.setCacheBytes(megabytes * 1024 * 1024);
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The default source cache budget is used.");
+            }
+        }
+        if (commandLine.hasOption("jf")) {
+            try {
+                joinConfiguration.setFilterFalsePositiveRate(Double.parseDouble(
+                        commandLine.getOptionValue("jf", "0.01").trim()));
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The default false positive rate is used.");
+            }
+        }
+        if (commandLine.hasOption("ji")) {
+            File directory = new File(commandLine.getOptionValue("ji", null));
+            if (directory.isDirectory() || directory.mkdirs()) {
+                joinConfiguration.setIndexDirectory(directory);
+                //A local mapping document is part of the key of the indexes
+                File mappingDocument = new File(commandLine.getOptionValue("m", ""));
+                if (mappingDocument.isFile()) {
+                    joinConfiguration.setMappingDocument(mappingDocument);
+                }
+            } else {
+                log.error("Directory " + directory + " could not be created,"
+                        + " the join indexes are not persisted.");
+            }
+        }
+        if (commandLine.hasOption("jd")) {
+            joinConfiguration.setSpillDirectory(
+                    new File(commandLine.getOptionValue("jd", null)));
+        }
+        return joinConfiguration;
+    }
+    
+    public static DatasetConfiguration processDatasetConfiguration(
+            CommandLine commandLine) {
+        DatasetConfiguration datasetConfiguration = new DatasetConfiguration();
+        if (commandLine.hasOption("dm")) {
+            try {
+                long megabytes = Long.parseLong(
+                        commandLine.getOptionValue("dm", "0").trim());
+                datasetConfiguration.setDeduplicationMemory(megabytes * 1024 * 1024);
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The duplicate triples of the output file are not suppressed.");
+            }
+        }
+        if (commandLine.hasOption("wb")) {
+            try {
+                datasetConfiguration.setWriterBuffer(Integer.parseInt(
+                        commandLine.getOptionValue("wb", "0").trim()));
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The output file is written on the mapping thread.");
+            }
+        }
+        if (commandLine.hasOption("z")) {
+            try {
+                int level = Integer.parseInt(
+                        commandLine.getOptionValue("z", "0").trim());
+                if (level >= 1 && level <= 9) {
+                    datasetConfiguration.setCompressionLevel(level);
+                } else {
+                    log.error("Compression level " + level 
+                            + " is not between 1 and 9, the output is not compressed.");
+                }
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The output is not compressed.");
+            }
+        }
+        if (commandLine.hasOption("zb")) {
+            try {
+                int kilobytes = Integer.parseInt(
+                        commandLine.getOptionValue("zb", "128").trim());
+                datasetConfiguration.setCompressionBlockSize(kilobytes * 1024);
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The default compression block size is used.");
+            }
+        }
+        if (commandLine.hasOption("zt")) {
+            try {
+                datasetConfiguration.setCompressionThreads(Integer.parseInt(
+                        commandLine.getOptionValue("zt", "1").trim()));
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The blocks are compressed on every processor.");
+            }
+        }
+        if (commandLine.hasOption("sh")) {
+            try {
+                datasetConfiguration.setShards(Integer.parseInt(
+                        commandLine.getOptionValue("sh", "0").trim()));
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The output is not sharded.");
+            }
+        }
+        if (commandLine.hasOption("rt")) {
+            try {
+                datasetConfiguration.setRolloverTriples(Long.parseLong(
+                        commandLine.getOptionValue("rt", "0").trim()));
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The output files have no triples limit.");
+            }
+        }
+        if (commandLine.hasOption("rb")) {
+            try {
+                long megabytes = Long.parseLong(
+                        commandLine.getOptionValue("rb", "0").trim());
+                datasetConfiguration.setRolloverBytes(megabytes * 1024 * 1024);
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The output files have no size limit.");
+            }
+        }
+        if (commandLine.hasOption("gf")) {
+            try {
+                datasetConfiguration.setMaxGraphFiles(Integer.parseInt(
+                        commandLine.getOptionValue("gf", "0").trim()));
+            } catch (NumberFormatException ex) {
+                log.error("NumberFormatException " + ex 
+                        + " The graphs are written to the output file.");
+            }
+        }
+        if (commandLine.hasOption("ns")) {
+            datasetConfiguration.setNativeStoreIndexes(commandLine.getOptionValue(
+                    "nsi", NativeStoreDataset.DEFAULT_INDEXES).trim());
+        }
+        return datasetConfiguration;
+    }
+    
 }
@@ -1,5 +1,6 @@
 package be.ugent.mmlab.rml.core;
 
+import be.ugent.mmlab.rml.dataset.SortedTurtleWriter;
 import be.ugent.mmlab.rml.metadata.MetadataGenerator;
 import be.ugent.mmlab.rml.model.RMLMapping;
 import be.ugent.mmlab.rml.model.TriplesMap;
@@ -28,7 +29,6 @@ import org.openrdf.repository.sail.config.SailRepositoryConfig;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFWriter;
-import org.openrdf.rio.Rio;
 import org.openrdf.sail.nativerdf.config.NativeStoreConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +68,12 @@ public class StdMetadataRMLEngine extends StdRMLEngine {
         //StdMetadataRMLEngine engine; 
         MetadataRMLDataset dataset;
         
+        //The metadata datasets are written by Rio, which has no binary writer
+        if ("rmlb".equals(outputFormat) || "jsonld-flat".equals(outputFormat)) {
+            log.error("The " + outputFormat + " format is not written with "
+                    + "metadata, the output is written in N-Triples.");
+            outputFormat = "ntriples";
+        }
         //If not user-defined, use same as for the output
         if (metadataFormat == null) {
             metadataFormat = outputFormat;
@@ -298,7 +304,7 @@ public class StdMetadataRMLEngine extends StdRMLEngine {
                 dataset.setRepository(manager.getRepository(name[1]));
                 repository = dataset.getRepository();
                 RepositoryConnection con = repository.getConnection();
-                RDFWriter writer = Rio.createWriter(this.format, output);
+                RDFWriter writer = new SortedTurtleWriter(output, this.format);
 
                 con.export(writer);
                 con.commit();
@@ -342,7 +348,7 @@ public class StdMetadataRMLEngine extends StdRMLEngine {
                 }
             }
             output = new FileOutputStream(target);
-            RDFWriter writer = Rio.createWriter(this.format, output);
+            RDFWriter writer = new SortedTurtleWriter(output, this.format);
             
             con.export(writer);
             con.commit();
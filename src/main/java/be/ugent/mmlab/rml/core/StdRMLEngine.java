@@ -1,11 +1,18 @@
 package be.ugent.mmlab.rml.core;
 
 import be.ugent.mmlab.rml.performer.NodeRMLPerformer;
-import be.ugent.mmlab.rml.model.dataset.FileDataset;
+import be.ugent.mmlab.rml.dataset.DatasetConfiguration;
+import be.ugent.mmlab.rml.dataset.FileDataset;
+import be.ugent.mmlab.rml.dataset.NativeStoreDataset;
+import be.ugent.mmlab.rml.dataset.ShardedFileDataset;
+import be.ugent.mmlab.rml.dataset.StdRMLDataset;
 import be.ugent.mmlab.rml.model.dataset.RMLDataset;
-import be.ugent.mmlab.rml.model.dataset.StdRMLDataset;
 import be.ugent.mmlab.rml.input.ConcreteLogicalSourceProcessorFactory;
 import be.ugent.mmlab.rml.input.processor.SourceProcessor;
+import be.ugent.mmlab.rml.dataset.TermDictionary;
+import be.ugent.mmlab.rml.dataset.TripleDeduplicator;
+import be.ugent.mmlab.rml.join.JoinConfiguration;
+import be.ugent.mmlab.rml.join.JoinIndexRegistry;
 import be.ugent.mmlab.rml.model.RMLMapping;
 import be.ugent.mmlab.rml.model.TriplesMap;
 import be.ugent.mmlab.rml.processor.RMLProcessor;
@@ -17,6 +24,7 @@ import java.io.InputStream;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.Deflater;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.manager.LocalRepositoryManager;
 import org.slf4j.Logger;
@@ -41,6 +49,18 @@ public class StdRMLEngine implements RMLEngine {
     //There are probably better ways to do this than a static variable
     LocalRepositoryManager manager;
     protected Map<String,Integer> enumerator = new HashMap<String,Integer>();
+    //Memory budget and spilling of the join indexes
+    protected JoinConfiguration joinConfiguration = new JoinConfiguration();
+    //Join indexes shared by the Triples Maps of the current run
+    protected JoinIndexRegistry joinIndexRegistry = new JoinIndexRegistry();
+    //Suppresses the duplicate generated triples with a fingerprint set
+    protected boolean deduplication = false;
+    //Keeps the fingerprints of the generated triples in a direct buffer
+    protected boolean offHeapDeduplication = false;
+    //Settings of the dataset the output is written to
+    protected DatasetConfiguration datasetConfiguration = new DatasetConfiguration();
+    //Maximum number of IRIs and literals interned per run, none if 0
+    protected int termDictionarySize = TermDictionary.DEFAULT_MAX_ENTRIES;
     
     public StdRMLEngine() {} 
     
@@ -57,6 +77,50 @@ public class StdRMLEngine implements RMLEngine {
     }
     
     
+    public JoinConfiguration getJoinConfiguration() {
+        return joinConfiguration;
+    }
+
+    public void setJoinConfiguration(JoinConfiguration joinConfiguration) {
+        this.joinConfiguration = joinConfiguration;
+    }
+
+    public DatasetConfiguration getDatasetConfiguration() {
+        return datasetConfiguration;
+    }
+
+    public void setDatasetConfiguration(DatasetConfiguration datasetConfiguration) {
+        this.datasetConfiguration = datasetConfiguration;
+    }
+
+    public JoinIndexRegistry getJoinIndexRegistry() {
+        return joinIndexRegistry;
+    }
+
+    public boolean isDeduplication() {
+        return deduplication;
+    }
+
+    public void setDeduplication(boolean deduplication) {
+        this.deduplication = deduplication;
+    }
+
+    public boolean isOffHeapDeduplication() {
+        return offHeapDeduplication;
+    }
+
+    public void setOffHeapDeduplication(boolean offHeapDeduplication) {
+        this.offHeapDeduplication = offHeapDeduplication;
+    }
+
+    public int getTermDictionarySize() {
+        return termDictionarySize;
+    }
+
+    public void setTermDictionarySize(int termDictionarySize) {
+        this.termDictionarySize = termDictionarySize;
+    }
+    
     @Override
     public void run(RMLMapping mapping, String outputFile, String outputFormat, 
             String graphName, Map<String,String> parameters, String[] exeTriplesMap,
@@ -114,8 +178,7 @@ public class StdRMLEngine implements RMLEngine {
             
             if (pathToNativeStore != null) {
                 log.debug("Using direct file " + pathToNativeStore);
-                dataset = new FileDataset(pathToNativeStore, outputFormat, 
-                        manager, repositoryID);
+                dataset = createFileDataset(pathToNativeStore, outputFormat);
                 log.debug("Dataset is generated");
             } else {
                 log.debug("Using default store (memory) ");
@@ -125,6 +188,54 @@ public class StdRMLEngine implements RMLEngine {
         return dataset;
     }
 
+    /**
+     * Creates the dataset of an output file, as set by the dataset configuration.
+     * The sharded output is neither deduplicated on disk, nor compressed, 
+     * nor split per graph, RMLConfiguration rejects these combinations.
+     * 
+     * @param target the path of the output
+     * @param outputFormat
+     * @return the dataset
+     */
+    protected RMLDataset createFileDataset(String target, String outputFormat) {
+        if (datasetConfiguration.isNativeStore()) {
+            //Bulk loaded, the output is the directory of the store
+            return new NativeStoreDataset(new File(target), 
+                    datasetConfiguration.getNativeStoreIndexes());
+        }
+        if (datasetConfiguration.isSharded()) {
+            //Each shard is written on a thread of its own
+            ShardedFileDataset sharded = new ShardedFileDataset(target, 
+                    outputFormat, Math.max(1, datasetConfiguration.getShards()));
+            sharded.setRollover(datasetConfiguration.getRolloverTriples(),
+                    datasetConfiguration.getRolloverBytes());
+            return sharded;
+        }
+        //Written as they are generated, by the encoder of the format
+        FileDataset dataset = new FileDataset(target, outputFormat);
+        //Targets ending with .gz are compressed at the default level
+        if (datasetConfiguration.isCompressed() || target.endsWith(".gz")) {
+            dataset.setCompression(datasetConfiguration.isCompressed()
+                    ? datasetConfiguration.getCompressionLevel()
+                    : Deflater.DEFAULT_COMPRESSION,
+                    datasetConfiguration.getCompressionBlockSize(),
+                    datasetConfiguration.getCompressionThreads());
+        }
+        //The graph files are compressed as the output
+        if (datasetConfiguration.isGraphFiles()) {
+            dataset.setGraphOutputs(datasetConfiguration.getMaxGraphFiles());
+        }
+        if (datasetConfiguration.isDeduplicated()) {
+            dataset.setDeduplication(datasetConfiguration.getDeduplicationMemory(),
+                    datasetConfiguration.getDeduplicationDirectory());
+        }
+        //Set last, as the writer thread takes the handler of the file
+        if (datasetConfiguration.isAsynchronous()) {
+            dataset.setAsynchronous(datasetConfiguration.getWriterBuffer());
+        }
+        return dataset;
+    }
+
     /**
      * This process adds RDF triples to the output dataset. Each generated
      * triple is placed into one or more graphs of the output dataset. The
@@ -150,9 +261,50 @@ public class StdRMLEngine implements RMLEngine {
         else
             triplesMaps = rmlMapping.getTriplesMaps();
 
-        for (TriplesMap triplesMap : triplesMaps) {
-            dataset = this.generateTriplesMapTriples(
-                    triplesMap, parameters, exeTriplesMap, dataset);
+        joinIndexRegistry = new JoinIndexRegistry(joinConfiguration);
+        //The duplicates are only suppressed on demand, keeping them costs memory
+        TripleDeduplicator deduplicator = null;
+        if (deduplication || offHeapDeduplication) {
+            if (dataset instanceof StdRMLDataset) {
+                deduplicator = new TripleDeduplicator(offHeapDeduplication);
+                ((StdRMLDataset) dataset).setTripleDeduplicator(deduplicator);
+            } else {
+                log.warn("The duplicate triples of a " 
+                        + dataset.getClass().getSimpleName() 
+                        + " are not suppressed.");
+            }
+        }
+        //The terms are interned for the run only
+        TermDictionary dictionary = null;
+        if (dataset instanceof StdRMLDataset) {
+            dictionary = new TermDictionary(termDictionarySize);
+            ((StdRMLDataset) dataset).setTermDictionary(dictionary);
+        }
+        try {
+            for (TriplesMap triplesMap : triplesMaps) {
+                dataset = this.generateTriplesMapTriples(
+                        triplesMap, parameters, exeTriplesMap, dataset);
+            }
+            joinIndexRegistry.finish(dataset, exeTriplesMap);
+        } finally {
+            joinIndexRegistry.close();
+            if (dataset instanceof StdRMLDataset) {
+                ((StdRMLDataset) dataset).setTermDictionary(null);
+                ((StdRMLDataset) dataset).setTripleDeduplicator(null);
+            }
+        }
+        if (dictionary != null) {
+            log.debug("Term dictionary: " + dictionary.getHits() + " hits, "
+                    + dictionary.getMisses() + " misses.");
+        }
+        if (deduplicator != null) {
+            log.info(deduplicator.getDuplicates()
+                    + " duplicate triples were suppressed.");
+            if (deduplicator.isSaturated()) {
+                log.warn("The duplicate triples set was full, "
+                        + deduplicator.getUnchecked() + " triples were added "
+                        + "unchecked and the output may contain duplicates.");
+            }
         }
 
         return dataset;
@@ -204,6 +356,9 @@ public class StdRMLEngine implements RMLEngine {
             log.error("Exception " + ex + 
                     " There is no suitable processor for this reference formulation");
         }
+        if (processor != null) {
+            processor.setJoinIndexRegistry(joinIndexRegistry);
+        }
 
         return processor;
     }
@@ -219,6 +374,11 @@ public class StdRMLEngine implements RMLEngine {
 
         log.info("Generating RML Processor..");
         RMLProcessor processor = generateRMLProcessor(triplesMap, parameters);
+        if (dataset instanceof be.ugent.mmlab.rml.dataset.RMLDataset) {
+            //The statements are counted per Triples Map
+            ((be.ugent.mmlab.rml.dataset.RMLDataset) dataset).getStatistics()
+                    .setTriplesMap(triplesMap.getName());
+        }
 
         if (processor != null) {
             log.info("Generating Data Retrieval Processor..");
@@ -299,5 +459,9 @@ public class StdRMLEngine implements RMLEngine {
         log.info("RML mapping done! Generated "
                 + sesameDataSet.getSize() + " in "
                 + ((double) duration) / 1000000000 + "s . ");
+        if (sesameDataSet instanceof be.ugent.mmlab.rml.dataset.RMLDataset) {
+            log.debug(((be.ugent.mmlab.rml.dataset.RMLDataset) sesameDataSet)
+                    .getStatistics().toString());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,164 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Hands the statements of the mapping thread over to a serializer thread,
+ * so that generating the triples and writing them overlap. The statements
+ * pass through a bounded single producer, single consumer ring buffer
+ * without locks: the mapping thread waits when the buffer is full and
+ * the serializer waits when it is empty.
+ *
+ * Only one thread may add statements. If the serializer fails, the next
+ * statements are dropped and the failure is thrown when it is closed.
+ *
+ * @author andimou
+ */
+public class AsyncStatementWriter {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(AsyncStatementWriter.class.getSimpleName());
+
+    //Marks the end of the statements
+    private static final Statement END = new StatementImpl(
+            new URIImpl("urn:end"), new URIImpl("urn:end"), new URIImpl("urn:end"));
+    private static final int SPINS = 64;
+    private static final long PARK_NANOS = 50000;
+
+    private Statement[] items;
+    private int mask;
+    //Position of the next statement to take and to put
+    private AtomicLong head = new AtomicLong();
+    private AtomicLong tail = new AtomicLong();
+    private RDFHandler handler;
+    private Thread serializer;
+    private volatile boolean failed = false;
+    private volatile Exception failure = null;
+
+    //Statistics
+    private long producerWaits = 0;
+    private long written = 0;
+
+    /**
+     *
+     * @param handler the handler the statements are written to
+     * @param capacity the number of buffered statements, a power of two
+     */
+    public AsyncStatementWriter(RDFHandler handler, int capacity) {
+        int size = Math.max(2, Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1);
+        this.items = new Statement[size];
+        this.mask = size - 1;
+        this.handler = handler;
+        serializer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serialize();
+            }
+        }, "rdf-writer");
+        serializer.setDaemon(true);
+        serializer.start();
+    }
+
+    /**
+     * Queues a statement, waiting while the buffer is full
+     *
+     * @param statement
+     */
+    public void handleStatement(Statement statement) {
+        if (failed) {
+            return;
+        }
+        long position = tail.get();
+        int spins = 0;
+        while (position - head.get() >= items.length) {
+            if (failed) {
+                return;
+            }
+            if (++spins > SPINS) {
+                producerWaits++;
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        items[(int) position & mask] = statement;
+        //Publishes the statement to the serializer
+        tail.lazySet(position + 1);
+    }
+
+    private void serialize() {
+        while (true) {
+            long position = head.get();
+            int spins = 0;
+            while (position == tail.get()) {
+                if (++spins > SPINS) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+            int slot = (int) position & mask;
+            Statement statement = items[slot];
+            items[slot] = null;
+            head.lazySet(position + 1);
+            if (statement == END) {
+                return;
+            }
+            try {
+                handler.handleStatement(statement);
+                written++;
+            } catch (RDFHandlerException ex) {
+                fail(ex);
+                return;
+            } catch (RuntimeException ex) {
+                fail(ex);
+                return;
+            }
+        }
+    }
+
+    private void fail(Exception ex) {
+        log.error("Exception " + ex);
+        //Published by the volatile flag
+        failure = ex;
+        failed = true;
+    }
+
+    /**
+     * Waits until every queued statement is written
+     * and stops the serializer
+     * 
+     * @throws RDFHandlerException if the serializer failed, 
+     * as the statements from the failed one on are not written
+     */
+    public void close() throws RDFHandlerException {
+        handleStatement(END);
+        try {
+            serializer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.error("InterruptedException " + ex);
+        }
+        log.debug("The mapping thread waited " + producerWaits
+                + " times for the serializer.");
+        if (failed) {
+            throw new RDFHandlerException("The serializer failed after "
+                    + written + " statements, the next ones were dropped.", failure);
+        }
+    }
+
+    /**
+     *
+     * @return true if the serializer stopped on an error
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+}
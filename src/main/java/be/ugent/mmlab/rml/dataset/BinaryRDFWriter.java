@@ -0,0 +1,884 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFWriterBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Writes the triples in a compact binary format of its own, laid out
+ * after HDT but not readable by the HDT tools: a header with the counts,
+ * a dictionary of the terms and the triples as identifiers of the
+ * dictionary, in subject, predicate, object order.
+ *
+ * The dictionary has four sections, as the one of HDT: the terms which
+ * are both subjects and objects, the other subjects, the other objects
+ * and the predicates. Each section is sorted and front coded in blocks
+ * of 16 terms. The triples are two sequences of identifiers, predicates
+ * and objects, each with a bitmap marking the last entry per subject,
+ * respectively per subject and predicate. The duplicate triples are
+ * dropped, as the triples are a set. The format has no graphs, the
+ * statements of named graphs are written as triples of the default one.
+ *
+ * The terms and the triples are sorted externally, in runs spilled to
+ * disk, so that the memory stays bounded whatever the size of the output.
+ * The runs are merged at most 64 at a time, in as many passes as needed,
+ * so that the open files stay bounded too.
+ * The output is only written when the RDF is ended.
+ *
+ * @author andimou
+ */
+public class BinaryRDFWriter extends RDFWriterBase {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(BinaryRDFWriter.class.getSimpleName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final RDFFormat FORMAT = new RDFFormat("RML Binary",
+            "application/x-rml-binary", UTF_8, "rmlb", false, false);
+
+    private static final byte[] MAGIC = {'$', 'R', 'M', 'B'};
+    private static final byte VERSION = 1;
+    private static final byte SPO = 1;
+    public static final int DEFAULT_RUN_SIZE = 1 << 20;
+    //Terms per front coded block
+    private static final int BLOCK_SIZE = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    //Runs merged per pass
+    private static final int MERGE_FAN_IN = 64;
+
+    //Roles of a term
+    private static final int SUBJECT = 1;
+    private static final int PREDICATE = 2;
+    private static final int OBJECT = 4;
+
+    //Sections of the dictionary
+    private static final int SHARED = 0;
+    private static final int SUBJECTS = 1;
+    private static final int OBJECTS = 2;
+    private static final int PREDICATES = 3;
+    private static final int SECTION_SHIFT = 56;
+
+    private OutputStream out;
+    private File parentDirectory;
+    private File directory;
+    private int runSize;
+    private List<Occurrence> occurrences = new ArrayList<Occurrence>();
+    private List<File> termRuns = new ArrayList<File>();
+    private long triples = 0;
+    private long shared = 0;
+    private long quads = 0;
+
+    /**
+     *
+     * @param out
+     * @param parentDirectory the directory of the sorted runs,
+     * the system's temporary one if null
+     * @param runSize the number of terms or triples sorted in memory
+     */
+    public BinaryRDFWriter(OutputStream out, File parentDirectory, int runSize) {
+        this.out = out;
+        this.parentDirectory = parentDirectory;
+        this.runSize = runSize;
+    }
+
+    public BinaryRDFWriter(OutputStream out) {
+        this(out, null, DEFAULT_RUN_SIZE);
+    }
+
+    @Override
+    public RDFFormat getRDFFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public void startRDF() throws RDFHandlerException {
+        String prefix = "rml-binary-";
+        try {
+            directory = (parentDirectory == null)
+                    ? Files.createTempDirectory(prefix).toFile()
+                    : Files.createTempDirectory(parentDirectory.toPath(), prefix).toFile();
+        } catch (IOException ex) {
+            throw new RDFHandlerException(ex);
+        }
+    }
+
+    @Override
+    public void handleNamespace(String prefix, String uri) {
+        //The terms are written in full
+    }
+
+    @Override
+    public void handleComment(String comment) {
+    }
+
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        if (st.getContext() != null && quads++ == 0) {
+            log.warn("The binary format has no graphs, the statements of "
+                    + "named graphs are written to the default graph.");
+        }
+        long position = triples * 3;
+        occurrences.add(new Occurrence(term(st.getSubject()), position));
+        occurrences.add(new Occurrence(term(st.getPredicate()), position + 1));
+        occurrences.add(new Occurrence(term(st.getObject()), position + 2));
+        triples++;
+        if (occurrences.size() >= runSize) {
+            try {
+                spillTerms();
+            } catch (IOException ex) {
+                throw new RDFHandlerException(ex);
+            }
+        }
+    }
+
+    //The terms as they are written in N-Triples, without the brackets of the IRIs
+    private static String term(Value value) {
+        if (value instanceof BNode) {
+            return "_:" + ((BNode) value).getID();
+        }
+        if (!(value instanceof Literal)) {
+            return value.stringValue();
+        }
+        Literal literal = (Literal) value;
+        StringBuilder term = new StringBuilder();
+        term.append('"').append(literal.getLabel()).append('"');
+        URI datatype = literal.getDatatype();
+        if (literal.getLanguage() != null) {
+            term.append('@').append(literal.getLanguage());
+        } else if (datatype != null && !XMLSchema.STRING.equals(datatype)) {
+            term.append("^^<").append(datatype.stringValue()).append('>');
+        }
+        return term.toString();
+    }
+
+    /**
+     * Sorts the buffered terms and spills them as a run,
+     * each term once with its roles and its occurrences
+     */
+    private void spillTerms() throws IOException {
+        if (occurrences.isEmpty()) {
+            return;
+        }
+        //The sort is stable, so the occurrences of a term remain in order
+        Collections.sort(occurrences);
+        File run = new File(directory, "terms-" + termRuns.size() + ".bin");
+        termRuns.add(run);
+        DataOutputStream output = openOutput(run);
+        try {
+            int start = 0;
+            while (start < occurrences.size()) {
+                String term = occurrences.get(start).term;
+                int end = start;
+                int mask = 0;
+                while (end < occurrences.size()
+                        && occurrences.get(end).term.equals(term)) {
+                    mask |= 1 << (int) (occurrences.get(end).position % 3);
+                    end++;
+                }
+                output.writeByte(1);
+                writeBytes(output, term.getBytes(UTF_8));
+                output.writeByte(mask);
+                output.writeLong(end - start);
+                for (int i = start; i < end; i++) {
+                    output.writeLong(occurrences.get(i).position);
+                }
+                start = end;
+            }
+            output.writeByte(0);
+        } finally {
+            output.close();
+        }
+        occurrences.clear();
+    }
+
+    @Override
+    public void endRDF() throws RDFHandlerException {
+        try {
+            spillTerms();
+            occurrences = null;
+            Section[] sections = new Section[4];
+            String[] names = {"shared", "subjects", "objects", "predicates"};
+            for (int i = 0; i < sections.length; i++) {
+                sections[i] = new Section(new File(directory, names[i]));
+            }
+            LongFile ids = new LongFile(new File(directory, "ids.bin"), triples * 3);
+            try {
+                mergeTerms(ids, sections);
+                for (Section section : sections) {
+                    section.close();
+                }
+                shared = sections[SHARED].count;
+                TriplesSection triplesSection = new TriplesSection(directory,
+                        bits(sections[PREDICATES].count),
+                        bits(shared + sections[OBJECTS].count));
+                mergeTriples(sortTriples(ids), triplesSection);
+                triplesSection.close();
+                write(sections, triplesSection);
+            } finally {
+                ids.close();
+            }
+            log.debug("Binary output of " + triples + " statements with "
+                    + (shared + sections[SUBJECTS].count + sections[OBJECTS].count
+                    + sections[PREDICATES].count) + " terms.");
+            if (quads > 0) {
+                log.warn(quads + " statements of named graphs were written "
+                        + "to the default graph.");
+            }
+        } catch (IOException ex) {
+            throw new RDFHandlerException(ex);
+        } finally {
+            delete();
+        }
+    }
+
+    /**
+     * Merges the runs of terms into the dictionary and
+     * replaces each occurrence of a term by its identifier
+     */
+    private void mergeTerms(LongFile ids, Section[] sections) throws IOException {
+        reduceTermRuns();
+        PriorityQueue<TermRun> queue = openTermRuns(termRuns);
+        List<TermRun> same = new ArrayList<TermRun>();
+        while (!queue.isEmpty()) {
+            pollSame(queue, same);
+            String term = same.get(0).term;
+            int mask = 0;
+            for (TermRun run : same) {
+                mask |= run.mask;
+            }
+            //A predicate has its own identifier, as in HDT
+            long predicateId = ((mask & PREDICATE) != 0)
+                    ? encode(PREDICATES, sections[PREDICATES].add(term)) : 0;
+            long id = 0;
+            if ((mask & SUBJECT) != 0 && (mask & OBJECT) != 0) {
+                id = encode(SHARED, sections[SHARED].add(term));
+            } else if ((mask & SUBJECT) != 0) {
+                id = encode(SUBJECTS, sections[SUBJECTS].add(term));
+            } else if ((mask & OBJECT) != 0) {
+                id = encode(OBJECTS, sections[OBJECTS].add(term));
+            }
+            for (TermRun run : same) {
+                for (long i = 0; i < run.count; i++) {
+                    long position = run.input.readLong();
+                    ids.set(position, (position % 3 == 1) ? predicateId : id);
+                }
+                advance(queue, run);
+            }
+            same.clear();
+        }
+    }
+
+    /**
+     * Merges the runs of terms by groups, until they are
+     * few enough to be merged at once
+     */
+    private void reduceTermRuns() throws IOException {
+        int pass = 0;
+        while (termRuns.size() > MERGE_FAN_IN) {
+            List<File> merged = new ArrayList<File>();
+            for (int start = 0; start < termRuns.size(); start += MERGE_FAN_IN) {
+                List<File> group = termRuns.subList(start,
+                        Math.min(start + MERGE_FAN_IN, termRuns.size()));
+                File run = new File(directory,
+                        "terms-" + pass + "-" + merged.size() + ".bin");
+                merged.add(run);
+                mergeTermRuns(group, run);
+                deleteRuns(group);
+            }
+            termRuns = merged;
+            pass++;
+        }
+    }
+
+    //Merges the runs into one, each term once with the occurrences of all runs
+    private void mergeTermRuns(List<File> runs, File target) throws IOException {
+        PriorityQueue<TermRun> queue = openTermRuns(runs);
+        DataOutputStream output = openOutput(target);
+        try {
+            List<TermRun> same = new ArrayList<TermRun>();
+            while (!queue.isEmpty()) {
+                pollSame(queue, same);
+                int mask = 0;
+                long count = 0;
+                for (TermRun run : same) {
+                    mask |= run.mask;
+                    count += run.count;
+                }
+                output.writeByte(1);
+                writeBytes(output, same.get(0).term.getBytes(UTF_8));
+                output.writeByte(mask);
+                output.writeLong(count);
+                for (TermRun run : same) {
+                    for (long i = 0; i < run.count; i++) {
+                        output.writeLong(run.input.readLong());
+                    }
+                    advance(queue, run);
+                }
+                same.clear();
+            }
+            output.writeByte(0);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static PriorityQueue<TermRun> openTermRuns(List<File> runs)
+            throws IOException {
+        PriorityQueue<TermRun> queue = new PriorityQueue<TermRun>();
+        for (File file : runs) {
+            advance(queue, new TermRun(openInput(file)));
+        }
+        return queue;
+    }
+
+    //Polls the runs at the smallest term
+    private static void pollSame(PriorityQueue<TermRun> queue, List<TermRun> same) {
+        TermRun first = queue.poll();
+        same.add(first);
+        while (!queue.isEmpty() && queue.peek().term.equals(first.term)) {
+            same.add(queue.poll());
+        }
+    }
+
+    //Queues the run again at its next term, or closes it at its end
+    private static void advance(PriorityQueue<TermRun> queue, TermRun run)
+            throws IOException {
+        if (run.next()) {
+            queue.add(run);
+        } else {
+            run.close();
+        }
+    }
+
+    //The identifiers are final once the number of shared terms is known
+    private static long encode(int section, long id) {
+        return ((long) section << SECTION_SHIFT) | id;
+    }
+
+    private long decode(long encoded) {
+        int section = (int) (encoded >>> SECTION_SHIFT);
+        long id = encoded & ((1L << SECTION_SHIFT) - 1);
+        return (section == SUBJECTS || section == OBJECTS) ? shared + id : id;
+    }
+
+    /**
+     * Sorts the triples of identifiers in runs, without their duplicates
+     */
+    private List<File> sortTriples(LongFile ids) throws IOException {
+        List<File> runs = new ArrayList<File>();
+        List<long[]> buffer = new ArrayList<long[]>();
+        for (long i = 0; i < triples; i++) {
+            buffer.add(new long[]{decode(ids.get(i * 3)),
+                decode(ids.get(i * 3 + 1)), decode(ids.get(i * 3 + 2))});
+            if (buffer.size() >= runSize || i == triples - 1) {
+                Collections.sort(buffer, TRIPLE_ORDER);
+                File run = new File(directory, "triples-" + runs.size() + ".bin");
+                runs.add(run);
+                DataOutputStream output = openOutput(run);
+                try {
+                    long[] previous = null;
+                    for (long[] triple : buffer) {
+                        if (previous == null || TRIPLE_ORDER.compare(previous, triple) != 0) {
+                            output.writeByte(1);
+                            output.writeLong(triple[0]);
+                            output.writeLong(triple[1]);
+                            output.writeLong(triple[2]);
+                        }
+                        previous = triple;
+                    }
+                    output.writeByte(0);
+                } finally {
+                    output.close();
+                }
+                buffer.clear();
+            }
+        }
+        return runs;
+    }
+
+    private void mergeTriples(List<File> runs, TriplesSection section)
+            throws IOException {
+        runs = reduceTripleRuns(runs);
+        PriorityQueue<TripleRun> queue = openTripleRuns(runs);
+        long[] previous = null;
+        while (!queue.isEmpty()) {
+            TripleRun run = queue.poll();
+            long[] triple = run.triple;
+            if (previous == null || TRIPLE_ORDER.compare(previous, triple) != 0) {
+                section.add(triple[0], triple[1], triple[2]);
+            }
+            previous = triple;
+            advance(queue, run);
+        }
+    }
+
+    /**
+     * Merges the runs of triples by groups, without their duplicates,
+     * until they are few enough to be merged at once
+     */
+    private List<File> reduceTripleRuns(List<File> runs) throws IOException {
+        int pass = 0;
+        while (runs.size() > MERGE_FAN_IN) {
+            List<File> merged = new ArrayList<File>();
+            for (int start = 0; start < runs.size(); start += MERGE_FAN_IN) {
+                List<File> group = runs.subList(start,
+                        Math.min(start + MERGE_FAN_IN, runs.size()));
+                File run = new File(directory,
+                        "triples-" + pass + "-" + merged.size() + ".bin");
+                merged.add(run);
+                mergeTripleRuns(group, run);
+                deleteRuns(group);
+            }
+            runs = merged;
+            pass++;
+        }
+        return runs;
+    }
+
+    private static void mergeTripleRuns(List<File> runs, File target)
+            throws IOException {
+        PriorityQueue<TripleRun> queue = openTripleRuns(runs);
+        DataOutputStream output = openOutput(target);
+        try {
+            long[] previous = null;
+            while (!queue.isEmpty()) {
+                TripleRun run = queue.poll();
+                long[] triple = run.triple;
+                if (previous == null || TRIPLE_ORDER.compare(previous, triple) != 0) {
+                    output.writeByte(1);
+                    output.writeLong(triple[0]);
+                    output.writeLong(triple[1]);
+                    output.writeLong(triple[2]);
+                }
+                previous = triple;
+                advance(queue, run);
+            }
+            output.writeByte(0);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static PriorityQueue<TripleRun> openTripleRuns(List<File> runs)
+            throws IOException {
+        PriorityQueue<TripleRun> queue = new PriorityQueue<TripleRun>();
+        for (File file : runs) {
+            advance(queue, new TripleRun(openInput(file)));
+        }
+        return queue;
+    }
+
+    private static void advance(PriorityQueue<TripleRun> queue, TripleRun run)
+            throws IOException {
+        if (run.next()) {
+            queue.add(run);
+        } else {
+            run.input.close();
+        }
+    }
+
+    private void write(Section[] sections, TriplesSection triplesSection)
+            throws IOException {
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(out, BUFFER_SIZE));
+        output.write(MAGIC);
+        output.writeByte(VERSION);
+        //Header
+        output.writeLong(triplesSection.count);
+        for (Section section : sections) {
+            output.writeLong(section.count);
+        }
+        //Dictionary
+        for (Section section : sections) {
+            section.write(output);
+        }
+        //Triples
+        output.writeByte(SPO);
+        triplesSection.write(output);
+        output.flush();
+    }
+
+    private void delete() {
+        File[] files = (directory == null) ? null : directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                log.debug("File " + file + " could not be deleted.");
+            }
+        }
+        if (!directory.delete()) {
+            log.debug("Directory " + directory + " could not be deleted.");
+        }
+    }
+
+    //The runs are deleted once merged, to spare the disk
+    private static void deleteRuns(List<File> runs) {
+        for (File run : runs) {
+            if (!run.delete()) {
+                log.debug("File " + run + " could not be deleted.");
+            }
+        }
+    }
+
+    private static int bits(long value) {
+        return Math.max(1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    private static DataOutputStream openOutput(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    private static DataInputStream openInput(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), BUFFER_SIZE));
+    }
+
+    private static void copy(File file, DataOutputStream output) throws IOException {
+        Files.copy(file.toPath(), output);
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes)
+            throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static final Comparator<long[]> TRIPLE_ORDER = new Comparator<long[]>() {
+        @Override
+        public int compare(long[] first, long[] second) {
+            for (int i = 0; i < 3; i++) {
+                if (first[i] != second[i]) {
+                    return (first[i] < second[i]) ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+    };
+
+    private static class Occurrence implements Comparable<Occurrence> {
+        private String term;
+        //Position of the term among the terms of all triples
+        private long position;
+
+        Occurrence(String term, long position) {
+            this.term = term;
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(Occurrence other) {
+            return term.compareTo(other.term);
+        }
+    }
+
+    private static class TermRun implements Comparable<TermRun> {
+        private DataInputStream input;
+        private String term;
+        private int mask;
+        private long count;
+
+        TermRun(DataInputStream input) {
+            this.input = input;
+        }
+
+        //Reads the next term, before its occurrences
+        boolean next() throws IOException {
+            if (input.read() <= 0) {
+                return false;
+            }
+            term = readString(input);
+            mask = input.readByte();
+            count = input.readLong();
+            return true;
+        }
+
+        void close() throws IOException {
+            input.close();
+        }
+
+        @Override
+        public int compareTo(TermRun other) {
+            return term.compareTo(other.term);
+        }
+    }
+
+    private static class TripleRun implements Comparable<TripleRun> {
+        private DataInputStream input;
+        private long[] triple;
+
+        TripleRun(DataInputStream input) {
+            this.input = input;
+        }
+
+        boolean next() throws IOException {
+            if (input.read() <= 0) {
+                return false;
+            }
+            triple = new long[]{input.readLong(), input.readLong(), input.readLong()};
+            return true;
+        }
+
+        @Override
+        public int compareTo(TripleRun other) {
+            return TRIPLE_ORDER.compare(triple, other.triple);
+        }
+    }
+
+    /**
+     * A section of the dictionary, front coded: the first term of a block
+     * is written in full, the others as the length of the prefix they
+     * share with the term before them and the rest of their bytes
+     */
+    private static class Section {
+        private File dataFile;
+        private File offsetsFile;
+        private DataOutputStream data;
+        private DataOutputStream offsets;
+        private long count = 0;
+        private long length = 0;
+        private byte[] previous = null;
+
+        Section(File file) throws IOException {
+            dataFile = new File(file.getPath() + ".data");
+            offsetsFile = new File(file.getPath() + ".offsets");
+            data = openOutput(dataFile);
+            offsets = openOutput(offsetsFile);
+        }
+
+        /**
+         *
+         * @param term
+         * @return the identifier of the term in the section, from 1
+         */
+        long add(String term) throws IOException {
+            byte[] bytes = term.getBytes(UTF_8);
+            int prefix = 0;
+            if (count % BLOCK_SIZE == 0) {
+                offsets.writeLong(length);
+            } else {
+                int max = Math.min(previous.length, bytes.length);
+                while (prefix < max && previous[prefix] == bytes[prefix]) {
+                    prefix++;
+                }
+                writeVByte(prefix);
+            }
+            writeVByte(bytes.length - prefix);
+            data.write(bytes, prefix, bytes.length - prefix);
+            length += bytes.length - prefix;
+            previous = bytes;
+            return ++count;
+        }
+
+        private void writeVByte(int value) throws IOException {
+            while (value >= 0x80) {
+                data.writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+                length++;
+            }
+            data.writeByte(value);
+            length++;
+        }
+
+        void close() throws IOException {
+            data.close();
+            offsets.close();
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            output.writeLong(count);
+            output.writeInt(BLOCK_SIZE);
+            output.writeLong((count + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            copy(offsetsFile, output);
+            output.writeLong(length);
+            copy(dataFile, output);
+        }
+    }
+
+    /**
+     * The triples as bitmaps: the predicates of each subject and
+     * the objects of each subject and predicate, where a set bit
+     * marks the last entry of a subject, respectively a pair
+     */
+    private static class TriplesSection {
+        private PackedSequence predicates;
+        private PackedSequence predicateBits;
+        private PackedSequence objects;
+        private PackedSequence objectBits;
+        private long count = 0;
+        private long lastSubject = 0;
+        private long lastPredicate = 0;
+        private long lastObject = 0;
+
+        TriplesSection(File directory, int predicateWidth, int objectWidth)
+                throws IOException {
+            predicates = new PackedSequence(new File(directory, "sp.bin"), predicateWidth);
+            predicateBits = new PackedSequence(new File(directory, "bp.bin"), 1);
+            objects = new PackedSequence(new File(directory, "so.bin"), objectWidth);
+            objectBits = new PackedSequence(new File(directory, "bo.bin"), 1);
+        }
+
+        //The triples are added in order, the subjects from 1 without gaps
+        void add(long subject, long predicate, long object) throws IOException {
+            if (subject != lastSubject && subject != lastSubject + 1) {
+                log.error("Subject " + subject + " follows " + lastSubject
+                        + ", the triples are not consecutive.");
+            }
+            if (count > 0) {
+                boolean newSubject = subject != lastSubject;
+                boolean newPredicate = newSubject || predicate != lastPredicate;
+                objects.add(lastObject);
+                objectBits.add(newPredicate ? 1 : 0);
+                if (newPredicate) {
+                    predicates.add(lastPredicate);
+                    predicateBits.add(newSubject ? 1 : 0);
+                }
+            }
+            lastSubject = subject;
+            lastPredicate = predicate;
+            lastObject = object;
+            count++;
+        }
+
+        void close() throws IOException {
+            if (count > 0) {
+                objects.add(lastObject);
+                objectBits.add(1);
+                predicates.add(lastPredicate);
+                predicateBits.add(1);
+            }
+            predicates.close();
+            predicateBits.close();
+            objects.close();
+            objectBits.close();
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            predicates.write(output);
+            predicateBits.write(output);
+            objects.write(output);
+            objectBits.write(output);
+        }
+    }
+
+    /**
+     * A sequence of numbers of a fixed number of bits,
+     * packed in little endian order in words of 64 bits
+     */
+    private static class PackedSequence {
+        private File file;
+        private DataOutputStream output;
+        private int width;
+        private long count = 0;
+        private long word = 0;
+        private int used = 0;
+
+        PackedSequence(File file, int width) throws IOException {
+            this.file = file;
+            this.width = width;
+            this.output = openOutput(file);
+        }
+
+        void add(long value) throws IOException {
+            word |= value << used;
+            used += width;
+            if (used >= 64) {
+                output.writeLong(word);
+                used -= 64;
+                word = (used > 0) ? value >>> (width - used) : 0;
+            }
+            count++;
+        }
+
+        void close() throws IOException {
+            if (used > 0) {
+                output.writeLong(word);
+            }
+            output.close();
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            target.writeByte(width);
+            target.writeLong(count);
+            target.writeLong((count * width + 63) / 64);
+            copy(file, target);
+        }
+    }
+
+    /**
+     * An array of numbers in a memory mapped file,
+     * where the identifiers of the terms are scattered
+     */
+    private static class LongFile {
+        private static final int CHUNK_SHIFT = 27;
+        private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+        private RandomAccessFile file;
+        private MappedByteBuffer[] chunks;
+
+        LongFile(File path, long size) throws IOException {
+            file = new RandomAccessFile(path, "rw");
+            file.setLength(size * 8);
+            chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = i * CHUNK_SIZE;
+                chunks[i] = file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                        start * 8, Math.min(CHUNK_SIZE, size - start) * 8);
+            }
+        }
+
+        long get(long index) {
+            return chunks[(int) (index >>> CHUNK_SHIFT)]
+                    .getLong((int) (index & (CHUNK_SIZE - 1)) * 8);
+        }
+
+        void set(long index, long value) {
+            chunks[(int) (index >>> CHUNK_SHIFT)]
+                    .putLong((int) (index & (CHUNK_SIZE - 1)) * 8, value);
+        }
+
+        void close() throws IOException {
+            chunks = null;
+            file.close();
+        }
+    }
+}
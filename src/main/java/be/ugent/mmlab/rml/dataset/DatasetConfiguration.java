@@ -0,0 +1,155 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.File;
+
+/**
+ * RML Processor
+ *
+ * Configuration of the datasets the output is written to
+ *
+ * @author andimou
+ */
+public class DatasetConfiguration {
+
+    //Memory budget of the duplicate suppression of a file in bytes, none if 0
+    private long deduplicationMemory = 0;
+    //Directory of the spilled fingerprints, the system's temporary one if null
+    private File deduplicationDirectory = null;
+    //Statements buffered for the serializer thread, none if 0
+    private int writerBuffer = 0;
+    //Gzip compression level of the output, none if 0
+    private int compressionLevel = 0;
+    //Uncompressed bytes per compressed block
+    private int compressionBlockSize = ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE;
+    //Threads compressing the blocks
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+    //Files written concurrently, a single file if 0
+    private int shards = 0;
+    //Triples and bytes of a file before it rolls over, no limit if 0
+    private long rolloverTriples = 0;
+    private long rolloverBytes = 0;
+    //Graph files open at once, the named graphs are written to the output if 0
+    private int maxGraphFiles = 0;
+    //Index orders of the native store the output is loaded into, a file if null
+    private String nativeStoreIndexes = null;
+
+    public long getDeduplicationMemory() {
+        return deduplicationMemory;
+    }
+
+    public void setDeduplicationMemory(long deduplicationMemory) {
+        this.deduplicationMemory = deduplicationMemory;
+    }
+
+    public File getDeduplicationDirectory() {
+        return deduplicationDirectory;
+    }
+
+    public void setDeduplicationDirectory(File deduplicationDirectory) {
+        this.deduplicationDirectory = deduplicationDirectory;
+    }
+
+    public int getWriterBuffer() {
+        return writerBuffer;
+    }
+
+    public void setWriterBuffer(int writerBuffer) {
+        this.writerBuffer = writerBuffer;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionBlockSize() {
+        return compressionBlockSize;
+    }
+
+    public void setCompressionBlockSize(int compressionBlockSize) {
+        this.compressionBlockSize = compressionBlockSize;
+    }
+
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public long getRolloverTriples() {
+        return rolloverTriples;
+    }
+
+    public void setRolloverTriples(long rolloverTriples) {
+        this.rolloverTriples = rolloverTriples;
+    }
+
+    public long getRolloverBytes() {
+        return rolloverBytes;
+    }
+
+    public void setRolloverBytes(long rolloverBytes) {
+        this.rolloverBytes = rolloverBytes;
+    }
+
+    /**
+     * 
+     * @return true if the output is split over several files
+     */
+    public boolean isSharded() {
+        return shards > 0 || rolloverTriples > 0 || rolloverBytes > 0;
+    }
+
+    public int getMaxGraphFiles() {
+        return maxGraphFiles;
+    }
+
+    public void setMaxGraphFiles(int maxGraphFiles) {
+        this.maxGraphFiles = maxGraphFiles;
+    }
+
+    /**
+     * 
+     * @return true if each named graph is written to a file of its own
+     */
+    public boolean isGraphFiles() {
+        return maxGraphFiles > 0;
+    }
+
+    public String getNativeStoreIndexes() {
+        return nativeStoreIndexes;
+    }
+
+    public void setNativeStoreIndexes(String nativeStoreIndexes) {
+        this.nativeStoreIndexes = nativeStoreIndexes;
+    }
+
+    public boolean isNativeStore() {
+        return nativeStoreIndexes != null;
+    }
+
+    public boolean isCompressed() {
+        return compressionLevel != 0;
+    }
+
+    public boolean isAsynchronous() {
+        return writerBuffer > 0;
+    }
+
+    public boolean isDeduplicated() {
+        return deduplicationMemory > 0;
+    }
+}
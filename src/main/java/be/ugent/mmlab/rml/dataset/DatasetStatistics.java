@@ -0,0 +1,112 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openrdf.model.Resource;
+
+/**
+ * RML Processor
+ *
+ * Live counters of a dataset, kept up to date as statements are added,
+ * so that the size of a dataset is known without scanning it.
+ * The statements are counted per named graph and per Triples Map
+ * which was executed when they were added.
+ *
+ * @author andimou
+ */
+public class DatasetStatistics {
+
+    //Key of the statements without context
+    public static final String DEFAULT_GRAPH = "default";
+
+    private long statements = 0;
+    private long duplicates = 0;
+    private Map<String, Long> graphs = new LinkedHashMap<String, Long>();
+    private Map<String, Long> triplesMaps = new LinkedHashMap<String, Long>();
+    private String triplesMap = null;
+
+    /**
+     * Counts a statement added to the dataset
+     *
+     * @param contexts the contexts of the statement
+     */
+    public void recordStatement(Resource... contexts) {
+        if (contexts == null || contexts.length == 0) {
+            statements++;
+            increment(graphs, DEFAULT_GRAPH, 1);
+            increment(triplesMaps, triplesMap, 1);
+            return;
+        }
+        //One statement is stored per context
+        for (Resource context : contexts) {
+            increment(graphs, (context == null)
+                    ? DEFAULT_GRAPH : context.stringValue(), 1);
+        }
+        statements += contexts.length;
+        increment(triplesMaps, triplesMap, contexts.length);
+    }
+
+    /**
+     * Counts statements rejected in bulk, 
+     * once the duplicates are verified
+     *
+     * @param count
+     */
+    public void recordDuplicates(long count) {
+        duplicates += count;
+    }
+
+    /**
+     * Sets the total number of statements,
+     * when statements are added in bulk from a file
+     *
+     * @param statements
+     */
+    public void setStatements(long statements) {
+        this.statements = statements;
+    }
+
+    private static void increment(Map<String, Long> counts, String key, long value) {
+        if (key == null) {
+            return;
+        }
+        Long count = counts.get(key);
+        counts.put(key, (count == null) ? value : count + value);
+    }
+
+    /**
+     *
+     * @param triplesMap the name of the Triples Map whose
+     * statements are added from now on, or null
+     */
+    public void setTriplesMap(String triplesMap) {
+        this.triplesMap = triplesMap;
+    }
+
+    public String getTriplesMap() {
+        return triplesMap;
+    }
+
+    public long getStatements() {
+        return statements;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public Map<String, Long> getGraphCounts() {
+        return Collections.unmodifiableMap(graphs);
+    }
+
+    public Map<String, Long> getTriplesMapCounts() {
+        return Collections.unmodifiableMap(triplesMaps);
+    }
+
+    @Override
+    public String toString() {
+        return statements + " statements, " + duplicates + " duplicates rejected, "
+                + "per graph " + graphs + ", per Triples Map " + triplesMaps;
+    }
+}
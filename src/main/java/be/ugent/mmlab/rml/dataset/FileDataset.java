@@ -2,16 +2,21 @@ package be.ugent.mmlab.rml.dataset;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.zip.Deflater;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
+import org.openrdf.model.impl.ContextStatementImpl;
 import org.openrdf.model.impl.StatementImpl;
 import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.Rio;
@@ -28,18 +33,30 @@ public class FileDataset extends StdRMLDataset {
     
     private File target;
     private BufferedWriter fw;
+    //Output of the direct N-Triples and N-Quads encoder
+    private OutputStream out;
     private RDFWriter writer;
     private RDFFormat format = RDFFormat.NTRIPLES;
     //private int bnodeid = 0;
-    
-    private int size = 0;
+    //Bounded memory duplicate suppression, none if null
+    private SpillingDeduplicator deduplicator = null;
+    //Serializer thread of the asynchronous mode, none if null
+    private AsyncStatementWriter asyncWriter = null;
+    //Gzip compression level of the output, none if 0
+    private int compressionLevel = 0;
+    private int compressionBlockSize = ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE;
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+    //Files of the named graphs, none if the graphs are written to the target
+    private GraphOutputs graphOutputs = null;
+    private int maxOpenFiles = 0;
 
     public FileDataset(String target) {
         try {
             this.target = new File(target);
-            fw = new BufferedWriter(new FileWriter(target));
-            writer = Rio.createWriter(this.format, fw);
-            writer.startRDF();
+            if (target.endsWith(".gz")) {
+                compressionLevel = Deflater.DEFAULT_COMPRESSION;
+            }
+            openWriter();
         } catch (IOException ex) {
             log.error("IOException " + ex);
         } catch (RDFHandlerException ex) {
@@ -50,34 +67,13 @@ public class FileDataset extends StdRMLDataset {
     public FileDataset(String target, String outputFormat) {
 
         this.target = new File(target);
+        if (target.endsWith(".gz")) {
+            compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        }
 
         try {
-            fw = new BufferedWriter(new FileWriter(target));
-            switch (outputFormat) {
-                case "ntriples": 
-                    this.format = RDFFormat.NTRIPLES; 
-                    break;
-                case "n3": 
-                    this.format = RDFFormat.N3;
-                    break;
-                case "turtle": 
-                    this.format = RDFFormat.TURTLE;
-                    break;
-                case "nquads": 
-                    this.format = RDFFormat.NQUADS;
-                    break;
-                case "rdfxml": 
-                    this.format = RDFFormat.RDFXML;
-                    break;
-                case "rdfjson": 
-                    this.format = RDFFormat.RDFJSON;
-                    break;
-                case "jsonld": 
-                    this.format = RDFFormat.JSONLD;
-                    break;
-            }
-            writer = Rio.createWriter(this.format, fw);
-            writer.startRDF();
+            this.format = getFormat(outputFormat);
+            openWriter();
 
         } catch (IOException ex) {
             log.error("IOException ", ex);
@@ -87,43 +83,280 @@ public class FileDataset extends StdRMLDataset {
 
     }
 
+    /**
+     * 
+     * @param outputFormat the name of a format, as given on the command line
+     * @return the format, N-Triples if the name is unknown
+     */
+    static RDFFormat getFormat(String outputFormat) {
+        if (outputFormat == null) {
+            return RDFFormat.NTRIPLES;
+        }
+        switch (outputFormat) {
+            case "ntriples": 
+                return RDFFormat.NTRIPLES; 
+            case "n3": 
+                return RDFFormat.N3;
+            case "turtle": 
+                return RDFFormat.TURTLE;
+            case "trig": 
+                return RDFFormat.TRIG;
+            case "nquads": 
+                return RDFFormat.NQUADS;
+            case "rdfxml": 
+                return RDFFormat.RDFXML;
+            case "rdfjson": 
+                return RDFFormat.RDFJSON;
+            case "jsonld": 
+                return RDFFormat.JSONLD;
+            case "jsonld-flat": 
+                return StreamingJSONWriter.FLAT_JSONLD;
+            case "rmlb": 
+                return BinaryRDFWriter.FORMAT;
+        }
+        return RDFFormat.NTRIPLES;
+    }
+
+    /**
+     * 
+     * @param format
+     * @param out
+     * @return the writer of a format written without Rio, 
+     * or null if Rio writes the format
+     */
+    static RDFWriter createEncoder(RDFFormat format, OutputStream out) {
+        //N-Triples and N-Quads are encoded directly, bypassing Rio
+        if (format.equals(RDFFormat.NTRIPLES) || format.equals(RDFFormat.NQUADS)) {
+            return new NTriplesEncoder(out, format);
+        }
+        if (format.equals(BinaryRDFWriter.FORMAT)) {
+            return new BinaryRDFWriter(out);
+        }
+        //JSON is streamed rather than built in memory
+        if (format.equals(RDFFormat.JSONLD) || format.equals(RDFFormat.RDFJSON)
+                || format.equals(StreamingJSONWriter.FLAT_JSONLD)) {
+            return new StreamingJSONWriter(out, format);
+        }
+        //Turtle and TriG are grouped by subject
+        if (format.equals(RDFFormat.TURTLE) || format.equals(RDFFormat.TRIG)) {
+            return new SortedTurtleWriter(out, format);
+        }
+        return null;
+    }
+
+    private void openWriter() throws IOException, RDFHandlerException {
+        out = new FileOutputStream(target);
+        if (compressionLevel != 0) {
+            out = new ParallelGzipOutputStream(out, compressionLevel,
+                    compressionBlockSize, compressionThreads);
+        }
+        writer = createEncoder(format, out);
+        if (writer != null) {
+            fw = null;
+        } else {
+            fw = new BufferedWriter(new OutputStreamWriter(out));
+            writer = Rio.createWriter(format, fw);
+        }
+        writer.startRDF();
+    }
+
+    /**
+     * Compresses the output with gzip, in blocks compressed in parallel.
+     * The output is reopened, so it is to be called 
+     * before any statement is added.
+     * Targets ending with .gz are compressed with the default settings.
+     * 
+     * @param level the compression level, from 1 to 9, or 0 for none
+     * @param blockSize the number of uncompressed bytes per block
+     * @param threads the number of compressing threads
+     */
+    public void setCompression(int level, int blockSize, int threads) {
+        if (asyncWriter != null || statistics.getStatements() > 0) {
+            log.error("The compression is set before any statement is added.");
+            return;
+        }
+        this.compressionLevel = level;
+        this.compressionBlockSize = blockSize;
+        this.compressionThreads = threads;
+        try {
+            //Nothing is written yet, the unused output is replaced
+            out.close();
+            openWriter();
+            if (graphOutputs != null) {
+                createGraphOutputs();
+            }
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+        } catch (RDFHandlerException ex) {
+            log.error("RDFHandlerException " + ex);
+        }
+    }
+
+    /**
+     * Writes each named graph to a file of its own, opened when the graph
+     * is first written, and the default graph to the target. To be called
+     * before any statement is added and before the asynchronous mode is set.
+     * The files are compressed as the target, 
+     * its compressing threads divided among the open files.
+     * 
+     * @param maxOpenFiles the number of graph files open at once, 
+     * the least recently written one is closed when another one is needed
+     */
+    public void setGraphOutputs(int maxOpenFiles) {
+        if (asyncWriter != null || statistics.getStatements() > 0) {
+            log.error("The graph outputs are set before any statement is added.");
+            return;
+        }
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+        createGraphOutputs();
+    }
+
+    private void createGraphOutputs() {
+        graphOutputs = new GraphOutputs(target, format, writer, maxOpenFiles);
+        graphOutputs.setCompression(compressionLevel, compressionBlockSize, 
+                Math.max(1, compressionThreads / maxOpenFiles));
+    }
+
+    /**
+     * 
+     * @return the handler of the statements, 
+     * which routes them to their graph file if the graphs are written apart
+     */
+    private RDFHandler getHandler() {
+        return (graphOutputs != null) ? graphOutputs : writer;
+    }
+
+    /**
+     * Suppresses the duplicate triples within a fixed memory budget,
+     * the candidate duplicates are verified when the file is closed.
+     * 
+     * @param memoryBudget the memory budget in bytes
+     * @param directory the directory of the spilled files, 
+     * the system's temporary one if null
+     */
+    public void setDeduplication(long memoryBudget, File directory) {
+        try {
+            deduplicator = new SpillingDeduplicator(memoryBudget, directory);
+        } catch (IOException ex) {
+            log.error("IOException " + ex 
+                    + " The duplicate triples are not suppressed.");
+        }
+    }
+
+    /**
+     * Writes the statements on a serializer thread, 
+     * while the mapping thread keeps generating them.
+     * 
+     * @param bufferSize the number of statements buffered between both threads
+     */
+    public void setAsynchronous(int bufferSize) {
+        if (asyncWriter == null && writer != null) {
+            asyncWriter = new AsyncStatementWriter(getHandler(), bufferSize);
+        }
+    }
+
     @Override
     public void add(Resource s, URI p, Value o, Resource... contexts) {
         if (log.isDebugEnabled()) {
             log.debug("Add triple (" + s.stringValue()
                     + ", " + p.stringValue() + ", " + o.stringValue() + ").");
         }
+        contexts = newContexts(s, p, o, contexts);
+        if (contexts == null) {
+            return;
+        }
+        if (contexts == null || contexts.length == 0) {
+            write(s, p, o, null);
+            return;
+        }
+        //One statement is written per graph
+        for (Resource context : contexts) {
+            write(s, p, o, context);
+        }
+    }
 
-        Statement st = new StatementImpl(s, p, o);
+    private void write(Resource s, URI p, Value o, Resource context) {
+        if (deduplicator != null && !deduplicator.offer(s, p, o, context)) {
+            //Written when it is verified, if it is not a duplicate
+            return;
+        }
+
+        Statement st = (context == null) ? new StatementImpl(s, p, o)
+                : new ContextStatementImpl(s, p, o, context);
+        if (asyncWriter != null) {
+            asyncWriter.handleStatement(st);
+            recordStatement(context);
+            return;
+        }
         try {
-            writer.handleStatement(st);
-            size++;
+            getHandler().handleStatement(st);
+            recordStatement(context);
         } catch (RDFHandlerException ex) {
             log.error("RDFHandlerException " + ex);
         }
 
     }
+
+    private void recordStatement(Resource context) {
+        if (context == null) {
+            statistics.recordStatement();
+        } else {
+            statistics.recordStatement(context);
+        }
+    }
    
     /**
      * Close current repository.
      *
+     * @throws IllegalStateException if the serializer thread failed,
+     * once the incomplete file is closed
      */
     @Override
     public void closeRepository() {
         log.debug("Closing file...");
+        RDFHandlerException failure = null;
+        if (asyncWriter != null) {
+            //Drains the buffered statements
+            try {
+                asyncWriter.close();
+            } catch (RDFHandlerException ex) {
+                log.error("RDFHandlerException " + ex);
+                failure = ex;
+            }
+            asyncWriter = null;
+        }
+        if (deduplicator != null) {
+            long verified = deduplicator.finish(getHandler());
+            statistics.setStatements(statistics.getStatements() + verified);
+            statistics.recordDuplicates(deduplicator.getDuplicates());
+            deduplicator.close();
+            deduplicator = null;
+        }
+        if (graphOutputs != null) {
+            graphOutputs.close();
+        }
         try {
-            fw.flush();
+            if (fw != null) {
+                fw.flush();
+            }
             writer.endRDF();
-            fw.close();
+            if (fw != null) {
+                fw.close();
+            }
+            out.close();
         } catch (RDFHandlerException ex) {
             log.error(ex);
         } catch (IOException ex) {
             log.error("IOException " + ex);
-        } 
+        }
+        if (failure != null) {
+            throw new IllegalStateException(
+                    "The output " + target + " is incomplete.", failure);
+        }
     }
 
     @Override
     public int getSize() {
-        return size;
+        return (int) statistics.getStatements();
     }
 }
\ No newline at end of file
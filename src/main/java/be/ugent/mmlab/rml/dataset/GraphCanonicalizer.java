@@ -0,0 +1,416 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Reduces a graph to a canonical form, the sorted 64 bit hashes of its
+ * statements, so that two graphs are compared by comparing two arrays,
+ * whatever the order of their statements and the labels of their blank
+ * nodes.
+ *
+ * The statements without blank nodes are hashed as they are handled.
+ * The blank nodes are labeled by color refinement: they all start with
+ * the same color, then the color of each blank node is rehashed with the
+ * statements it occurs in, the other blank nodes of a statement by their
+ * current color, until the number of colors stops growing. Blank nodes
+ * which are still not told apart are distinguished and the colors refined
+ * again, until each blank node has its own color, which is then its label.
+ * The leaves with the same color have the same statements and are split
+ * all at once. Otherwise each member of the smallest class is
+ * distinguished in turn, backtracking over the class, and the smallest
+ * of the forms reached is kept, so that the form does not depend on
+ * which member comes first.
+ *
+ * Equal canonical forms are isomorphic graphs, up to hash collisions.
+ * The search is exponential for some regular graphs of blank nodes,
+ * so it stops after 4096 forms: the form may then tell two isomorphic
+ * graphs apart, which is logged.
+ *
+ * @author andimou
+ */
+public class GraphCanonicalizer extends RDFHandlerBase {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(GraphCanonicalizer.class.getSimpleName());
+
+    private static final long SEED = 0x9ae16a3b2f90404fL;
+    private static final long DEFAULT_GRAPH = 0xc3a5c85c97cb3127L;
+    private static final long BLANK = 0x6a09e667f3bcc909L;
+    private static final long SELF = 0xbb67ae8584caa73bL;
+    private static final long DISTINGUISHED = 0x3c6ef372fe94f82bL;
+    private static final long LEAF = 0xa54ff53a5f1d36f1L;
+    //Forms compared before the search is cut short
+    private static final int MAX_FORMS = 4096;
+
+    //Hashes of the statements without blank nodes
+    private long[] ground = new long[1024];
+    private int groundSize = 0;
+
+    //Statements with blank nodes, four terms each: subject, predicate,
+    //object and graph, a term hash or the index of a blank node
+    private long[] terms = new long[1024];
+    private int[] blankNodes = new int[1024];
+    private int blankSize = 0;
+    private Map<String, Integer> blankNodeIndexes = new HashMap<String, Integer>();
+
+    //Result of the canonicalization
+    private long[] canonical = null;
+    private boolean[] leaves = null;
+    //Number of forms reached by the search
+    private int forms = 0;
+    private boolean truncated = false;
+
+    @Override
+    public void handleStatement(Statement st) {
+        canonical = null;
+        Value[] values = {st.getSubject(), st.getPredicate(),
+            st.getObject(), st.getContext()};
+        boolean blank = false;
+        for (Value value : values) {
+            blank |= value instanceof BNode;
+        }
+        if (!blank) {
+            long hash = SEED;
+            for (Value value : values) {
+                hash = combine(hash, hash(value));
+            }
+            if (groundSize == ground.length) {
+                ground = Arrays.copyOf(ground, 2 * groundSize);
+            }
+            ground[groundSize++] = mix(hash);
+            return;
+        }
+        if (4 * blankSize + 4 > terms.length) {
+            terms = Arrays.copyOf(terms, 2 * terms.length);
+            blankNodes = Arrays.copyOf(blankNodes, 2 * blankNodes.length);
+        }
+        for (int i = 0; i < 4; i++) {
+            int position = 4 * blankSize + i;
+            if (values[i] instanceof BNode) {
+                String id = ((BNode) values[i]).getID();
+                Integer index = blankNodeIndexes.get(id);
+                if (index == null) {
+                    index = blankNodeIndexes.size();
+                    blankNodeIndexes.put(id, index);
+                }
+                blankNodes[position] = index;
+                terms[position] = BLANK;
+            } else {
+                blankNodes[position] = -1;
+                terms[position] = hash(values[i]);
+            }
+        }
+        blankSize++;
+    }
+
+    /**
+     *
+     * @return the sorted hashes of the distinct statements
+     */
+    public long[] getCanonicalForm() {
+        if (canonical == null) {
+            canonical = canonicalize();
+        }
+        return canonical;
+    }
+
+    /**
+     *
+     * @return a hash of the graph, independent of the order of its
+     * statements and of the labels of its blank nodes
+     */
+    public long getHash() {
+        long hash = SEED;
+        for (long statement : getCanonicalForm()) {
+            hash = combine(hash, statement);
+        }
+        return mix(hash);
+    }
+
+    /**
+     *
+     * @return the number of distinct statements
+     */
+    public int getSize() {
+        return getCanonicalForm().length;
+    }
+
+    /**
+     *
+     * @return true if the search was cut short, so that the canonical
+     * form may depend on the labels of the blank nodes
+     */
+    public boolean isTruncated() {
+        getCanonicalForm();
+        return truncated;
+    }
+
+    /**
+     *
+     * @param other
+     * @return true if both graphs have the same canonical form
+     */
+    public boolean isIsomorphic(GraphCanonicalizer other) {
+        long[] form = getCanonicalForm();
+        long[] otherForm = other.getCanonicalForm();
+        if (form.length != otherForm.length) {
+            log.debug("No same size : " + form.length + " != " + otherForm.length);
+            return false;
+        }
+        if (!Arrays.equals(form, otherForm)) {
+            log.debug("No same canonical form"
+                    + ((truncated || other.truncated)
+                    ? ", the search of a form was cut short." : "."));
+            return false;
+        }
+        return true;
+    }
+
+    private long[] canonicalize() {
+        long[] colors = new long[blankNodeIndexes.size()];
+        Arrays.fill(colors, BLANK);
+        //A leaf shares no statement with another blank node
+        leaves = new boolean[colors.length];
+        Arrays.fill(leaves, true);
+        for (int i = 0; i < blankSize; i++) {
+            int first = -1;
+            for (int j = 0; j < 4; j++) {
+                int blankNode = blankNodes[4 * i + j];
+                if (blankNode >= 0 && first >= 0 && blankNode != first) {
+                    leaves[first] = false;
+                    leaves[blankNode] = false;
+                } else if (blankNode >= 0) {
+                    first = blankNode;
+                }
+            }
+        }
+        forms = 0;
+        truncated = false;
+        long[] form = search(colors, refine(colors, 1));
+        if (truncated) {
+            log.warn("The canonical form of " + colors.length + " blank nodes "
+                    + "was cut short after " + forms + " forms.");
+        }
+        log.debug(blankNodeIndexes.size() + " blank nodes canonicalized.");
+        return form;
+    }
+
+    /**
+     * Distinguishes the blank nodes until each has its own color
+     *
+     * @param colors the refined colors
+     * @param classes the number of colors
+     * @return the smallest form reached from the colors
+     */
+    private long[] search(long[] colors, int classes) {
+        if (classes >= colors.length) {
+            forms++;
+            return form(colors);
+        }
+        long[] split = colors.clone();
+        if (splitLeaves(split)) {
+            return search(split, refine(split, count(split)));
+        }
+        long color = smallestClass(colors);
+        long[] best = null;
+        for (int i = 0; i < colors.length && !truncated; i++) {
+            if (colors[i] != color) {
+                continue;
+            }
+            //Each member in turn gets the same new color
+            long[] branch = colors.clone();
+            branch[i] = mix(combine(color, DISTINGUISHED));
+            long[] form = search(branch, refine(branch, classes + 1));
+            if (best == null || compare(form, best) < 0) {
+                best = form;
+            }
+            truncated = forms >= MAX_FORMS;
+        }
+        return best;
+    }
+
+    /**
+     *
+     * @param colors
+     * @return the sorted hashes of the distinct statements,
+     * the blank nodes by their color
+     */
+    private long[] form(long[] colors) {
+        long[] form = Arrays.copyOf(ground, groundSize + blankSize);
+        for (int i = 0; i < blankSize; i++) {
+            form[groundSize + i] = statementHash(i, colors, -1);
+        }
+        Arrays.sort(form);
+        //The duplicate statements are counted once
+        int size = 0;
+        for (int i = 0; i < form.length; i++) {
+            if (size == 0 || form[size - 1] != form[i]) {
+                form[size++] = form[i];
+            }
+        }
+        return Arrays.copyOf(form, size);
+    }
+
+    private static int compare(long[] form, long[] other) {
+        if (form.length != other.length) {
+            return (form.length < other.length) ? -1 : 1;
+        }
+        for (int i = 0; i < form.length; i++) {
+            if (form[i] != other[i]) {
+                return (form[i] < other[i]) ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Rehashes the colors until their number stops growing
+     *
+     * @param colors
+     * @param classes the current number of colors
+     * @return the number of colors
+     */
+    private int refine(long[] colors, int classes) {
+        while (true) {
+            long[] signatures = new long[colors.length];
+            for (int i = 0; i < blankSize; i++) {
+                for (int j = 0; j < 4; j++) {
+                    int blankNode = blankNodes[4 * i + j];
+                    if (blankNode >= 0) {
+                        //A sum, as the statements of a blank node have no order
+                        signatures[blankNode] += statementHash(i, colors, j);
+                    }
+                }
+            }
+            long[] refined = new long[colors.length];
+            for (int i = 0; i < colors.length; i++) {
+                refined[i] = mix(combine(colors[i], signatures[i]));
+            }
+            int refinedClasses = count(refined);
+            if (refinedClasses <= classes) {
+                return classes;
+            }
+            System.arraycopy(refined, 0, colors, 0, colors.length);
+            classes = refinedClasses;
+        }
+    }
+
+    /**
+     * Splits the classes of leaves, whose members have the same statements
+     * and are interchangeable, all at once
+     *
+     * @param colors
+     * @return true if a class was split
+     */
+    private boolean splitLeaves(long[] colors) {
+        Map<Long, Integer> members = new HashMap<Long, Integer>();
+        Map<Long, Boolean> leafClasses = new HashMap<Long, Boolean>();
+        for (int i = 0; i < colors.length; i++) {
+            Integer count = members.get(colors[i]);
+            members.put(colors[i], (count == null) ? 1 : count + 1);
+            Boolean leaf = leafClasses.get(colors[i]);
+            leafClasses.put(colors[i], (leaf == null || leaf) && leaves[i]);
+        }
+        Map<Long, Integer> ranks = new HashMap<Long, Integer>();
+        for (int i = 0; i < colors.length; i++) {
+            if (members.get(colors[i]) > 1 && leafClasses.get(colors[i])) {
+                Integer rank = ranks.get(colors[i]);
+                rank = (rank == null) ? 0 : rank + 1;
+                ranks.put(colors[i], rank);
+                colors[i] = mix(combine(colors[i], LEAF + rank));
+            }
+        }
+        return !ranks.isEmpty();
+    }
+
+    /**
+     *
+     * @param colors
+     * @return the color of the smallest class with several members,
+     * the smallest color among them
+     */
+    private static long smallestClass(long[] colors) {
+        Map<Long, Integer> members = new HashMap<Long, Integer>();
+        for (long color : colors) {
+            Integer count = members.get(color);
+            members.put(color, (count == null) ? 1 : count + 1);
+        }
+        long color = 0;
+        int smallest = Integer.MAX_VALUE;
+        for (Map.Entry<Long, Integer> entry : members.entrySet()) {
+            int size = entry.getValue();
+            if (size > 1 && (size < smallest
+                    || (size == smallest && entry.getKey() < color))) {
+                smallest = size;
+                color = entry.getKey();
+            }
+        }
+        return color;
+    }
+
+    /**
+     *
+     * @param statement
+     * @param colors
+     * @param self the position of the blank node being colored, -1 if none
+     * @return the hash of the statement, its blank nodes by their color
+     */
+    private long statementHash(int statement, long[] colors, int self) {
+        long hash = SEED;
+        for (int j = 0; j < 4; j++) {
+            int blankNode = blankNodes[4 * statement + j];
+            long term = (blankNode < 0) ? terms[4 * statement + j] : colors[blankNode];
+            hash = combine(hash, (j == self) ? combine(term, SELF) : term);
+        }
+        return mix(hash);
+    }
+
+    private static int count(long[] colors) {
+        long[] sorted = colors.clone();
+        Arrays.sort(sorted);
+        int classes = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                classes++;
+            }
+        }
+        return classes;
+    }
+
+    private static long hash(Value value) {
+        if (value == null) {
+            return DEFAULT_GRAPH;
+        }
+        //The string of a term also tells its kind: IRI or literal
+        String string = value.toString();
+        long hash = SEED;
+        for (int i = 0; i < string.length(); i++) {
+            hash = (hash ^ string.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash ^ string.length());
+    }
+
+    private static long combine(long hash, long value) {
+        return Long.rotateLeft(hash ^ value, 23) * 0x9e3779b97f4a7c15L;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
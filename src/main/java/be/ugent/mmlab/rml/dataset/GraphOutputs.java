@@ -0,0 +1,274 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+
+/**
+ * RML Processor
+ *
+ * Routes the statements of each named graph to a file of its own and the
+ * statements of the default graph to the main output. The file of a graph
+ * is opened when the graph is first written, and at most a number of
+ * files are open at once: the least recently written one is closed when
+ * another one is needed. A graph written again after its file was closed
+ * is appended to its file for N-Triples and N-Quads, and continued in a
+ * new part for the other formats, which can not be appended to.
+ *
+ * The files of the output out.nq are named out-[graph]-[part].nq, the
+ * graphs numbered in the order they are first written, and the manifest
+ * out.nq.manifest lists the graph of each file.
+ *
+ * @author andimou
+ */
+class GraphOutputs implements RDFHandler {
+
+    // Log
+    private static Log log = LogFactory.getLog(GraphOutputs.class);
+
+    private File target;
+    private RDFFormat format;
+    private RDFHandler defaultGraph;
+    private int maxOpenFiles;
+    //Gzip compression level of the files, none if 0
+    private int compressionLevel = 0;
+    private int compressionBlockSize = ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE;
+    private int compressionThreads = 1;
+
+    //Every graph written, in the order they were first written
+    private Map<Resource, Graph> graphs = new LinkedHashMap<Resource, Graph>();
+    //The graphs with an open file, the least recently written first
+    private LinkedHashMap<Resource, Graph> open =
+            new LinkedHashMap<Resource, Graph>(16, 0.75f, true);
+
+    /**
+     *
+     * @param target the path of the output, from which the files are named
+     * @param format
+     * @param defaultGraph the handler of the default graph
+     * @param maxOpenFiles the number of files open at once
+     */
+    GraphOutputs(File target, RDFFormat format, RDFHandler defaultGraph,
+            int maxOpenFiles) {
+        this.target = target;
+        this.format = format;
+        this.defaultGraph = defaultGraph;
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+    }
+
+    /**
+     *
+     * @param level the compression level, from 1 to 9, or 0 for none
+     * @param blockSize the number of uncompressed bytes per block
+     * @param threads the number of compressing threads of each file
+     */
+    void setCompression(int level, int blockSize, int threads) {
+        this.compressionLevel = level;
+        this.compressionBlockSize = blockSize;
+        this.compressionThreads = threads;
+    }
+
+    @Override
+    public void startRDF() {
+    }
+
+    @Override
+    public void endRDF() {
+    }
+
+    @Override
+    public void handleNamespace(String prefix, String uri)
+            throws RDFHandlerException {
+        defaultGraph.handleNamespace(prefix, uri);
+    }
+
+    @Override
+    public void handleComment(String comment) throws RDFHandlerException {
+        defaultGraph.handleComment(comment);
+    }
+
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        Resource context = st.getContext();
+        if (context == null) {
+            defaultGraph.handleStatement(st);
+            return;
+        }
+        Graph graph = open.get(context);
+        try {
+            if (graph == null) {
+                graph = graphs.get(context);
+                if (graph == null) {
+                    graph = new Graph(context, graphs.size());
+                    graphs.put(context, graph);
+                }
+                if (open.size() >= maxOpenFiles) {
+                    Iterator<Graph> eldest = open.values().iterator();
+                    eldest.next().close();
+                    eldest.remove();
+                }
+                graph.open();
+                open.put(context, graph);
+            }
+        } catch (IOException ex) {
+            throw new RDFHandlerException(ex);
+        }
+        graph.writer.handleStatement(st);
+        graph.part.triples++;
+    }
+
+    /**
+     * Closes the files of the graphs and writes the manifest,
+     * the default graph is closed by its owner
+     */
+    void close() {
+        for (Graph graph : open.values()) {
+            graph.close();
+        }
+        open.clear();
+        writeManifest();
+    }
+
+    private void writeManifest() {
+        File manifest = new File(target.getPath() + ".manifest");
+        try {
+            PrintWriter output = new PrintWriter(
+                    new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(manifest), "UTF-8")));
+            try {
+                output.println("# file\tgraph\ttriples");
+                for (Graph graph : graphs.values()) {
+                    for (Part part : graph.parts) {
+                        output.println(part.file.getName() + "\t"
+                                + graph.context.stringValue() + "\t" + part.triples);
+                    }
+                }
+            } finally {
+                output.close();
+            }
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+        }
+    }
+
+    /**
+     *
+     * @return the files written, in the order of the manifest
+     */
+    List<File> getFiles() {
+        List<File> files = new ArrayList<File>();
+        for (Graph graph : graphs.values()) {
+            for (Part part : graph.parts) {
+                files.add(part.file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     *
+     * @return the number of graphs written
+     */
+    int getGraphs() {
+        return graphs.size();
+    }
+
+    private boolean isAppendable() {
+        return format.equals(RDFFormat.NTRIPLES) || format.equals(RDFFormat.NQUADS);
+    }
+
+    private File getFile(int graph, int part) {
+        String name = target.getName();
+        int extension = name.indexOf('.');
+        String base = (extension > 0) ? name.substring(0, extension) : name;
+        String suffix = (extension > 0) ? name.substring(extension) : "";
+        return new File(target.getAbsoluteFile().getParentFile(),
+                base + "-" + graph + "-" + part + suffix);
+    }
+
+    /**
+     * The files of a graph
+     */
+    private class Graph {
+        private Resource context;
+        private int index;
+        private List<Part> parts = new ArrayList<Part>();
+        private Part part = null;
+        private OutputStream out;
+        private BufferedWriter fw;
+        private RDFWriter writer;
+
+        Graph(Resource context, int index) {
+            this.context = context;
+            this.index = index;
+        }
+
+        void open() throws IOException, RDFHandlerException {
+            //A gzip member appended to a gzip file is read after the others
+            boolean append = part != null && isAppendable();
+            if (!append) {
+                part = new Part(getFile(index, parts.size()));
+                parts.add(part);
+            }
+            out = new FileOutputStream(part.file, append);
+            if (compressionLevel != 0) {
+                out = new ParallelGzipOutputStream(out, compressionLevel,
+                        compressionBlockSize, compressionThreads);
+            }
+            writer = FileDataset.createEncoder(format, out);
+            if (writer != null) {
+                fw = null;
+            } else {
+                fw = new BufferedWriter(new OutputStreamWriter(out));
+                writer = Rio.createWriter(format, fw);
+            }
+            writer.startRDF();
+        }
+
+        void close() {
+            try {
+                if (fw != null) {
+                    fw.flush();
+                }
+                writer.endRDF();
+                if (fw != null) {
+                    fw.close();
+                }
+                out.close();
+            } catch (RDFHandlerException ex) {
+                log.error(ex);
+            } catch (IOException ex) {
+                log.error("IOException " + ex);
+            }
+            writer = null;
+        }
+    }
+
+    private static class Part {
+        private File file;
+        private long triples = 0;
+
+        Part(File file) {
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFWriterBase;
+
+/**
+ * RML Processor
+ *
+ * N-Triples and N-Quads writer which encodes the statements straight to
+ * bytes in a reusable buffer, instead of escaping them char by char
+ * through a Writer. Strings of printable ASCII characters are copied
+ * as they are, and the encoded predicates, datatypes and graphs are
+ * cached, as they recur in almost every statement.
+ *
+ * The output is byte for byte the one of the Rio 2.8 writers with their
+ * default settings: the characters outside printable ASCII are escaped, 
+ * in literals as well as in IRIs, so the output is plain ASCII.
+ *
+ * @author andimou
+ */
+public class NTriplesEncoder extends RDFWriterBase {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    //Encoded terms kept in the cache of recurring terms
+    private static final int CACHE_SIZE = 4096;
+    //Longest cached IRI, so that it is always encoded within the buffer
+    private static final int MAX_CACHED_LENGTH = 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(UTF_8);
+
+    private OutputStream out;
+    private RDFFormat format;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private Map<String, byte[]> cache = new HashMap<String, byte[]>();
+
+    /**
+     *
+     * @param out
+     * @param format N-Triples or N-Quads
+     */
+    public NTriplesEncoder(OutputStream out, RDFFormat format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    @Override
+    public RDFFormat getRDFFormat() {
+        return format;
+    }
+
+    @Override
+    public void startRDF() throws RDFHandlerException {
+    }
+
+    @Override
+    public void endRDF() throws RDFHandlerException {
+        try {
+            flush();
+            out.flush();
+        } catch (IOException ex) {
+            throw new RDFHandlerException(ex);
+        }
+    }
+
+    @Override
+    public void handleNamespace(String prefix, String uri) {
+        //N-Triples has no namespaces
+    }
+
+    @Override
+    public void handleComment(String comment) throws RDFHandlerException {
+        try {
+            writeAscii("# ");
+            put(comment.getBytes(UTF_8));
+            put((byte) '\n');
+        } catch (IOException ex) {
+            throw new RDFHandlerException(ex);
+        }
+    }
+
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        try {
+            writeResource(st.getSubject());
+            put((byte) ' ');
+            writeCached(st.getPredicate());
+            put((byte) ' ');
+            writeValue(st.getObject());
+            if (st.getContext() != null && RDFFormat.NQUADS.equals(format)) {
+                put((byte) ' ');
+                if (st.getContext() instanceof URI) {
+                    writeCached((URI) st.getContext());
+                } else {
+                    writeResource(st.getContext());
+                }
+            }
+            writeAscii(" .\n");
+        } catch (IOException ex) {
+            throw new RDFHandlerException(ex);
+        }
+    }
+
+    private void writeValue(Value value) throws IOException {
+        if (writeTerm(value)) {
+            return;
+        }
+        if (value instanceof Literal) {
+            writeLiteral((Literal) value, true);
+        } else {
+            writeResource((Resource) value);
+        }
+    }
+
+    private void writeResource(Resource resource) throws IOException {
+        if (writeTerm(resource)) {
+            return;
+        }
+        if (resource instanceof BNode) {
+            writeBNode((BNode) resource);
+        } else {
+            writeURI(resource.stringValue());
+        }
+    }
+
+    private void writeURI(String uri) throws IOException {
+        put((byte) '<');
+        writeString(uri);
+        put((byte) '>');
+    }
+
+    //Recurring IRIs are encoded once
+    private void writeCached(URI uri) throws IOException {
+        if (writeTerm(uri)) {
+            return;
+        }
+        String value = uri.stringValue();
+        byte[] bytes = cache.get(value);
+        if (bytes == null) {
+            if (cache.size() >= CACHE_SIZE || value.length() > MAX_CACHED_LENGTH) {
+                writeURI(value);
+                return;
+            }
+            bytes = encode(uri);
+            cache.put(value, bytes);
+        }
+        put(bytes);
+    }
+
+    //The interned terms of the run keep their encoding
+    private boolean writeTerm(Value value) throws IOException {
+        if (!(value instanceof TermDictionary.Term)) {
+            return false;
+        }
+        TermDictionary.Term term = (TermDictionary.Term) value;
+        byte[] bytes = term.getEncoded();
+        if (bytes == null) {
+            if (!isEncodable(value)) {
+                return false;
+            }
+            bytes = encode(value);
+            term.setEncoded(bytes);
+        }
+        put(bytes);
+        return true;
+    }
+
+    //Whether a term is always encoded within the buffer
+    private static boolean isEncodable(Value value) {
+        if (value.stringValue().length() > MAX_CACHED_LENGTH) {
+            return false;
+        }
+        if (!(value instanceof Literal)) {
+            return true;
+        }
+        Literal literal = (Literal) value;
+        return (literal.getLanguage() == null
+                || literal.getLanguage().length() <= MAX_CACHED_LENGTH)
+                && (literal.getDatatype() == null
+                || literal.getDatatype().stringValue().length() <= MAX_CACHED_LENGTH);
+    }
+
+    private byte[] encode(Value value) throws IOException {
+        //Encoded in the buffer and copied out of it
+        flush();
+        if (value instanceof Literal) {
+            writeLiteral((Literal) value, false);
+        } else {
+            writeURI(value.stringValue());
+        }
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        buffer.clear();
+        return bytes;
+    }
+
+    private void writeBNode(BNode bNode) throws IOException {
+        String id = bNode.getID();
+        writeAscii("_:");
+        if (id.isEmpty()) {
+            writeAscii("genid");
+            writeAscii(Integer.toHexString(bNode.hashCode()));
+            return;
+        }
+        //Only letters and digits are valid in a blank node label
+        if (!isLetter(id.charAt(0))) {
+            writeAscii("genid");
+            writeAscii(Integer.toHexString(id.charAt(0)));
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (isLetter(c) || (c >= '0' && c <= '9')) {
+                put((byte) c);
+            } else {
+                writeAscii(Integer.toHexString(c));
+            }
+        }
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * 
+     * @param literal
+     * @param cached false to encode the datatype in place, 
+     * when the literal itself is encoded to be cached
+     */
+    private void writeLiteral(Literal literal, boolean cached) throws IOException {
+        put((byte) '"');
+        writeString(literal.getLabel());
+        put((byte) '"');
+        String language = literal.getLanguage();
+        URI datatype = literal.getDatatype();
+        if (language != null) {
+            put((byte) '@');
+            put(language.getBytes(UTF_8));
+        } else if (datatype != null && !XMLSchema.STRING.equals(datatype)) {
+            //xsd:string literals are written as plain literals
+            writeAscii("^^");
+            if (cached) {
+                writeCached(datatype);
+            } else {
+                writeURI(datatype.stringValue());
+            }
+        }
+    }
+
+    /**
+     * Writes a string escaped as NTriplesUtil.escapeString of Rio does, 
+     * copying it as it is if it has only printable ASCII characters.
+     * Every other character is escaped as \\uXXXX, one UTF-16 unit at a time, 
+     * so that a surrogate pair is written as two escapes and an unpaired 
+     * surrogate as one, and the output is always ASCII.
+     */
+    private void writeString(String value) throws IOException {
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c > 0x7e || c == '\\' || c == '"') {
+                break;
+            }
+            i++;
+        }
+        if (i == length) {
+            writeAscii(value);
+            return;
+        }
+        writeAscii(value.substring(0, i));
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                writeAscii("\\\\");
+            } else if (c == '"') {
+                writeAscii("\\\"");
+            } else if (c == '\n') {
+                writeAscii("\\n");
+            } else if (c == '\r') {
+                writeAscii("\\r");
+            } else if (c == '\t') {
+                writeAscii("\\t");
+            } else if (c < 0x20 || c > 0x7e) {
+                writeAscii("\\u");
+                for (int shift = 12; shift >= 0; shift -= 4) {
+                    put(HEX[(c >> shift) & 0xf]);
+                }
+            } else {
+                put((byte) c);
+            }
+        }
+    }
+
+    private void writeAscii(String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put(b);
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (buffer.remaining() < bytes.length) {
+            flush();
+            if (bytes.length > buffer.capacity()) {
+                out.write(bytes);
+                return;
+            }
+        }
+        buffer.put(bytes);
+    }
+
+    private void flush() throws IOException {
+        if (buffer.position() > 0) {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.ContextStatementImpl;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.config.RepositoryConfig;
+import org.openrdf.repository.config.RepositoryConfigException;
+import org.openrdf.repository.manager.LocalRepositoryManager;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.repository.sail.config.SailRepositoryConfig;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.nativerdf.NativeStore;
+import org.openrdf.sail.nativerdf.config.NativeStoreConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Dataset which bulk loads its statements into a native store, so that
+ * the output is queryable without writing a file and importing it.
+ * The statements are added at the sail level, bypassing the repository
+ * layer, in large transactions. They are buffered in batches which are
+ * sorted in the order of the first index before they are inserted, so
+ * that the inserts into the indexes are local.
+ *
+ * @author andimou
+ */
+public class NativeStoreDataset extends StdRMLDataset {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(NativeStoreDataset.class);
+
+    public static final String DEFAULT_INDEXES = "spoc,posc";
+
+    private NativeStore store = null;
+    private SailConnection sailConnection = null;
+    private Comparator<Statement> order;
+    private List<Statement> batch = new ArrayList<Statement>();
+    //Statements sorted per batch and committed per transaction
+    private int sortedBatchSize = 100000;
+    private long transactionSize = 1000000;
+    private long uncommitted = 0;
+
+    //Statistics
+    private long loaded = 0;
+    private long initialSize = 0;
+    private long startTime = 0;
+    private long loadTime = 0;
+
+    /**
+     *
+     * @param dataDir the directory of the native store
+     * @param indexes the index orders, as "spoc,posc"
+     */
+    public NativeStoreDataset(File dataDir, String indexes) {
+        try {
+            repository.shutDown();
+            store = new NativeStore(dataDir, indexes);
+            repository = new SailRepository(store);
+            repository.initialize();
+        } catch (RepositoryException ex) {
+            log.error("Repository Exception " + ex);
+        }
+        this.order = createOrder(indexes);
+    }
+
+    /**
+     * Creates the native store as a repository of a repository manager
+     *
+     * @param manager
+     * @param repositoryID
+     * @param indexes the index orders, as "spoc,posc"
+     */
+    public NativeStoreDataset(LocalRepositoryManager manager,
+            String repositoryID, String indexes) {
+        try {
+            repository.shutDown();
+            manager.addRepositoryConfig(new RepositoryConfig(repositoryID,
+                    new SailRepositoryConfig(new NativeStoreConfig(indexes))));
+            Repository managed = manager.getRepository(repositoryID);
+            if (managed instanceof SailRepository
+                    && ((SailRepository) managed).getSail() instanceof NativeStore) {
+                store = (NativeStore) ((SailRepository) managed).getSail();
+            } else {
+                log.error("Repository " + repositoryID + " is not a native store.");
+            }
+            repository = managed;
+        } catch (RepositoryConfigException ex) {
+            log.error("Repository Config Exception " + ex);
+        } catch (RepositoryException ex) {
+            log.error("Repository Exception " + ex);
+        }
+        this.order = createOrder(indexes);
+    }
+
+    /**
+     * Orders the statements as the first index, by their terms
+     *
+     * @param indexes
+     * @return
+     */
+    private static Comparator<Statement> createOrder(String indexes) {
+        final String index = indexes.split(",")[0].trim().toLowerCase();
+        return new Comparator<Statement>() {
+            @Override
+            public int compare(Statement first, Statement second) {
+                for (int i = 0; i < index.length(); i++) {
+                    int comparison = term(first, index.charAt(i)).compareTo(
+                            term(second, index.charAt(i)));
+                    if (comparison != 0) {
+                        return comparison;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
+    private static String term(Statement st, char field) {
+        switch (field) {
+            case 's':
+                return st.getSubject().stringValue();
+            case 'p':
+                return st.getPredicate().stringValue();
+            case 'o':
+                return st.getObject().stringValue();
+            default:
+                return (st.getContext() == null) ? "" : st.getContext().stringValue();
+        }
+    }
+
+    /**
+     *
+     * @param sortedBatchSize the number of statements sorted before they are inserted
+     */
+    public void setSortedBatchSize(int sortedBatchSize) {
+        this.sortedBatchSize = Math.max(1, sortedBatchSize);
+    }
+
+    /**
+     *
+     * @param transactionSize the number of statements per transaction
+     */
+    public void setTransactionSize(long transactionSize) {
+        this.transactionSize = Math.max(1, transactionSize);
+    }
+
+    @Override
+    public void add(Resource s, URI p, Value o, Resource... contexts) {
+        if (store == null) {
+            return;
+        }
+        contexts = newContexts(s, p, o, contexts);
+        if (contexts == null) {
+            return;
+        }
+        if (contexts == null || contexts.length == 0) {
+            batch.add(new StatementImpl(s, p, o));
+        } else {
+            for (Resource context : contexts) {
+                batch.add((context == null) ? new StatementImpl(s, p, o)
+                        : new ContextStatementImpl(s, p, o, context));
+            }
+        }
+        statistics.recordStatement(contexts);
+        if (batch.size() >= sortedBatchSize) {
+            load();
+        }
+    }
+
+    /**
+     * Inserts the sorted batch, committing whenever a transaction is full
+     */
+    private void load() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            if (sailConnection == null) {
+                sailConnection = store.getConnection();
+                sailConnection.begin();
+                initialSize = sailConnection.size();
+                startTime = start;
+            }
+            Collections.sort(batch, order);
+            for (Statement st : batch) {
+                if (st.getContext() == null) {
+                    sailConnection.addStatement(
+                            st.getSubject(), st.getPredicate(), st.getObject());
+                } else {
+                    sailConnection.addStatement(st.getSubject(),
+                            st.getPredicate(), st.getObject(), st.getContext());
+                }
+            }
+            loaded += batch.size();
+            uncommitted += batch.size();
+            if (uncommitted >= transactionSize) {
+                commit();
+            }
+        } catch (SailException ex) {
+            log.error("Sail Exception " + ex);
+        }
+        batch.clear();
+        loadTime += System.nanoTime() - start;
+    }
+
+    private void commit() throws SailException {
+        sailConnection.commit();
+        sailConnection.begin();
+        uncommitted = 0;
+        log.debug("Loaded " + loaded + " statements, "
+                + getThroughput() + " statements per second.");
+    }
+
+    /**
+     * Loads and commits the buffered statements,
+     * so that they are visible to the repository
+     */
+    @Override
+    public void flush() {
+        load();
+        if (sailConnection != null && uncommitted > 0) {
+            try {
+                commit();
+            } catch (SailException ex) {
+                log.error("Sail Exception " + ex);
+            }
+        }
+        super.flush();
+    }
+
+    @Override
+    public void addFile(String filepath, RDFFormat format) {
+        flush();
+        super.addFile(filepath, format);
+    }
+
+    @Override
+    public void dumpRDF(OutputStream out, RDFFormat outform) {
+        flush();
+        super.dumpRDF(out, outform);
+    }
+
+    @Override
+    protected List<Statement> tuplePattern(Resource s, URI p, Value o,
+            Resource... contexts) {
+        flush();
+        return super.tuplePattern(s, p, o, contexts);
+    }
+
+    /**
+     *
+     * @return the statements loaded per second, since the first one
+     */
+    public long getThroughput() {
+        long elapsed = System.nanoTime() - startTime;
+        return (startTime == 0 || elapsed <= 0) ? 0 : loaded * 1000000000L / elapsed;
+    }
+
+    /**
+     * 
+     * @return the number of statements stored by this dataset, 
+     * the ones of the store before it was opened excluded
+     * @throws Exception 
+     */
+    @Override
+    protected long getStoredSize() throws Exception {
+        flush();
+        if (sailConnection == null) {
+            //Nothing was loaded, or the store is already reconciled and closed
+            return statistics.getStatements();
+        }
+        return sailConnection.size() - initialSize;
+    }
+
+    @Override
+    public void closeRepository() {
+        log.debug("Closing native store..");
+        load();
+        if (sailConnection != null) {
+            //Commits the last batch and counts the duplicates
+            reconcile();
+            try {
+                sailConnection.commit();
+                log.info("Loaded " + loaded + " statements, " + statistics.getStatements()
+                        + " of them new, " + getThroughput() + " statements per second, "
+                        + (loadTime / 1000000) + " ms inserting.");
+                sailConnection.close();
+            } catch (SailException ex) {
+                log.error("Sail Exception " + ex);
+            }
+            sailConnection = null;
+        }
+        super.closeRepository();
+    }
+}
@@ -0,0 +1,311 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * RML Processor
+ *
+ * Gzip output stream which compresses its blocks on a pool of threads,
+ * as pigz does. Each block is deflated independently, primed with the
+ * last 32KB of the block before it, and ends on a byte boundary, so the
+ * compressed blocks are simply concatenated in their order. The check
+ * sums of the blocks are combined into the one of the whole stream,
+ * which is a single gzip member readable by gunzip.
+ *
+ * Only one thread may write to the stream.
+ *
+ * @author andimou
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] HEADER = {
+        (byte) 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private OutputStream out;
+    private int level;
+    private int blockSize;
+    private ExecutorService workers;
+    //Blocks being compressed, in the order of the output
+    private Deque<Future<Block>> pending = new ArrayDeque<Future<Block>>();
+    private int maxPending;
+    private byte[] current;
+    private int position = 0;
+    private byte[] previous = null;
+    private int previousLength = 0;
+    private long crc = 0;
+    private long length = 0;
+    private boolean closed = false;
+
+    /**
+     *
+     * @param out
+     * @param level the compression level, from 1 to 9
+     * @param blockSize the number of uncompressed bytes per block
+     * @param threads the number of compressing threads
+     * @throws IOException
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int blockSize,
+            int threads) throws IOException {
+        this.out = out;
+        this.level = level;
+        this.blockSize = Math.max(blockSize, DICTIONARY_SIZE);
+        int size = Math.max(1, threads);
+        this.maxPending = size * 2;
+        this.workers = Executors.newFixedThreadPool(size, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "gzip-worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.current = new byte[this.blockSize];
+        out.write(HEADER);
+    }
+
+    /**
+     * Compresses with the default block size
+     * on as many threads as there are processors
+     *
+     * @param out
+     * @param level the compression level, from 1 to 9
+     * @throws IOException
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level) throws IOException {
+        this(out, level, DEFAULT_BLOCK_SIZE,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (position == current.length) {
+            submit(false);
+        }
+        current[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+        while (count > 0) {
+            if (position == current.length) {
+                submit(false);
+            }
+            int chunk = Math.min(count, current.length - position);
+            System.arraycopy(bytes, offset, current, position, chunk);
+            position += chunk;
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        //A full block waits for the oldest one to be written
+        while (pending.size() >= maxPending) {
+            writeBlock(pending.removeFirst());
+        }
+        final byte[] block = current;
+        final int blockLength = position;
+        final byte[] dictionary = previous;
+        final int dictionaryLength = previousLength;
+        final boolean finish = last;
+        pending.addLast(workers.submit(new Callable<Block>() {
+            @Override
+            public Block call() {
+                return compress(block, blockLength, dictionary, dictionaryLength, finish);
+            }
+        }));
+        previous = block;
+        previousLength = blockLength;
+        current = new byte[blockSize];
+        position = 0;
+    }
+
+    private Block compress(byte[] block, int blockLength, byte[] dictionary,
+            int dictionaryLength, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                int size = Math.min(DICTIONARY_SIZE, dictionaryLength);
+                deflater.setDictionary(dictionary, dictionaryLength - size, size);
+            }
+            deflater.setInput(block, 0, blockLength);
+            ByteArrayOutputStream compressed =
+                    new ByteArrayOutputStream(blockLength / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, count);
+                }
+            } else {
+                //Ends the block on a byte boundary, without closing the stream
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length,
+                            Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(block, 0, blockLength);
+            return new Block(compressed.toByteArray(), checksum.getValue(), blockLength);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeBlock(Future<Block> future) throws IOException {
+        Block block;
+        try {
+            block = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+        out.write(block.data);
+        crc = combine(crc, block.crc, block.length);
+        length += block.length;
+    }
+
+    /**
+     * Waits for the compressed blocks and writes them.
+     * The current block is not compressed before it is full,
+     * so that the blocks keep their size.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeBlock(pending.removeFirst());
+        }
+        out.flush();
+    }
+
+    /**
+     * Compresses the last block, writes the gzip trailer
+     * and closes the underlying stream
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            submit(true);
+            closed = true;
+            while (!pending.isEmpty()) {
+                writeBlock(pending.removeFirst());
+            }
+            writeInt((int) crc);
+            writeInt((int) length);
+            out.flush();
+        } finally {
+            closed = true;
+            workers.shutdownNow();
+            out.close();
+        }
+    }
+
+    //Little endian, as gzip stores its numbers
+    private void writeInt(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        out.write((value >>> 16) & 0xff);
+        out.write((value >>> 24) & 0xff);
+    }
+
+    /**
+     * Check sum of two concatenated blocks, from the check sums of each,
+     * as zlib's crc32_combine computes it
+     *
+     * @param crc1 the check sum of the first block
+     * @param crc2 the check sum of the second block
+     * @param length2 the length of the second block
+     * @return
+     */
+    static long combine(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        //Operator for one zero bit
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        //Operators for two and four zero bits
+        square(even, odd);
+        square(odd, even);
+        //Applies the zeros of the second block to the first check sum
+        do {
+            square(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = times(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = times(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+
+    private static class Block {
+        private byte[] data;
+        private long crc;
+        private int length;
+
+        Block(byte[] data, long crc, int length) {
+            this.data = data;
+            this.crc = crc;
+            this.length = length;
+        }
+    }
+}
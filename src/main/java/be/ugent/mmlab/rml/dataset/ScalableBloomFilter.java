@@ -0,0 +1,90 @@
+package be.ugent.mmlab.rml.dataset;
+
+import be.ugent.mmlab.rml.join.BloomFilter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RML Processor
+ *
+ * Bloom filter which grows with the number of keys within a fixed
+ * memory budget. Whenever the current slice is full, a slice twice as
+ * large with half the false positive rate is added, so the overall rate
+ * stays bounded. Once the budget is spent, the keys are added to the
+ * last slice, whose false positive rate then rises.
+ *
+ * @author andimou
+ */
+public class ScalableBloomFilter {
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private long memoryBudget;
+    private double falsePositiveRate;
+    private long memoryUsage = 0;
+    private List<BloomFilter> slices = new ArrayList<BloomFilter>();
+    private long capacity;
+    private boolean exhausted = false;
+
+    /**
+     *
+     * @param memoryBudget the maximum number of bytes of the slices
+     * @param falsePositiveRate the false positive rate of the first slice
+     */
+    public ScalableBloomFilter(long memoryBudget, double falsePositiveRate) {
+        this.memoryBudget = memoryBudget;
+        this.falsePositiveRate = falsePositiveRate;
+        addSlice(INITIAL_CAPACITY, falsePositiveRate);
+    }
+
+    public void add(long fingerprint) {
+        BloomFilter slice = slices.get(slices.size() - 1);
+        if (!exhausted && slice.getInsertions() >= capacity) {
+            long nextCapacity = capacity * 2;
+            double nextRate = falsePositiveRate / (1L << slices.size());
+            //Bits of the next slice, as sized by the filter itself
+            long nextBytes = (long) Math.ceil(-nextCapacity * Math.log(nextRate)
+                    / (Math.log(2) * Math.log(2))) / 8;
+            if (memoryUsage + nextBytes <= memoryBudget) {
+                addSlice(nextCapacity, nextRate);
+                slice = slices.get(slices.size() - 1);
+            } else {
+                exhausted = true;
+            }
+        }
+        slice.add(fingerprint);
+    }
+
+    public boolean mightContain(long fingerprint) {
+        //The latest slices hold the most keys
+        for (int i = slices.size() - 1; i >= 0; i--) {
+            if (slices.get(i).mightContain(fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addSlice(long sliceCapacity, double rate) {
+        BloomFilter slice = new BloomFilter(sliceCapacity, rate);
+        slices.add(slice);
+        capacity = sliceCapacity;
+        memoryUsage += slice.getNumBits() / 8;
+    }
+
+    public long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    public int getSlices() {
+        return slices.size();
+    }
+
+    /**
+     *
+     * @return true if the budget is spent and the filter no longer grows
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+}
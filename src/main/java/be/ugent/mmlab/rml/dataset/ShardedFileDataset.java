@@ -0,0 +1,310 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.ContextStatementImpl;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+
+/**
+ * RML Processor
+ *
+ * Writes the output to several files, so that it can be loaded in parallel.
+ * The triples are sharded by a hash of their subject over a number of
+ * shards, each written on its own thread, and each shard rolls over to
+ * a new file after a number of triples or bytes. When the dataset is
+ * closed, a manifest lists the files with their shard and their counts.
+ *
+ * The files of the output out.nt are named out-[shard]-[part].nt and
+ * the manifest out.nt.manifest.
+ *
+ * @author andimou
+ */
+public class ShardedFileDataset extends StdRMLDataset {
+
+    // Log
+    private static Log log = LogFactory.getLog(ShardedFileDataset.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private File target;
+    private RDFFormat format;
+    private Shard[] shards;
+    private AsyncStatementWriter[] writers;
+    //Limits of a file, none if 0
+    private long maxTriples = 0;
+    private long maxBytes = 0;
+
+    /**
+     *
+     * @param target the path of the output, from which the files are named
+     * @param outputFormat
+     * @param shards the number of shards, written concurrently
+     */
+    public ShardedFileDataset(String target, String outputFormat, int shards) {
+        this.target = new File(target);
+        this.format = FileDataset.getFormat(outputFormat);
+        this.shards = new Shard[Math.max(1, shards)];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard(i);
+        }
+    }
+
+    /**
+     * Rolls each shard over to a new file after a number of triples
+     * or bytes, to be called before any statement is added.
+     * The bytes are counted as they are flushed, so a file may exceed
+     * the limit by the buffer of its writer.
+     *
+     * @param maxTriples the triples of a file, no limit if 0
+     * @param maxBytes the bytes of a file, no limit if 0
+     */
+    public void setRollover(long maxTriples, long maxBytes) {
+        this.maxTriples = maxTriples;
+        this.maxBytes = maxBytes;
+    }
+
+    private void start() {
+        writers = new AsyncStatementWriter[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            writers[i] = new AsyncStatementWriter(shards[i], DEFAULT_BUFFER_SIZE);
+        }
+    }
+
+    @Override
+    public void add(Resource s, URI p, Value o, Resource... contexts) {
+        if (log.isDebugEnabled()) {
+            log.debug("Add triple (" + s.stringValue()
+                    + ", " + p.stringValue() + ", " + o.stringValue() + ").");
+        }
+        contexts = newContexts(s, p, o, contexts);
+        if (contexts == null) {
+            return;
+        }
+        if (writers == null) {
+            start();
+        }
+        //The hash of a string is the same in every run
+        int shard = (s.stringValue().hashCode() & 0x7fffffff) % shards.length;
+        if (contexts == null || contexts.length == 0) {
+            writers[shard].handleStatement(new StatementImpl(s, p, o));
+        } else {
+            for (Resource context : contexts) {
+                writers[shard].handleStatement((context == null)
+                        ? new StatementImpl(s, p, o)
+                        : new ContextStatementImpl(s, p, o, context));
+            }
+        }
+        statistics.recordStatement(contexts);
+    }
+
+    /**
+     * Closes the files and writes the manifest
+     *
+     * @throws IllegalStateException if the serializer of a shard failed,
+     * once the files are closed
+     */
+    @Override
+    public void closeRepository() {
+        log.debug("Closing files...");
+        if (writers == null) {
+            start();
+        }
+        RDFHandlerException failure = null;
+        for (int i = 0; i < writers.length; i++) {
+            try {
+                writers[i].close();
+            } catch (RDFHandlerException ex) {
+                log.error("Shard " + i + " was not completely written. " + ex);
+                failure = ex;
+            }
+            shards[i].close();
+        }
+        writeManifest();
+        if (failure != null) {
+            throw new IllegalStateException(
+                    "The output " + target + " is incomplete.", failure);
+        }
+    }
+
+    private void writeManifest() {
+        File manifest = new File(target.getPath() + ".manifest");
+        try {
+            PrintWriter output = new PrintWriter(
+                    new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(manifest), "UTF-8")));
+            try {
+                output.println("# file\tshard\ttriples\tbytes");
+                for (Shard shard : shards) {
+                    for (Part part : shard.parts) {
+                        output.println(part.file.getName() + "\t" + shard.index
+                                + "\t" + part.triples + "\t" + part.bytes);
+                    }
+                }
+            } finally {
+                output.close();
+            }
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+        }
+    }
+
+    /**
+     *
+     * @return the files written, in the order of the manifest
+     */
+    public List<File> getFiles() {
+        List<File> files = new ArrayList<File>();
+        for (Shard shard : shards) {
+            for (Part part : shard.parts) {
+                files.add(part.file);
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public int getSize() {
+        return (int) statistics.getStatements();
+    }
+
+    private File getFile(int shard, int part) {
+        String name = target.getName();
+        int extension = name.indexOf('.');
+        String base = (extension > 0) ? name.substring(0, extension) : name;
+        String suffix = (extension > 0) ? name.substring(extension) : "";
+        return new File(target.getAbsoluteFile().getParentFile(),
+                base + "-" + shard + "-" + part + suffix);
+    }
+
+    /**
+     * The files of a shard, written on the serializer thread of the shard
+     */
+    private class Shard implements RDFHandler {
+        private int index;
+        private List<Part> parts = new ArrayList<Part>();
+        private Part part = null;
+        private CountingOutputStream out;
+        private BufferedWriter fw;
+        private RDFWriter writer;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void startRDF() {
+        }
+
+        @Override
+        public void endRDF() {
+        }
+
+        @Override
+        public void handleNamespace(String prefix, String uri) {
+        }
+
+        @Override
+        public void handleComment(String comment) {
+        }
+
+        @Override
+        public void handleStatement(Statement st) throws RDFHandlerException {
+            try {
+                if (part == null || (maxTriples > 0 && part.triples >= maxTriples)
+                        || (maxBytes > 0 && out.count >= maxBytes)) {
+                    roll();
+                }
+            } catch (IOException ex) {
+                throw new RDFHandlerException(ex);
+            }
+            writer.handleStatement(st);
+            part.triples++;
+        }
+
+        private void roll() throws IOException, RDFHandlerException {
+            close();
+            part = new Part(getFile(index, parts.size()));
+            parts.add(part);
+            out = new CountingOutputStream(new FileOutputStream(part.file));
+            writer = FileDataset.createEncoder(format, out);
+            if (writer != null) {
+                fw = null;
+            } else {
+                fw = new BufferedWriter(new OutputStreamWriter(out));
+                writer = Rio.createWriter(format, fw);
+            }
+            writer.startRDF();
+        }
+
+        void close() {
+            if (part == null) {
+                return;
+            }
+            try {
+                if (fw != null) {
+                    fw.flush();
+                }
+                writer.endRDF();
+                if (fw != null) {
+                    fw.close();
+                }
+                out.close();
+            } catch (RDFHandlerException ex) {
+                log.error(ex);
+            } catch (IOException ex) {
+                log.error("IOException " + ex);
+            }
+            part.bytes = out.count;
+            part = null;
+        }
+    }
+
+    private static class Part {
+        private File file;
+        private long triples = 0;
+        private long bytes = 0;
+
+        Part(File file) {
+            this.file = file;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+import org.openrdf.rio.helpers.RDFWriterBase;
+
+/**
+ * RML Processor
+ *
+ * Turtle and TriG writer which groups the statements by subject and
+ * predicate, whatever the order they are handled in. The statements are
+ * sorted externally, so the memory stays bounded by the size of a run.
+ * The output is only written when the RDF is ended: the prefixes first,
+ * then each subject once with its predicates and their objects, within
+ * its graph for TriG. The duplicate statements are written once.
+ *
+ * @author andimou
+ */
+public class SortedTurtleWriter extends RDFWriterBase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String INDENT = "    ";
+
+    private OutputStream out;
+    private RDFFormat format;
+    private StatementSorter sorter;
+    private Map<String, String> namespaces = new LinkedHashMap<String, String>();
+    //Prefix of each namespace IRI
+    private Map<String, String> prefixes = new HashMap<String, String>();
+
+    //State of the output
+    private Writer writer;
+    private Statement last = null;
+    private boolean graphOpen = false;
+
+    /**
+     *
+     * @param out
+     * @param format Turtle or TriG
+     * @param parentDirectory the directory of the sorted runs,
+     * the system's temporary one if null
+     * @param runSize the number of statements sorted in memory
+     */
+    public SortedTurtleWriter(OutputStream out, RDFFormat format,
+            File parentDirectory, int runSize) {
+        this.out = out;
+        this.format = format;
+        this.sorter = new StatementSorter(parentDirectory, runSize,
+                RDFFormat.TRIG.equals(format));
+    }
+
+    public SortedTurtleWriter(OutputStream out, RDFFormat format) {
+        this(out, format, null, StatementSorter.DEFAULT_RUN_SIZE);
+    }
+
+    @Override
+    public RDFFormat getRDFFormat() {
+        return format;
+    }
+
+    @Override
+    public void startRDF() throws RDFHandlerException {
+    }
+
+    @Override
+    public void handleNamespace(String prefix, String uri) {
+        if (!prefixes.containsKey(uri) && !namespaces.containsKey(prefix)) {
+            namespaces.put(prefix, uri);
+            prefixes.put(uri, prefix);
+        }
+    }
+
+    @Override
+    public void handleComment(String comment) {
+        //Comments are lost in the sort
+    }
+
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        try {
+            sorter.add(st);
+        } catch (IOException ex) {
+            sorter.close();
+            throw new RDFHandlerException(ex);
+        }
+    }
+
+    @Override
+    public void endRDF() throws RDFHandlerException {
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8), BUFFER_SIZE);
+            for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+                writer.write("@prefix " + namespace.getKey() + ": <"
+                        + escapeIRI(namespace.getValue()) + "> .\n");
+            }
+            sorter.replay(new RDFHandlerBase() {
+                @Override
+                public void handleStatement(Statement st) throws RDFHandlerException {
+                    try {
+                        write(st);
+                    } catch (IOException ex) {
+                        throw new RDFHandlerException(ex);
+                    }
+                }
+            });
+            if (last != null) {
+                writer.write(" .\n");
+            }
+            if (graphOpen) {
+                writer.write("}\n");
+            }
+            writer.flush();
+        } catch (IOException ex) {
+            throw new RDFHandlerException(ex);
+        }
+    }
+
+    private void write(Statement st) throws IOException {
+        boolean trig = RDFFormat.TRIG.equals(format);
+        boolean newGraph = last == null
+                || (trig && !equals(last.getContext(), st.getContext()));
+        boolean newSubject = newGraph || !last.getSubject().equals(st.getSubject());
+        if (newSubject && last != null) {
+            writer.write(" .\n");
+        }
+        if (newGraph) {
+            if (graphOpen) {
+                writer.write("}\n");
+            }
+            //The default graph sorts first and has no braces
+            graphOpen = trig && st.getContext() != null;
+            if (graphOpen) {
+                writer.write("\n" + term(st.getContext()) + " {");
+            }
+        }
+        String indent = graphOpen ? INDENT : "";
+        if (newSubject) {
+            writer.write("\n" + indent + term(st.getSubject()) + " "
+                    + predicate(st.getPredicate()) + " " + term(st.getObject()));
+        } else if (!last.getPredicate().equals(st.getPredicate())) {
+            writer.write(" ;\n" + indent + INDENT + predicate(st.getPredicate())
+                    + " " + term(st.getObject()));
+        } else {
+            writer.write(", " + term(st.getObject()));
+        }
+        last = st;
+    }
+
+    private static boolean equals(Value first, Value second) {
+        return (first == null) ? second == null : first.equals(second);
+    }
+
+    private String predicate(URI predicate) {
+        return RDF.TYPE.equals(predicate) ? "a" : term(predicate);
+    }
+
+    private String term(Value value) {
+        if (value instanceof BNode) {
+            return "_:" + blankNodeLabel(((BNode) value).getID());
+        }
+        if (value instanceof Literal) {
+            return literal((Literal) value);
+        }
+        String iri = value.stringValue();
+        //A prefixed name if the local name needs no escaping
+        int split = Math.max(iri.lastIndexOf('#'), iri.lastIndexOf('/')) + 1;
+        String prefix = prefixes.get(iri.substring(0, split));
+        if (prefix != null && isLocalName(iri.substring(split))) {
+            return prefix + ":" + iri.substring(split);
+        }
+        return "<" + escapeIRI(iri) + ">";
+    }
+
+    private String literal(Literal literal) {
+        String label = literal.getLabel();
+        URI datatype = literal.getDatatype();
+        if (literal.getLanguage() != null) {
+            return "\"" + escapeString(label) + "\"@" + literal.getLanguage();
+        }
+        if (datatype == null || XMLSchema.STRING.equals(datatype)) {
+            return "\"" + escapeString(label) + "\"";
+        }
+        if ((XMLSchema.INTEGER.equals(datatype) && label.matches("[+-]?[0-9]+"))
+                || (XMLSchema.BOOLEAN.equals(datatype)
+                && (label.equals("true") || label.equals("false")))) {
+            return label;
+        }
+        return "\"" + escapeString(label) + "\"^^" + term(datatype);
+    }
+
+    private static boolean isLocalName(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '_' || (c == '-' && i > 0))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Only letters and digits are valid in a blank node label
+    private static String blankNodeLabel(String id) {
+        StringBuilder label = new StringBuilder();
+        if (id.isEmpty() || !isLetter(id.charAt(0))) {
+            label.append("genid");
+            if (!id.isEmpty()) {
+                label.append(Integer.toHexString(id.charAt(0)));
+            }
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (isLetter(c) || (c >= '0' && c <= '9')) {
+                label.append(c);
+            } else {
+                label.append(Integer.toHexString(c));
+            }
+        }
+        return label.toString();
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static String escapeString(String label) {
+        StringBuilder escaped = new StringBuilder(label.length() + 8);
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (c == '\\') {
+                escaped.append("\\\\");
+            } else if (c == '"') {
+                escaped.append("\\\"");
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else if (c == '\r') {
+                escaped.append("\\r");
+            } else if (c == '\t') {
+                escaped.append("\\t");
+            } else if (c < 0x20 || c == 0x7f) {
+                escaped.append(String.format("\\u%04X", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String escapeIRI(String iri) {
+        StringBuilder escaped = new StringBuilder(iri.length());
+        for (int i = 0; i < iri.length(); i++) {
+            char c = iri.charAt(i);
+            if (c <= 0x20 || "<>\"{}|^`\\".indexOf(c) >= 0) {
+                escaped.append(String.format("\\u%04X", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
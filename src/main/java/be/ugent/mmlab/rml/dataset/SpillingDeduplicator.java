@@ -0,0 +1,260 @@
+package be.ugent.mmlab.rml.dataset;
+
+import be.ugent.mmlab.rml.join.PartitionFiles;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.ContextStatementImpl;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Duplicate suppression within a fixed memory budget, for outputs whose
+ * fingerprints do not fit in memory. A scalable Bloom filter decides
+ * which triples are certainly new: those are written at once and their
+ * fingerprints are spilled to disk. The triples the filter may have seen
+ * are spilled as candidate duplicates instead.
+ *
+ * When the output is completed, the candidates are verified against the
+ * spilled fingerprints, partition by partition, and only the ones which
+ * were never written are written then. So the output is free of
+ * duplicates, while the memory stays bounded by the budget.
+ *
+ * @author andimou
+ */
+public class SpillingDeduplicator {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(SpillingDeduplicator.class.getSimpleName());
+
+    private static final int PARTITIONS = 64;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    //Approximate heap cost of a verified candidate
+    private static final int CANDIDATE_SIZE = 256;
+
+    private long memoryBudget;
+    private ScalableBloomFilter filter;
+    private File directory;
+    private PartitionFiles written;
+    private PartitionFiles candidates;
+
+    //Statistics
+    private long writtenCount = 0;
+    private long candidateCount = 0;
+    private long duplicates = 0;
+
+    /**
+     *
+     * @param memoryBudget the memory budget in bytes
+     * @param parentDirectory the directory of the spilled files,
+     * the system's temporary one if null
+     * @throws IOException
+     */
+    public SpillingDeduplicator(long memoryBudget, File parentDirectory)
+            throws IOException {
+        this.memoryBudget = memoryBudget;
+        String prefix = "rml-dedup-";
+        directory = (parentDirectory == null)
+                ? Files.createTempDirectory(prefix).toFile()
+                : Files.createTempDirectory(parentDirectory.toPath(), prefix).toFile();
+        //Half of the budget for the filter, half for the verification
+        filter = new ScalableBloomFilter(memoryBudget / 2, FALSE_POSITIVE_RATE);
+        written = new PartitionFiles(directory, "written", PARTITIONS);
+        candidates = new PartitionFiles(directory, "candidate", PARTITIONS);
+    }
+
+    /**
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param graph the graph of the triple or null
+     * @return true if the triple is new and is to be written at once,
+     * false if it is deferred to the verification
+     */
+    public boolean offer(Resource subject, URI predicate, Value object,
+            Resource graph) {
+        long[] fingerprint =
+                TripleDeduplicator.fingerprint(subject, predicate, object, graph);
+        int partition = (int) (fingerprint[1] & (PARTITIONS - 1));
+        try {
+            if (!filter.mightContain(fingerprint[0])) {
+                filter.add(fingerprint[0]);
+                writeFingerprint(written.getOutput(partition), fingerprint);
+                writtenCount++;
+                return true;
+            }
+            DataOutputStream output = candidates.getOutput(partition);
+            writeFingerprint(output, fingerprint);
+            PartitionFiles.writeResource(output, subject);
+            PartitionFiles.writeResource(output, predicate);
+            PartitionFiles.writeValue(output, object);
+            PartitionFiles.writeResource(output, graph);
+            candidateCount++;
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+        }
+        return false;
+    }
+
+    private static void writeFingerprint(DataOutputStream output,
+            long[] fingerprint) throws IOException {
+        output.writeByte(1);
+        output.writeLong(fingerprint[0]);
+        output.writeLong(fingerprint[1]);
+    }
+
+    /**
+     * Verifies the candidate duplicates and writes the ones
+     * which were never written
+     *
+     * @param handler the handler the new triples are written to
+     * @return the number of triples written by the verification
+     */
+    public long finish(RDFHandler handler) {
+        written.closeOutputs();
+        candidates.closeOutputs();
+        long verified = 0;
+        int chunkSize = (int) Math.max(1024,
+                Math.min(Integer.MAX_VALUE / 2, memoryBudget / 2 / CANDIDATE_SIZE));
+        try {
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                verified += verifyPartition(partition, chunkSize, handler);
+            }
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+        } catch (RDFHandlerException ex) {
+            log.error("RDFHandlerException " + ex);
+        }
+        log.info("Duplicate verification: " + writtenCount + " triples written at once, "
+                + candidateCount + " candidates, " + verified + " of them new, "
+                + duplicates + " duplicates, filter of " + filter.getSlices()
+                + " slices in " + filter.getMemoryUsage() + " bytes.");
+        return verified;
+    }
+
+    private long verifyPartition(int partition, int chunkSize,
+            RDFHandler handler) throws IOException, RDFHandlerException {
+        DataInputStream input = candidates.getInput(partition);
+        if (input == null) {
+            return 0;
+        }
+        long verified = 0;
+        try {
+            List<Candidate> chunk = new ArrayList<Candidate>();
+            while (input.read() > 0) {
+                chunk.add(new Candidate(input.readLong(), input.readLong(),
+                        PartitionFiles.readResource(input),
+                        PartitionFiles.readResource(input),
+                        PartitionFiles.readValue(input),
+                        PartitionFiles.readResource(input)));
+                if (chunk.size() >= chunkSize) {
+                    verified += verifyChunk(partition, chunk, handler);
+                    chunk.clear();
+                }
+            }
+            verified += verifyChunk(partition, chunk, handler);
+        } finally {
+            input.close();
+        }
+        return verified;
+    }
+
+    private long verifyChunk(int partition, List<Candidate> chunk,
+            RDFHandler handler) throws IOException, RDFHandlerException {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        TripleDeduplicator wanted = new TripleDeduplicator(false, chunk.size() * 2);
+        for (Candidate candidate : chunk) {
+            wanted.add(candidate.high, candidate.low);
+        }
+        //The candidates which were written are found among the fingerprints
+        TripleDeduplicator found = new TripleDeduplicator();
+        DataInputStream input = written.getInput(partition);
+        if (input != null) {
+            try {
+                while (input.read() > 0) {
+                    long high = input.readLong();
+                    long low = input.readLong();
+                    if (wanted.contains(high, low)) {
+                        found.add(high, low);
+                    }
+                }
+            } finally {
+                input.close();
+            }
+        }
+        long verified = 0;
+        DataOutputStream output = written.getOutput(partition);
+        for (Candidate candidate : chunk) {
+            //A candidate which is written is found by the next chunks
+            if (!found.add(candidate.high, candidate.low)) {
+                duplicates++;
+                continue;
+            }
+            if (candidate.graph == null) {
+                handler.handleStatement(new StatementImpl(candidate.subject,
+                        (URI) candidate.predicate, candidate.object));
+            } else {
+                handler.handleStatement(new ContextStatementImpl(candidate.subject,
+                        (URI) candidate.predicate, candidate.object, candidate.graph));
+            }
+            writeFingerprint(output, new long[]{candidate.high, candidate.low});
+            verified++;
+        }
+        written.closeOutputs();
+        return verified;
+    }
+
+    /**
+     * Deletes the spilled files
+     */
+    public void close() {
+        written.delete();
+        candidates.delete();
+        if (!directory.delete()) {
+            log.debug("Directory " + directory + " could not be deleted.");
+        }
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getCandidates() {
+        return candidateCount;
+    }
+
+    private static class Candidate {
+        private long high;
+        private long low;
+        private Resource subject;
+        private Resource predicate;
+        private Value object;
+        private Resource graph;
+
+        Candidate(long high, long low, Resource subject, Resource predicate,
+                Value object, Resource graph) {
+            this.high = high;
+            this.low = low;
+            this.subject = subject;
+            this.predicate = predicate;
+            this.object = object;
+            this.graph = graph;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package be.ugent.mmlab.rml.dataset;
+
+import be.ugent.mmlab.rml.join.PartitionFiles;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.ContextStatementImpl;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * External sort of statements by graph, subject, predicate and object,
+ * for the writers which group the statements. The statements are sorted
+ * in runs spilled to disk, which are merged when the sorted statements
+ * are replayed, so the memory stays bounded by the size of a run.
+ * The runs are merged at most 64 at a time, in as many passes as needed,
+ * so that the open files stay bounded too.
+ * The predicate rdf:type sorts first and the duplicate statements are
+ * replayed once.
+ *
+ * @author andimou
+ */
+public class StatementSorter {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(StatementSorter.class.getSimpleName());
+
+    public static final int DEFAULT_RUN_SIZE = 1 << 18;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    //Runs merged per pass
+    private static final int MERGE_FAN_IN = 64;
+
+    private File parentDirectory;
+    private File directory = null;
+    private int runSize;
+    private boolean contexts;
+    private List<Entry> buffer = new ArrayList<Entry>();
+    private List<File> runs = new ArrayList<File>();
+
+    /**
+     *
+     * @param parentDirectory the directory of the sorted runs,
+     * the system's temporary one if null
+     * @param runSize the number of statements sorted in memory
+     * @param contexts true to sort by graph first,
+     * false to ignore the graphs
+     */
+    public StatementSorter(File parentDirectory, int runSize, boolean contexts) {
+        this.parentDirectory = parentDirectory;
+        this.runSize = runSize;
+        this.contexts = contexts;
+    }
+
+    public void add(Statement st) throws IOException {
+        buffer.add(new Entry(st, contexts));
+        if (buffer.size() >= runSize) {
+            spill();
+        }
+    }
+
+    private void spill() throws IOException {
+        if (directory == null) {
+            String prefix = "rml-sort-";
+            directory = (parentDirectory == null)
+                    ? Files.createTempDirectory(prefix).toFile()
+                    : Files.createTempDirectory(parentDirectory.toPath(), prefix).toFile();
+        }
+        Collections.sort(buffer);
+        File run = new File(directory, "run-" + runs.size() + ".bin");
+        runs.add(run);
+        DataOutputStream output = openOutput(run);
+        try {
+            for (Entry entry : buffer) {
+                write(output, entry.statement);
+            }
+            output.writeByte(0);
+        } finally {
+            output.close();
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Hands the statements in their order to a handler,
+     * only its handleStatement is called, and deletes the runs
+     *
+     * @param handler
+     * @throws IOException
+     * @throws RDFHandlerException
+     */
+    public void replay(RDFHandler handler) throws IOException, RDFHandlerException {
+        try {
+            if (runs.isEmpty()) {
+                //Everything fits in one run, which is not spilled
+                Collections.sort(buffer);
+                Entry last = null;
+                for (Entry entry : buffer) {
+                    if (last == null || last.compareTo(entry) != 0) {
+                        handler.handleStatement(entry.statement);
+                    }
+                    last = entry;
+                }
+            } else {
+                spill();
+                merge(handler);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void merge(RDFHandler handler) throws IOException, RDFHandlerException {
+        reduce();
+        PriorityQueue<Run> queue = new PriorityQueue<Run>();
+        try {
+            open(queue, runs);
+            Entry last = null;
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                Entry entry = run.entry;
+                if (last == null || last.compareTo(entry) != 0) {
+                    handler.handleStatement(entry.statement);
+                }
+                last = entry;
+                advance(queue, run);
+            }
+        } finally {
+            for (Run run : queue) {
+                run.input.close();
+            }
+        }
+    }
+
+    /**
+     * Merges the runs by groups, without their duplicates,
+     * until they are few enough to be merged at once
+     */
+    private void reduce() throws IOException {
+        int pass = 0;
+        while (runs.size() > MERGE_FAN_IN) {
+            List<File> merged = new ArrayList<File>();
+            for (int start = 0; start < runs.size(); start += MERGE_FAN_IN) {
+                List<File> group = runs.subList(start,
+                        Math.min(start + MERGE_FAN_IN, runs.size()));
+                File run = new File(directory, "run-" + pass + "-" + merged.size() + ".bin");
+                merged.add(run);
+                merge(group, run);
+                for (File file : group) {
+                    if (!file.delete()) {
+                        log.debug("Run " + file + " could not be deleted.");
+                    }
+                }
+            }
+            runs = merged;
+            pass++;
+        }
+    }
+
+    private void merge(List<File> group, File target) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>();
+        DataOutputStream output = openOutput(target);
+        try {
+            open(queue, group);
+            Entry last = null;
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                Entry entry = run.entry;
+                if (last == null || last.compareTo(entry) != 0) {
+                    write(output, entry.statement);
+                }
+                last = entry;
+                advance(queue, run);
+            }
+            output.writeByte(0);
+        } finally {
+            output.close();
+            for (Run run : queue) {
+                run.input.close();
+            }
+        }
+    }
+
+    private void open(PriorityQueue<Run> queue, List<File> files) throws IOException {
+        for (File file : files) {
+            advance(queue, new Run(new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), BUFFER_SIZE)), contexts));
+        }
+    }
+
+    //Queues the run again at its next statement, or closes it at its end
+    private static void advance(PriorityQueue<Run> queue, Run run) throws IOException {
+        if (run.next()) {
+            queue.add(run);
+        } else {
+            run.input.close();
+        }
+    }
+
+    private static DataOutputStream openOutput(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    private static void write(DataOutputStream output, Statement st) throws IOException {
+        output.writeByte(1);
+        PartitionFiles.writeResource(output, st.getContext());
+        PartitionFiles.writeResource(output, st.getSubject());
+        PartitionFiles.writeResource(output, st.getPredicate());
+        PartitionFiles.writeValue(output, st.getObject());
+    }
+
+    /**
+     * Drops the buffered statements and deletes the runs
+     */
+    public void close() {
+        buffer.clear();
+        //The runs of an interrupted merge are not all listed
+        File[] files = (directory == null) ? null : directory.listFiles();
+        if (files != null) {
+            for (File run : files) {
+                if (!run.delete()) {
+                    log.debug("Run " + run + " could not be deleted.");
+                }
+            }
+        }
+        runs = new ArrayList<File>();
+        if (directory != null && !directory.delete()) {
+            log.debug("Directory " + directory + " could not be deleted.");
+        }
+        directory = null;
+    }
+
+    //Sort keys of a term, the predicate rdf:type first
+    private static String key(Value value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof BNode) {
+            return "_:" + ((BNode) value).getID();
+        }
+        if (value instanceof Literal) {
+            Literal literal = (Literal) value;
+            return "\"" + literal.getLabel() + "\""
+                    + ((literal.getLanguage() != null) ? "@" + literal.getLanguage()
+                    : (literal.getDatatype() != null)
+                    ? "^^" + literal.getDatatype().stringValue() : "");
+        }
+        return RDF.TYPE.equals(value) ? "<" : "<" + value.stringValue();
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private Statement statement;
+        //Graph, subject, predicate and object
+        private String[] keys;
+
+        Entry(Statement statement, boolean contexts) {
+            this.statement = statement;
+            this.keys = new String[]{
+                contexts ? key(statement.getContext()) : "",
+                key(statement.getSubject()),
+                key(statement.getPredicate()),
+                key(statement.getObject())};
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            for (int i = 0; i < keys.length; i++) {
+                int comparison = keys[i].compareTo(other.keys[i]);
+                if (comparison != 0) {
+                    return comparison;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static class Run implements Comparable<Run> {
+        private DataInputStream input;
+        private boolean contexts;
+        private Entry entry;
+
+        Run(DataInputStream input, boolean contexts) {
+            this.input = input;
+            this.contexts = contexts;
+        }
+
+        boolean next() throws IOException {
+            if (input.read() <= 0) {
+                return false;
+            }
+            Resource context = PartitionFiles.readResource(input);
+            Resource subject = PartitionFiles.readResource(input);
+            URI predicate = (URI) PartitionFiles.readResource(input);
+            Value object = PartitionFiles.readValue(input);
+            Statement statement = (context == null)
+                    ? new StatementImpl(subject, predicate, object)
+                    : new ContextStatementImpl(subject, predicate, object, context);
+            entry = new Entry(statement, contexts);
+            return true;
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            return entry.compareTo(other.entry);
+        }
+    }
+}
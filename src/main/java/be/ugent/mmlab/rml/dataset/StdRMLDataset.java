@@ -1,5 +1,7 @@
 package be.ugent.mmlab.rml.dataset;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -10,47 +12,130 @@ import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
-import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.RepositoryResult;
-import org.openrdf.repository.sail.SailRepository;
 import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFParser;
 import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.Rio;
-import org.openrdf.sail.inferencer.fc.ForwardChainingRDFSInferencer;
-import org.openrdf.sail.memory.MemoryStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * RML Processor
  *
+ * The memory dataset of the engine, a buffered write path over the
+ * repository of the dataset it extends.
+ *
  * @author andimou
  */
-public class StdRMLDataset implements RMLDataset {
+public class StdRMLDataset extends be.ugent.mmlab.rml.model.dataset.StdRMLDataset
+        implements RMLDataset {
     // Log
     private static final Logger log = 
             LoggerFactory.getLogger(StdRMLDataset.class);
     
-    protected Repository repository = null;
+    //Live counters, reconciled with the store when its size is asked,
+    //so that the statements are counted without looking each one up
+    protected DatasetStatistics statistics = new DatasetStatistics();
+    private boolean inferencing = false;
+    
+    //Long-lived connection of the buffered write path
+    private RepositoryConnection connection = null;
+    //Statements and approximate bytes added since the last commit
+    private int pendingStatements = 0;
+    private long pendingBytes = 0;
+    //Flush policy: a commit every batchSize statements or batchBytes bytes
+    private int batchSize = 10000;
+    private long batchBytes = 8L * 1024 * 1024;
+    private boolean closed = false;
+    //Suppresses the duplicate triples before they are added, if set
+    protected TripleDeduplicator tripleDeduplicator = null;
+    //Interns the terms of the run writing to the dataset, if set
+    protected TermDictionary termDictionary = null;
     
     public StdRMLDataset() {
         this(false);
     }
 
     public StdRMLDataset(boolean inferencing) {
-        try {
-            if (inferencing) {
-                repository = new SailRepository(
-                        new ForwardChainingRDFSInferencer(new MemoryStore()));
-            } else {
-                repository = new SailRepository(new MemoryStore());
+        //The memory repository is created by the extended dataset
+        super(inferencing);
+        this.inferencing = inferencing;
+    }
+    
+    /**
+     * The connection is opened once and kept open until the repository 
+     * is closed, its transaction is committed whenever a batch is full.
+     * 
+     * @return the connection of the dataset
+     * @throws RepositoryException 
+     */
+    protected RepositoryConnection getConnection() throws RepositoryException {
+        if (connection == null) {
+            connection = repository.getConnection();
+            connection.begin();
+        }
+        return connection;
+    }
+    
+    public TripleDeduplicator getTripleDeduplicator() {
+        return tripleDeduplicator;
+    }
+
+    /**
+     * 
+     * @param tripleDeduplicator the deduplicator of the triples added 
+     * from now on, or null to add them all
+     */
+    public void setTripleDeduplicator(TripleDeduplicator tripleDeduplicator) {
+        this.tripleDeduplicator = tripleDeduplicator;
+    }
+
+    public TermDictionary getTermDictionary() {
+        return termDictionary;
+    }
+
+    /**
+     * 
+     * @param termDictionary the dictionary of the terms generated 
+     * from now on, or null to intern none
+     */
+    public void setTermDictionary(TermDictionary termDictionary) {
+        this.termDictionary = termDictionary;
+    }
+
+    /**
+     * Records a triple with the deduplicator of the dataset, if any
+     * 
+     * @param s
+     * @param p
+     * @param o
+     * @param contexts
+     * @return the contexts in which the triple is new, 
+     * or null if it was emitted in all of them before
+     */
+    protected Resource[] newContexts(Resource s, URI p, Value o, 
+            Resource... contexts) {
+        if (tripleDeduplicator == null) {
+            return contexts;
+        }
+        if (contexts == null || contexts.length == 0) {
+            return tripleDeduplicator.add(s, p, o, null) ? contexts : null;
+        }
+        List<Resource> added = new ArrayList<Resource>(contexts.length);
+        for (Resource context : contexts) {
+            if (tripleDeduplicator.add(s, p, o, context)) {
+                added.add(context);
             }
-            repository.initialize();
-        } catch (RepositoryException ex) {
-            log.error("Repository Exception " + ex);
         }
+        if (added.isEmpty()) {
+            return null;
+        }
+        return (added.size() == contexts.length) 
+                ? contexts : added.toArray(new Resource[added.size()]);
     }
     
     //TODO: Spring it
@@ -60,34 +145,55 @@ public class StdRMLDataset implements RMLDataset {
             log.debug("Add triple (" + s.stringValue()
                     + ", " + p.stringValue() + ", " + o.stringValue() + ").");
         }
+        contexts = newContexts(s, p, o, contexts);
+        if (contexts == null) {
+            return;
+        }
         try {
-            RepositoryConnection con = repository.getConnection();
-            try {
-                ValueFactory myFactory = con.getValueFactory();
-                Statement st = myFactory.createStatement((Resource) s, p,
-                        (Value) o);
-                con.add(st, contexts);
-                con.commit();
-            } catch (Exception ex) {
-                log.error("Exception " + ex);
-            } finally {
-                con.close();
+            RepositoryConnection con = getConnection();
+            ValueFactory myFactory = con.getValueFactory();
+            Statement st = myFactory.createStatement((Resource) s, p,
+                    (Value) o);
+            con.add(st, contexts);
+            statistics.recordStatement(contexts);
+            pendingStatements++;
+            pendingBytes += 2L * (s.stringValue().length()
+                    + p.stringValue().length() + o.stringValue().length());
+            if (pendingStatements >= batchSize || pendingBytes >= batchBytes) {
+                flush();
             }
         } catch (Exception ex) {
             log.error("Exception " + ex);
         }
     }
+    
+    /**
+     * Commits the statements added since the last commit
+     */
+    public void flush() {
+        if (connection == null || pendingStatements == 0) {
+            return;
+        }
+        try {
+            connection.commit();
+            connection.begin();
+        } catch (RepositoryException ex) {
+            log.error("Repository Exception " + ex);
+        }
+        pendingStatements = 0;
+        pendingBytes = 0;
+    }
 
     //TODO: Spring it
     @Override
     public void addFile(String filepath, RDFFormat format) {
         try {
-            RepositoryConnection con = repository.getConnection();
-            try {
-                con.add(new File(filepath), "", format);
-            } finally {
-                con.close();
-            }
+            RepositoryConnection con = getConnection();
+            con.add(new File(filepath), "", format);
+            pendingStatements++;
+            flush();
+            //The statements of a file are counted once, when it is loaded
+            statistics.setStatements(con.size());
         } catch (Exception ex) {
             log.error("Exception " + ex);
         }
@@ -96,36 +202,64 @@ public class StdRMLDataset implements RMLDataset {
     //TODO: Spring it
     @Override
     public void dumpRDF(OutputStream out, RDFFormat outform) {
+        flush();
         try {
-            RepositoryConnection con = repository.getConnection();
-            try {
-                RDFWriter w = Rio.createWriter(outform, out);
-                
-                con.export(w);
-            } finally {
-                con.close();
+            RDFWriter w = Rio.createWriter(outform, out);
+            getConnection().export(w);
+        } catch (Exception ex) {
+            log.error("Exception " + ex);
+        }
+    }
+
+    /**
+     * Reconciles the counters with the store, which keeps one copy of each
+     * statement: the statements counted but not stored are duplicates.
+     * The counts per graph and per Triples Map include the duplicates.
+     */
+    protected void reconcile() {
+        if (closed) {
+            //Reconciled when it was closed
+            return;
+        }
+        try {
+            long size = getStoredSize();
+            long duplicates = statistics.getStatements() - size;
+            if (duplicates > 0) {
+                statistics.recordDuplicates(duplicates);
+                statistics.setStatements(size);
             }
         } catch (Exception ex) {
             log.error("Exception " + ex);
         }
     }
 
-    //TODO: Spring it
+    /**
+     * 
+     * @return the number of explicit statements stored, once committed
+     * @throws Exception 
+     */
+    protected long getStoredSize() throws Exception {
+        flush();
+        return getConnection().size();
+    }
+
     @Override
     public int getSize() {
+        if (!inferencing) {
+            reconcile();
+            return (int) statistics.getStatements();
+        }
+        //The inferred statements are not counted as they are added
         ArrayList<Statement> reslist = new ArrayList<Statement>();
         try {
-            RepositoryConnection connection = repository.getConnection();
+            RepositoryResult<Statement> repres =
+                    getConnection().getStatements(null, null, null, true);
             try {
-                RepositoryResult<Statement> repres =
-                        connection.getStatements(null, null, null, true);
-
                 while (repres.hasNext()) {
                     reslist.add(repres.next());
                 }
-
             } finally {
-                connection.close();
+                repres.close();
             }
         } catch (Exception ex) {
             log.error("Exception " + ex);
@@ -133,10 +267,47 @@ public class StdRMLDataset implements RMLDataset {
         return reslist.size();
     }
 
+    @Override
+    public DatasetStatistics getStatistics() {
+        return statistics;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 
+     * @param batchSize the number of statements per commit, 
+     * 1 commits every statement
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+
+    /**
+     * 
+     * @param batchBytes the approximate number of bytes per commit
+     */
+    public void setBatchBytes(long batchBytes) {
+        this.batchBytes = batchBytes;
+    }
+
     @Override
     public void closeRepository() {
         try {
             log.debug("Closing memory repository..");
+            if (connection != null) {
+                reconcile();
+                connection.commit();
+                connection.close();
+                connection = null;
+            }
+            closed = true;
             repository.shutDown();
         } catch (RepositoryException ex) {
             log.error("Repository Exception " + ex);
@@ -147,17 +318,17 @@ public class StdRMLDataset implements RMLDataset {
     protected List<Statement> tuplePattern(Resource s, URI p, Value o,
 			Resource... contexts) {
         try {
-            RepositoryConnection con = repository.getConnection();
+            //The statements of the pending batch are visible to the connection
+            RepositoryResult<Statement> repres = getConnection().getStatements(
+                    s, p, o, true, contexts);
             try {
-                RepositoryResult<Statement> repres = con.getStatements(s, p, o,
-                        true, contexts);
                 ArrayList<Statement> reslist = new ArrayList<Statement>();
                 while (repres.hasNext()) {
                     reslist.add(repres.next());
                 }
                 return reslist;
             } finally {
-                con.close();
+                repres.close();
             }
         } catch (Exception ex) {
             log.error("Exception " + ex);
@@ -166,114 +337,48 @@ public class StdRMLDataset implements RMLDataset {
     }
 
     public boolean isBNode(Value value) {
-        try {
-            @SuppressWarnings("unused")
-            BNode test = (BNode) value;
-            return true;
-        } catch (ClassCastException ex) {
-            log.error("Class Cast Exception " + ex);
-            return false;
-        }
+        return value instanceof BNode;
     }
-    
-    @Override
-    public boolean isEqualTo(RMLDataset dataSet) {
-        List<Statement> triples = tuplePattern(null, null, null);
-        for (Statement triple : triples) {
-            List<Statement> targetTriples = new ArrayList<Statement>();
-            if (isBNode(triple.getSubject()) && isBNode(triple.getObject())) {
-                targetTriples = tuplePattern(null,
-                        triple.getPredicate(), null, triple.getContext());
-                if (targetTriples.isEmpty()) {
-                    log.debug("No result for triple : " + triple);
-                    return false;
-                } else {
-                    boolean found = false;
-                    Statement foundTriple = null;
-                    for (Statement targetTriple : targetTriples) {
-                        if (isBNode(targetTriple.getSubject())
-                                && isBNode(targetTriple.getObject())) {
-                            found = true;
-                            foundTriple = targetTriple;
-                            break;
-                        }
-                    }
-                    if (found) {
-                        log.debug(triple + " == " + foundTriple);
-                    } else {
-                        log.debug("No BNode subject and BNode object found for "
-                                + triple);
-                        return false;
-                    }
-                }
-            } else if (isBNode(triple.getSubject())) {
-                targetTriples = tuplePattern(null,
-                        triple.getPredicate(), triple.getObject(),
-                        triple.getContext());
-                if (targetTriples.isEmpty()) {
-                    log.debug("No result for subject : " + triple);
-                    return false;
-                } else {
-                    boolean found = false;
-                    Statement foundTriple = null;
-                    for (Statement targetTriple : targetTriples) {
-                        if (isBNode(targetTriple.getSubject())) {
-                            found = true;
-                            foundTriple = targetTriple;
-                            break;
-                        }
-                    }
-                    if (found) {
-                        log.debug(triple + " == " + foundTriple);
-                    } else {
-                        log.debug("No BNode subject found for " + triple);
-                        return false;
-                    }
-                }
 
-            } else if (isBNode(triple.getObject())) {
-                targetTriples = tuplePattern(triple.getSubject(),
-                        triple.getPredicate(), null, triple.getContext());
-                if (targetTriples.isEmpty()) {
-                    log.debug("No result for triple : " + triple);
-                    return false;
-                } else {
-                    boolean found = false;
-                    Statement foundTriple = null;
-                    for (Statement targetTriple : targetTriples) {
-                        if (isBNode(targetTriple.getObject())) {
-                            found = true;
-                            foundTriple = targetTriple;
-                            break;
-                        }
-                    }
-                    if (found) {
+    /**
+     * Hands all the statements, the inferred ones included, to a handler
+     *
+     * @param handler
+     * @throws Exception
+     */
+    protected void export(RDFHandler handler) throws Exception {
+        flush();
+        getConnection().exportStatements(null, null, null, true, handler);
+    }
 
-                        log.debug(triple + " == " + foundTriple);
-                    } else {
-                        log.debug("No BNode object found for " + triple);
-                        return false;
-                    }
-                }
+    /**
+     * Compares the canonical forms of both datasets, so that the blank
+     * nodes are matched by their structure and not by their label
+     *
+     * @param dataSet
+     * @return true if both datasets are the same graph
+     */
+    @Override
+    public boolean isEqualTo(
+            be.ugent.mmlab.rml.model.dataset.RMLDataset dataSet) {
+        GraphCanonicalizer graph = new GraphCanonicalizer();
+        GraphCanonicalizer other = new GraphCanonicalizer();
+        try {
+            export(graph);
+            if (dataSet instanceof StdRMLDataset) {
+                ((StdRMLDataset) dataSet).export(other);
             } else {
-                targetTriples = tuplePattern(triple.getSubject(),
-                        triple.getPredicate(), triple.getObject(),
-                        triple.getContext());
-                if (targetTriples.size() > 1) {
-                    log.debug("Too many result for : " + triple);
-                    return false;
-                } else if (targetTriples.isEmpty()) {
-                    log.debug("No result for triple : " + triple);
-                    return false;
-                } else {
-                    log.debug(triple + " == " + targetTriples.get(0));
-                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                dataSet.dumpRDF(out, RDFFormat.NQUADS);
+                RDFParser parser = Rio.createParser(RDFFormat.NQUADS);
+                parser.setRDFHandler(other);
+                parser.parse(new ByteArrayInputStream(out.toByteArray()), "");
             }
+        } catch (Exception ex) {
+            log.error("Exception " + ex);
+            return false;
         }
-        if (dataSet.getSize() != getSize()) {
-            log.debug("No same size : " + dataSet.getSize() + " != " + getSize());
-        }
-        return dataSet.getSize() == getSize();
+        return graph.isIsomorphic(other);
     }
 
 }
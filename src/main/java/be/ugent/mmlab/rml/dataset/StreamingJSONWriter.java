@@ -0,0 +1,322 @@
+package be.ugent.mmlab.rml.dataset;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+import org.openrdf.rio.helpers.RDFWriterBase;
+
+/**
+ * RML Processor
+ *
+ * JSON-LD and RDF/JSON writer which streams its output through a JSON
+ * generator, instead of building the whole model in memory first.
+ *
+ * JSON-LD is written in expanded form, either flat, a node object per
+ * statement written as it is handled, or grouped, a node object per
+ * subject within its graph. RDF/JSON is always grouped by subject and
+ * predicate, as each subject is written once. The grouped statements are
+ * sorted externally and the memory stays bounded by the statements of
+ * one subject.
+ *
+ * @author andimou
+ */
+public class StreamingJSONWriter extends RDFWriterBase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final RDFFormat FLAT_JSONLD = new RDFFormat("JSON-LD flat",
+            "application/ld+json", UTF_8, "jsonld", false, true);
+
+    private OutputStream out;
+    private RDFFormat format;
+    private StatementSorter sorter = null;
+    private JsonGenerator generator;
+
+    //State of the grouped output
+    private Resource graph = null;
+    private boolean graphOpen = false;
+    private Resource subject = null;
+    private URI predicate = null;
+    //Statements of the current subject
+    private List<Statement> node = new ArrayList<Statement>();
+
+    /**
+     *
+     * @param out
+     * @param format JSON-LD, flat JSON-LD or RDF/JSON
+     * @param parentDirectory the directory of the sorted runs,
+     * the system's temporary one if null
+     * @param runSize the number of statements sorted in memory
+     */
+    public StreamingJSONWriter(OutputStream out, RDFFormat format,
+            File parentDirectory, int runSize) {
+        this.out = out;
+        this.format = format;
+        if (!FLAT_JSONLD.equals(format)) {
+            sorter = new StatementSorter(parentDirectory, runSize,
+                    RDFFormat.JSONLD.equals(format));
+        }
+    }
+
+    public StreamingJSONWriter(OutputStream out, RDFFormat format) {
+        this(out, format, null, StatementSorter.DEFAULT_RUN_SIZE);
+    }
+
+    @Override
+    public RDFFormat getRDFFormat() {
+        return format;
+    }
+
+    @Override
+    public void startRDF() throws RDFHandlerException {
+        try {
+            generator = new JsonFactory().createGenerator(out, JsonEncoding.UTF8);
+            //The stream is closed by its owner
+            generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            generator.useDefaultPrettyPrinter();
+            if (RDFFormat.RDFJSON.equals(format)) {
+                generator.writeStartObject();
+            } else {
+                generator.writeStartArray();
+            }
+        } catch (IOException ex) {
+            throw new RDFHandlerException(ex);
+        }
+    }
+
+    @Override
+    public void handleNamespace(String prefix, String uri) {
+        //The expanded form has no context
+    }
+
+    @Override
+    public void handleComment(String comment) {
+        //JSON has no comments
+    }
+
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        try {
+            if (sorter != null) {
+                sorter.add(st);
+                return;
+            }
+            if (st.getContext() != null) {
+                startGraph(st.getContext());
+                writeNode(Collections.singletonList(st));
+                endGraph();
+            } else {
+                writeNode(Collections.singletonList(st));
+            }
+        } catch (IOException ex) {
+            throw new RDFHandlerException(ex);
+        }
+    }
+
+    @Override
+    public void endRDF() throws RDFHandlerException {
+        try {
+            if (sorter != null) {
+                sorter.replay(new RDFHandlerBase() {
+                    @Override
+                    public void handleStatement(Statement st) throws RDFHandlerException {
+                        try {
+                            if (RDFFormat.RDFJSON.equals(format)) {
+                                writeRDFJSON(st);
+                            } else {
+                                group(st);
+                            }
+                        } catch (IOException ex) {
+                            throw new RDFHandlerException(ex);
+                        }
+                    }
+                });
+                if (RDFFormat.RDFJSON.equals(format)) {
+                    if (subject != null) {
+                        generator.writeEndArray();
+                        generator.writeEndObject();
+                    }
+                } else {
+                    writeNode(node);
+                    node.clear();
+                    if (graphOpen) {
+                        endGraph();
+                    }
+                }
+            }
+            if (RDFFormat.RDFJSON.equals(format)) {
+                generator.writeEndObject();
+            } else {
+                generator.writeEndArray();
+            }
+            generator.close();
+            out.flush();
+        } catch (IOException ex) {
+            throw new RDFHandlerException(ex);
+        }
+    }
+
+    //JSON-LD, the statements of a subject are gathered in one node object
+    private void group(Statement st) throws IOException {
+        Resource context = st.getContext();
+        boolean newGraph = subject == null
+                || ((graph == null) ? context != null : !graph.equals(context));
+        if (newGraph || !subject.equals(st.getSubject())) {
+            writeNode(node);
+            node.clear();
+        }
+        if (newGraph) {
+            if (graphOpen) {
+                endGraph();
+            }
+            graph = context;
+            graphOpen = context != null;
+            if (graphOpen) {
+                startGraph(context);
+            }
+        }
+        subject = st.getSubject();
+        node.add(st);
+    }
+
+    private void startGraph(Resource context) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("@id", id(context));
+        generator.writeArrayFieldStart("@graph");
+    }
+
+    private void endGraph() throws IOException {
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a node object of statements of the same subject,
+     * sorted by predicate
+     */
+    private void writeNode(List<Statement> statements) throws IOException {
+        if (statements.isEmpty()) {
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeStringField("@id", id(statements.get(0).getSubject()));
+        int start = 0;
+        while (start < statements.size()) {
+            URI property = statements.get(start).getPredicate();
+            int end = start;
+            while (end < statements.size()
+                    && statements.get(end).getPredicate().equals(property)) {
+                end++;
+            }
+            List<Value> values = new ArrayList<Value>();
+            if (RDF.TYPE.equals(property)) {
+                //The classes are written as @type, the literals as values
+                List<String> types = new ArrayList<String>();
+                for (int i = start; i < end; i++) {
+                    Value object = statements.get(i).getObject();
+                    if (object instanceof Resource) {
+                        types.add(id((Resource) object));
+                    } else {
+                        values.add(object);
+                    }
+                }
+                if (!types.isEmpty()) {
+                    generator.writeArrayFieldStart("@type");
+                    for (String type : types) {
+                        generator.writeString(type);
+                    }
+                    generator.writeEndArray();
+                }
+            } else {
+                for (int i = start; i < end; i++) {
+                    values.add(statements.get(i).getObject());
+                }
+            }
+            if (!values.isEmpty()) {
+                generator.writeArrayFieldStart(property.stringValue());
+                for (Value value : values) {
+                    writeJSONLDValue(value);
+                }
+                generator.writeEndArray();
+            }
+            start = end;
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeJSONLDValue(Value value) throws IOException {
+        generator.writeStartObject();
+        if (value instanceof Literal) {
+            Literal literal = (Literal) value;
+            URI datatype = literal.getDatatype();
+            generator.writeStringField("@value", literal.getLabel());
+            if (literal.getLanguage() != null) {
+                generator.writeStringField("@language", literal.getLanguage());
+            } else if (datatype != null && !XMLSchema.STRING.equals(datatype)) {
+                generator.writeStringField("@type", datatype.stringValue());
+            }
+        } else {
+            generator.writeStringField("@id", id((Resource) value));
+        }
+        generator.writeEndObject();
+    }
+
+    //RDF/JSON, each subject once with each of its predicates once
+    private void writeRDFJSON(Statement st) throws IOException {
+        if (subject == null || !subject.equals(st.getSubject())) {
+            if (subject != null) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            subject = st.getSubject();
+            predicate = st.getPredicate();
+            generator.writeObjectFieldStart(id(subject));
+            generator.writeArrayFieldStart(predicate.stringValue());
+        } else if (!predicate.equals(st.getPredicate())) {
+            predicate = st.getPredicate();
+            generator.writeEndArray();
+            generator.writeArrayFieldStart(predicate.stringValue());
+        }
+        Value object = st.getObject();
+        generator.writeStartObject();
+        if (object instanceof Literal) {
+            Literal literal = (Literal) object;
+            generator.writeStringField("type", "literal");
+            generator.writeStringField("value", literal.getLabel());
+            if (literal.getLanguage() != null) {
+                generator.writeStringField("lang", literal.getLanguage());
+            } else if (literal.getDatatype() != null) {
+                generator.writeStringField("datatype",
+                        literal.getDatatype().stringValue());
+            }
+        } else {
+            generator.writeStringField("type",
+                    (object instanceof BNode) ? "bnode" : "uri");
+            generator.writeStringField("value", id((Resource) object));
+        }
+        generator.writeEndObject();
+    }
+
+    private static String id(Resource resource) {
+        return (resource instanceof BNode)
+                ? "_:" + ((BNode) resource).getID() : resource.stringValue();
+    }
+}
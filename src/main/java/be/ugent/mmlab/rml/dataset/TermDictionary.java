@@ -0,0 +1,245 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+import be.ugent.mmlab.rml.model.dataset.RMLDataset;
+
+/**
+ * RML Processor
+ *
+ * Interns the IRIs and literals of a mapping run, so that the recurring
+ * terms, as the predicates, the classes, the datatypes or the recurring
+ * values, are one instance each instead of one per node. The interned
+ * terms carry their hash code and, once a sink has encoded them, their
+ * encoded bytes.
+ *
+ * The dictionary is a bounded concurrent cache of two generations: the
+ * terms are added to the young one and, when it is full, the young one
+ * becomes the old one and the old one is dropped. The terms found in
+ * the old one are moved back to the young one, so the recurring terms
+ * stay while the others are dropped. Blank nodes are not interned, nor
+ * the terms longer than 256 characters, which seldom recur, so that the
+ * memory of the dictionary is bounded by its number of entries.
+ *
+ * A dictionary lives as long as a run: the engine hands it to the
+ * dataset of the run and takes it back at its end.
+ *
+ * @author andimou
+ */
+public class TermDictionary {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+    //Characters of the longest term interned
+    public static final int MAX_TERM_LENGTH = 256;
+
+    //Dictionary of the datasets without one, which interns nothing
+    private static final TermDictionary NONE = new TermDictionary(0);
+
+    private int maxEntries;
+    //IRIs keyed by their string, literals by themselves
+    private volatile ConcurrentMap<Object, Value> young =
+            new ConcurrentHashMap<Object, Value>();
+    private volatile ConcurrentMap<Object, Value> old =
+            new ConcurrentHashMap<Object, Value>();
+    private AtomicInteger youngSize = new AtomicInteger();
+
+    //Statistics
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+
+    /**
+     *
+     * @param maxEntries the maximum number of interned terms,
+     * none are interned if 0
+     */
+    public TermDictionary(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     *
+     * @param dataset
+     * @return the dictionary of the run writing to the dataset,
+     * one which interns nothing if there is none
+     */
+    public static TermDictionary of(RMLDataset dataset) {
+        if (dataset instanceof StdRMLDataset) {
+            TermDictionary dictionary = ((StdRMLDataset) dataset).getTermDictionary();
+            if (dictionary != null) {
+                return dictionary;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     *
+     * @param iri
+     * @return the interned IRI
+     */
+    public URI uri(String iri) {
+        if (maxEntries <= 0 || iri.length() > MAX_TERM_LENGTH) {
+            return new URIImpl(iri);
+        }
+        Value value = lookup(iri);
+        if (value != null) {
+            return (URI) value;
+        }
+        return (URI) insert(iri, new InternedURI(iri));
+    }
+
+    /**
+     *
+     * @param value
+     * @return the interned term, the same blank node for a blank node
+     */
+    public Value intern(Value value) {
+        if (maxEntries <= 0 || value == null
+                || value instanceof BNode || value instanceof Term) {
+            return value;
+        }
+        if (value instanceof URI) {
+            return uri(value.stringValue());
+        }
+        if (!(value instanceof Literal)
+                || ((Literal) value).getLabel().length() > MAX_TERM_LENGTH) {
+            return value;
+        }
+        Value interned = lookup(value);
+        if (interned != null) {
+            return interned;
+        }
+        Literal literal = (Literal) value;
+        InternedLiteral term;
+        if (literal.getLanguage() != null) {
+            term = new InternedLiteral(literal.getLabel(), literal.getLanguage());
+        } else if (literal.getDatatype() != null) {
+            term = new InternedLiteral(literal.getLabel(), uri(
+                    literal.getDatatype().stringValue()));
+        } else {
+            term = new InternedLiteral(literal.getLabel());
+        }
+        return insert(term, term);
+    }
+
+    private Value lookup(Object key) {
+        Value value = young.get(key);
+        if (value == null) {
+            value = old.get(key);
+            if (value == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            //A recurring term is kept in the next generation
+            insert(key, value);
+        }
+        hits.incrementAndGet();
+        return value;
+    }
+
+    private Value insert(Object key, Value value) {
+        Value existing = young.putIfAbsent(key, value);
+        if (existing != null) {
+            return existing;
+        }
+        if (youngSize.incrementAndGet() >= Math.max(1, maxEntries / 2)) {
+            rotate();
+        }
+        return value;
+    }
+
+    private synchronized void rotate() {
+        if (youngSize.get() < Math.max(1, maxEntries / 2)) {
+            return;
+        }
+        old = young;
+        young = new ConcurrentHashMap<Object, Value>();
+        youngSize.set(0);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * An interned term, with its N-Triples encoding once a sink encoded it
+     */
+    interface Term {
+
+        byte[] getEncoded();
+
+        void setEncoded(byte[] encoded);
+    }
+
+    private static class InternedURI extends URIImpl implements Term {
+        private final int hash;
+        private volatile byte[] encoded = null;
+
+        InternedURI(String iri) {
+            super(iri);
+            this.hash = super.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return encoded;
+        }
+
+        @Override
+        public void setEncoded(byte[] encoded) {
+            this.encoded = encoded;
+        }
+    }
+
+    private static class InternedLiteral extends LiteralImpl implements Term {
+        private final int hash;
+        private volatile byte[] encoded = null;
+
+        InternedLiteral(String label) {
+            super(label);
+            this.hash = super.hashCode();
+        }
+
+        InternedLiteral(String label, String language) {
+            super(label, language);
+            this.hash = super.hashCode();
+        }
+
+        InternedLiteral(String label, URI datatype) {
+            super(label, datatype);
+            this.hash = super.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return encoded;
+        }
+
+        @Override
+        public void setEncoded(byte[] encoded) {
+            this.encoded = encoded;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Suppresses duplicate triples before they reach a dataset. Every emitted
+ * (subject, predicate, object, graph) is reduced to a 128 bit fingerprint
+ * and kept in an open addressing set of primitive longs, so a duplicate
+ * is recognized without querying the store, or when there is no store
+ * at all, as for the datasets which stream to a file.
+ *
+ * The set is kept on the heap or, optionally, in a direct buffer
+ * outside of it. A deduplicator is handed to the dataset whose triples
+ * it checks, and the triples of a dataset without one are all added.
+ *
+ * @author andimou
+ */
+public class TripleDeduplicator {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(TripleDeduplicator.class.getSimpleName());
+
+    private static final float LOAD_FACTOR = 0.6f;
+    //A direct buffer holds less than 2^31 bytes, 16 bytes per slot
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private boolean offHeap;
+    //Two longs per slot, both 0 marks an empty slot
+    private LongBuffer table;
+    private int capacity;
+    private int size = 0;
+    private int threshold;
+    private boolean saturated = false;
+
+    //Statistics
+    private long duplicates = 0;
+    //Triples let through without a check, once the set is full
+    private long unchecked = 0;
+
+    public TripleDeduplicator() {
+        this(false);
+    }
+
+    public TripleDeduplicator(boolean offHeap) {
+        this(offHeap, 1 << 16);
+    }
+
+    /**
+     *
+     * @param offHeap true to keep the fingerprints outside of the heap
+     * @param capacity the initial number of slots, a power of two
+     */
+    public TripleDeduplicator(boolean offHeap, int capacity) {
+        this.offHeap = offHeap;
+        allocate(Math.max(16, Integer.highestOneBit(capacity)));
+    }
+
+    /**
+     * Records a triple, which is to be added only if it is new
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param graph the graph of the triple or null
+     * @return true if the triple was not emitted before
+     */
+    public synchronized boolean add(Resource subject, URI predicate,
+            Value object, Resource graph) {
+        long[] fingerprint = fingerprint(subject, predicate, object, graph);
+        return add(fingerprint[0], fingerprint[1]);
+    }
+
+    /**
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param graph the graph of the triple or null
+     * @return the upper and the lower half of the 128 bit fingerprint
+     */
+    public static long[] fingerprint(Resource subject, URI predicate,
+            Value object, Resource graph) {
+        long[] hash = {0x9ae16a3b2f90404fL, 0xc3a5c85c97cb3127L};
+        hash(hash, subject);
+        hash(hash, predicate);
+        hash(hash, object);
+        hash(hash, graph);
+        return new long[]{mix(hash[0]), mix(hash[1] ^ hash[0])};
+    }
+
+    /**
+     * Hashes a term as a tag of its kind followed by its parts, each
+     * prefixed with its length, so that an IRI and a blank node with the
+     * same label, or a plain and a typed literal, hash different input
+     */
+    private static void hash(long[] hash, Value term) {
+        if (term == null) {
+            update(hash, 'N');
+        } else if (term instanceof Literal) {
+            Literal literal = (Literal) term;
+            update(hash, 'L');
+            update(hash, literal.getLabel());
+            if (literal.getLanguage() != null) {
+                update(hash, '@');
+                update(hash, literal.getLanguage());
+            } else if (literal.getDatatype() != null) {
+                update(hash, '^');
+                update(hash, literal.getDatatype().stringValue());
+            }
+        } else if (term instanceof BNode) {
+            update(hash, 'B');
+            update(hash, ((BNode) term).getID());
+        } else {
+            update(hash, 'U');
+            update(hash, term.stringValue());
+        }
+    }
+
+    private static void update(long[] hash, String value) {
+        update(hash, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            update(hash, value.charAt(i));
+        }
+    }
+
+    private static void update(long[] hash, int value) {
+        hash[0] = (hash[0] ^ value) * 0x100000001b3L;
+        hash[1] = Long.rotateLeft(hash[1] ^ value, 23) * 0x9e3779b97f4a7c15L;
+    }
+
+    /**
+     *
+     * @param high the upper half of a 128 bit fingerprint
+     * @param low the lower half of a 128 bit fingerprint
+     * @return true if the fingerprint was not in the set yet
+     */
+    public synchronized boolean add(long high, long low) {
+        if (high == 0 && low == 0) {
+            low = 1;
+        }
+        int mask = capacity - 1;
+        int slot = (int) (high ^ (high >>> 32)) & mask;
+        while (true) {
+            long slotHigh = table.get(2 * slot);
+            long slotLow = table.get(2 * slot + 1);
+            if (slotHigh == 0 && slotLow == 0) {
+                break;
+            }
+            if (slotHigh == high && slotLow == low) {
+                duplicates++;
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (saturated) {
+            //The set is full, the triple is let through
+            unchecked++;
+            return true;
+        }
+        table.put(2 * slot, high);
+        table.put(2 * slot + 1, low);
+        size++;
+        if (size >= threshold) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param high the upper half of a 128 bit fingerprint
+     * @param low the lower half of a 128 bit fingerprint
+     * @return true if the fingerprint is in the set
+     */
+    public synchronized boolean contains(long high, long low) {
+        if (high == 0 && low == 0) {
+            low = 1;
+        }
+        int mask = capacity - 1;
+        int slot = (int) (high ^ (high >>> 32)) & mask;
+        while (true) {
+            long slotHigh = table.get(2 * slot);
+            long slotLow = table.get(2 * slot + 1);
+            if (slotHigh == 0 && slotLow == 0) {
+                return false;
+            }
+            if (slotHigh == high && slotLow == low) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void allocate(int slots) {
+        capacity = slots;
+        threshold = (int) (slots * LOAD_FACTOR);
+        if (offHeap) {
+            //At most 16 * MAX_CAPACITY bytes, which fits in an int
+            long bytes = 16L * slots;
+            table = ByteBuffer.allocateDirect((int) bytes).asLongBuffer();
+        } else {
+            table = LongBuffer.allocate(2 * slots);
+        }
+    }
+
+    private void grow() {
+        if (capacity >= MAX_CAPACITY) {
+            log.warn("The duplicate triples set is full with " + size 
+                    + " triples, the duplicates of the next triples "
+                    + "are no longer suppressed.");
+            saturated = true;
+            return;
+        }
+        LongBuffer old = table;
+        int oldCapacity = capacity;
+        allocate(capacity << 1);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            long high = old.get(2 * i);
+            long low = old.get(2 * i + 1);
+            if (high == 0 && low == 0) {
+                continue;
+            }
+            int slot = (int) (high ^ (high >>> 32)) & mask;
+            while (table.get(2 * slot) != 0 || table.get(2 * slot + 1) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table.put(2 * slot, high);
+            table.put(2 * slot + 1, low);
+        }
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     *
+     * @return the number of triples let through without a check,
+     * as the set was full
+     */
+    public synchronized long getUnchecked() {
+        return unchecked;
+    }
+
+    /**
+     *
+     * @return true if the set is full and lets the new triples through
+     */
+    public synchronized boolean isSaturated() {
+        return saturated;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     *
+     * @return the number of bytes held by the set
+     */
+    public synchronized long getMemoryUsage() {
+        return 16L * capacity;
+    }
+}
@@ -0,0 +1,117 @@
+package be.ugent.mmlab.rml.join;
+
+import info.debatty.java.stringsimilarity.Levenshtein;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RML Processor
+ *
+ * Burkhard-Keller tree of the distinct values of a Levenshtein join.
+ * By the triangle inequality, only the subtrees whose edge distance is
+ * within the maximum distance of the child's distance to a node
+ * are searched.
+ *
+ * @author andimou
+ */
+public class BKTree implements SimilarityIndex {
+
+    //Approximate heap cost of a node, its list and its map, besides the value
+    private static final int NODE_OVERHEAD = 160;
+    //Approximate heap cost of a boxed id in a list
+    private static final int ID_SIZE = 20;
+    //Approximate heap cost of a child in the map of its parent node
+    private static final int CHILD_SIZE = 56;
+
+    private Levenshtein levenshtein;
+    private int maxDistance;
+    private Node root = null;
+    private long memoryUsage = 0;
+
+    /**
+     *
+     * @param levenshtein the metric of the join
+     * @param maxDistance the maximum Levenshtein distance of a match
+     */
+    public BKTree(Levenshtein levenshtein, double maxDistance) {
+        this.levenshtein = levenshtein;
+        this.maxDistance = (int) Math.floor(maxDistance);
+    }
+
+    @Override
+    public void add(String value, int id) {
+        memoryUsage += ID_SIZE;
+        if (root == null) {
+            root = newNode(value);
+            root.ids.add(id);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(node.value, value);
+            if (distance == 0) {
+                node.ids.add(id);
+                return;
+            }
+            Node child = node.children.get(distance);
+            if (child == null) {
+                child = newNode(value);
+                child.ids.add(id);
+                node.children.put(distance, child);
+                memoryUsage += CHILD_SIZE;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    @Override
+    public Collection<Integer> candidates(String value) {
+        List<Integer> candidates = new ArrayList<Integer>();
+        if (root == null) {
+            return candidates;
+        }
+        List<Node> pending = new ArrayList<Node>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            int distance = distance(node.value, value);
+            if (distance <= maxDistance) {
+                candidates.addAll(node.ids);
+            }
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                if (Math.abs(child.getKey() - distance) <= maxDistance) {
+                    pending.add(child.getValue());
+                }
+            }
+        }
+        return candidates;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    private Node newNode(String value) {
+        memoryUsage += NODE_OVERHEAD + 2L * value.length();
+        return new Node(value);
+    }
+
+    private int distance(String first, String second) {
+        return (int) Math.round(levenshtein.distance(first, second));
+    }
+
+    private static class Node {
+        private String value;
+        private List<Integer> ids = new ArrayList<Integer>(1);
+        private Map<Integer, Node> children = new HashMap<Integer, Node>();
+
+        Node(String value) {
+            this.value = value;
+        }
+    }
+}
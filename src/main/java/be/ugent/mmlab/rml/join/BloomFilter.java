@@ -0,0 +1,130 @@
+package be.ugent.mmlab.rml.join;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RML Processor
+ *
+ * Bloom filter over the fingerprints of the keys of a join index.
+ * A key which is rejected by the filter is certainly not in the index,
+ * a key which passes it is in the index with the configured probability.
+ *
+ * The filter counts its rejections and the false positives reported by
+ * its index, so its observed false positive rate can be compared
+ * to the expected one.
+ *
+ * @author andimou
+ */
+public class BloomFilter {
+
+    private long[] bits;
+    private long numBits;
+    private int hashes;
+    private long insertions = 0;
+
+    //Statistics
+    private AtomicLong rejections = new AtomicLong();
+    private AtomicLong falsePositives = new AtomicLong();
+
+    /**
+     *
+     * @param expectedInsertions the number of keys the filter is sized for
+     * @param falsePositiveRate the expected false positive rate
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(expectedInsertions, 1);
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+        m = Math.max(64, Math.min(m, 64L * Integer.MAX_VALUE));
+        bits = new long[(int) ((m + 63) >>> 6)];
+        numBits = 64L * bits.length;
+        hashes = Math.max(1, (int) Math.round((double) numBits / n * ln2));
+    }
+
+    /**
+     *
+     * @param fingerprint the 64 bit fingerprint of a key
+     */
+    public void add(long fingerprint) {
+        long step = step(fingerprint);
+        long combined = fingerprint;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (combined & Long.MAX_VALUE) % numBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+            combined += step;
+        }
+        insertions++;
+    }
+
+    /**
+     *
+     * @param fingerprint the 64 bit fingerprint of a key
+     * @return false if the key was certainly not added
+     */
+    public boolean mightContain(long fingerprint) {
+        long step = step(fingerprint);
+        long combined = fingerprint;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (combined & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                rejections.incrementAndGet();
+                return false;
+            }
+            combined += step;
+        }
+        return true;
+    }
+
+    //Second hash of the double hashing, derived from the upper bits
+    private static long step(long fingerprint) {
+        long step = (fingerprint >>> 32) * 0x9e3779b97f4a7c15L;
+        return step ^ (step >>> 29) | 1;
+    }
+
+    /**
+     * Records a key which passed the filter but is not in the index
+     */
+    public void recordFalsePositive() {
+        falsePositives.incrementAndGet();
+    }
+
+    public long getInsertions() {
+        return insertions;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    /**
+     *
+     * @return the false positive rate expected from the filter's size
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashes * insertions / numBits), hashes);
+    }
+
+    /**
+     *
+     * @return the share of the absent keys which passed the filter
+     */
+    public double getObservedFalsePositiveRate() {
+        long absent = getRejections() + getFalsePositives();
+        if (absent == 0) {
+            return 0;
+        }
+        return (double) getFalsePositives() / absent;
+    }
+}
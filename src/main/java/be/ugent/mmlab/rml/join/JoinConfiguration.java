@@ -0,0 +1,136 @@
+package be.ugent.mmlab.rml.join;
+
+import java.io.File;
+
+/**
+ * RML Processor
+ *
+ * Configuration of the joins of Referencing Object Maps
+ *
+ * @author andimou
+ */
+public class JoinConfiguration {
+
+    //Memory budget of a join index in bytes, 0 keeps every index in memory
+    private long memoryBudget = 0;
+    //Number of hash partitions of a join index spilled to disk
+    private int partitions = 64;
+    //Directory of the spilled partitions, the system's temporary one if null
+    private File spillDirectory = null;
+    //Maximum Jaccard distance of a match, from 0 to 1
+    private double maxJaccardDistance = 0;
+    //Maximum Levenshtein distance of a match, in edits
+    private int maxLevenshteinDistance = 0;
+    //Join strategy of the joins without metric: hash (default) or merge
+    private String joinStrategy = HASH;
+    //Values of parameterized parent sources kept in the source cache
+    private int cacheEntries = 1024;
+    //Memory budget of the source cache in bytes
+    private long cacheBytes = 64L * 1024 * 1024;
+
+    //False positive rate of the Bloom filters of the join indexes, 0 disables them
+    private double filterFalsePositiveRate = 0.01;
+    //Directory of the join indexes persisted across runs, none if null
+    private File indexDirectory = null;
+    //Mapping document the persisted join indexes depend on, if it is a local file
+    private File mappingDocument = null;
+
+    public static final String HASH = "hash";
+    public static final String MERGE = "merge";
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public double getMaxJaccardDistance() {
+        return maxJaccardDistance;
+    }
+
+    public void setMaxJaccardDistance(double maxJaccardDistance) {
+        this.maxJaccardDistance = maxJaccardDistance;
+    }
+
+    public int getMaxLevenshteinDistance() {
+        return maxLevenshteinDistance;
+    }
+
+    public void setMaxLevenshteinDistance(int maxLevenshteinDistance) {
+        this.maxLevenshteinDistance = maxLevenshteinDistance;
+    }
+
+    public String getJoinStrategy() {
+        return joinStrategy;
+    }
+
+    public void setJoinStrategy(String joinStrategy) {
+        this.joinStrategy = joinStrategy;
+    }
+
+    public int getCacheEntries() {
+        return cacheEntries;
+    }
+
+    public void setCacheEntries(int cacheEntries) {
+        this.cacheEntries = cacheEntries;
+    }
+
+    public long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    public void setCacheBytes(long cacheBytes) {
+        this.cacheBytes = cacheBytes;
+    }
+
+    public double getFilterFalsePositiveRate() {
+        return filterFalsePositiveRate;
+    }
+
+    public void setFilterFalsePositiveRate(double filterFalsePositiveRate) {
+        this.filterFalsePositiveRate = filterFalsePositiveRate;
+    }
+
+    public File getIndexDirectory() {
+        return indexDirectory;
+    }
+
+    public void setIndexDirectory(File indexDirectory) {
+        this.indexDirectory = indexDirectory;
+    }
+
+    public File getMappingDocument() {
+        return mappingDocument;
+    }
+
+    public void setMappingDocument(File mappingDocument) {
+        this.mappingDocument = mappingDocument;
+    }
+
+    public boolean isMergeJoin() {
+        return MERGE.equals(joinStrategy);
+    }
+
+    public boolean isSpillable() {
+        return memoryBudget > 0;
+    }
+}
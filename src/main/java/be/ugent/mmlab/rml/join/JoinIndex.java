@@ -0,0 +1,775 @@
+package be.ugent.mmlab.rml.join;
+
+import be.ugent.mmlab.rml.core.RMLExecutionEngine;
+import be.ugent.mmlab.rml.input.processor.AbstractInputProcessor;
+import be.ugent.mmlab.rml.input.processor.SourceProcessor;
+import be.ugent.mmlab.rml.model.JoinCondition;
+import be.ugent.mmlab.rml.model.RDFTerm.TermType;
+import be.ugent.mmlab.rml.model.TriplesMap;
+import be.ugent.mmlab.rml.model.dataset.RMLDataset;
+import be.ugent.mmlab.rml.performer.JoinIndexPerformer;
+import be.ugent.mmlab.rml.performer.JoinReplayPerformer;
+import be.ugent.mmlab.rml.performer.NestedRMLPerformer;
+import be.ugent.mmlab.rml.performer.RMLPerformer;
+import be.ugent.mmlab.rml.processor.RMLProcessor;
+import be.ugent.mmlab.rml.processor.RMLProcessorFactory;
+import be.ugent.mmlab.rml.processor.concrete.ConcreteRMLProcessorFactory;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Hash index over the nodes of a parent Triples Map, keyed by the values
+ * of the parent references of the join conditions. The parent logical
+ * source is iterated once and every child node probes the index instead
+ * of re-iterating the parent source.
+ *
+ * When the index outgrows the memory budget of its configuration, it is
+ * spilled to disk as a Grace hash join: the parent keys and the child
+ * probes are hash partitioned to files and joined partition by partition
+ * when the iteration finishes. Only the fingerprints of the parent keys
+ * stay in memory, so that children without parent are recognized at once.
+ *
+ * @author andimou
+ */
+public class JoinIndex {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(JoinIndex.class.getSimpleName());
+
+    //Separates the values of composite join keys
+    private static final char KEY_SEPARATOR = '\u001F';
+    //Approximate heap cost of a key and its entry, besides their content
+    protected static final int ENTRY_OVERHEAD = 128;
+    //Approximate heap cost of a parent node which is not a row
+    private static final int NODE_SIZE = 1024;
+
+    private TriplesMap parentTriplesMap;
+    private List<String> parentReferences;
+    private JoinIndexRegistry registry;
+    private JoinConfiguration configuration;
+    private RMLProcessor processor;
+    private Map<String, List<Entry>> entries = new HashMap<String, List<Entry>>();
+    private int size = 0;
+    private long nodes = 0;
+    private long memoryUsage = 0;
+
+    //Spilled state
+    private boolean spilled = false;
+    private File directory;
+    private LongHashSet fingerprints;
+    private PartitionFiles parentPartitions;
+    private PartitionFiles childPartitions;
+    private BitSet resolvedOrdinals;
+    private boolean deferred = false;
+    private boolean spillable = true;
+    //Rejects the keys of children without parent
+    private BloomFilter filter = null;
+
+    public JoinIndex(TriplesMap parentTriplesMap, List<String> parentReferences) {
+        this(parentTriplesMap, parentReferences, new JoinIndexRegistry());
+    }
+
+    public JoinIndex(TriplesMap parentTriplesMap, List<String> parentReferences,
+            JoinIndexRegistry registry) {
+        this.parentTriplesMap = parentTriplesMap;
+        this.parentReferences = parentReferences;
+        this.registry = registry;
+        this.configuration = registry.getConfiguration();
+    }
+
+    /**
+     * Iterates the parent logical source once and indexes its nodes
+     *
+     * @param dataset
+     * @param exeTriplesMap
+     * @param parameters
+     */
+    public void build(RMLDataset dataset, String[] exeTriplesMap,
+            Map<String, String> parameters) {
+        log.debug("Building join index for " + parentTriplesMap.getName()
+                + " on " + parentReferences);
+        processor = createProcessor(parameters);
+        if (processor == null) {
+            log.error("No processor for " + parentTriplesMap.getName());
+            return;
+        }
+
+        JoinIndexPerformer performer = new JoinIndexPerformer(processor, this);
+        iterate(dataset, performer, exeTriplesMap, parameters);
+        if (spilled) {
+            parentPartitions.closeOutputs();
+        }
+        buildFilter();
+        log.debug("Join index for " + parentTriplesMap.getName()
+                + " has " + size + " entries"
+                + (spilled ? ", spilled to " + directory : "") + ".");
+    }
+
+    protected RMLProcessor createProcessor(Map<String, String> parameters) {
+        RMLProcessorFactory factory = new ConcreteRMLProcessorFactory();
+        RMLProcessor parentProcessor = factory.create(
+                parentTriplesMap.getLogicalSource().getReferenceFormulation(),
+                parameters, parentTriplesMap);
+        if (parentProcessor != null) {
+            parentProcessor.setJoinIndexRegistry(registry);
+        }
+        return parentProcessor;
+    }
+
+    private void iterate(RMLDataset dataset, RMLPerformer performer,
+            String[] exeTriplesMap, Map<String, String> parameters) {
+        SourceProcessor inputProcessor = new AbstractInputProcessor();
+        InputStream input = inputProcessor.getInputStream(
+                parentTriplesMap.getLogicalSource(), parameters);
+        if (input == null) {
+            log.debug("No input retrieved for " + parentTriplesMap.getName());
+            return;
+        }
+        processor.execute(dataset, parentTriplesMap, performer,
+                input, exeTriplesMap, false);
+        try {
+            input.close();
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+        }
+    }
+
+    /**
+     *
+     * @param key the composite value of the parent references
+     * @param node the parent node
+     * @param ordinal the position of the node in the parent iteration
+     */
+    public void add(String key, Object node, long ordinal) {
+        nodes = Math.max(nodes, ordinal + 1);
+        size++;
+        if (spilled) {
+            spill(key, ordinal);
+            return;
+        }
+        List<Entry> bucket = entries.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<Entry>(1);
+            entries.put(key, bucket);
+        }
+        bucket.add(new Entry(node, ordinal));
+        memoryUsage += ENTRY_OVERHEAD + 2L * key.length() + estimateSize(node);
+
+        if (spillable && configuration.isSpillable()
+                && memoryUsage > configuration.getMemoryBudget()) {
+            startSpilling();
+        }
+    }
+
+    /**
+     *
+     * @param key the composite value of the child references
+     * @return the parent entries with the same key or an empty list
+     */
+    public List<Entry> probe(String key) {
+        List<Entry> bucket = entries.get(key);
+        if (bucket == null) {
+            recordFalsePositive();
+            return Collections.emptyList();
+        }
+        return bucket;
+    }
+
+    /**
+     *
+     * @param key
+     * @return true if a parent node has the key
+     */
+    public boolean contains(String key) {
+        boolean found;
+        if (spilled) {
+            found = fingerprints.contains(fingerprint(key));
+        } else {
+            found = entries.containsKey(key);
+        }
+        if (!found) {
+            recordFalsePositive();
+        }
+        return found;
+    }
+
+    /**
+     * Checks the Bloom filter of the index, which is much cheaper
+     * than a probe, especially if the index is spilled or mapped
+     *
+     * @param key the composite value of the child references
+     * @return false if no parent node has the key for certain
+     */
+    public boolean mightContain(String key) {
+        return filter == null || filter.mightContain(fingerprint(key));
+    }
+
+    protected void recordFalsePositive() {
+        if (filter != null) {
+            filter.recordFalsePositive();
+        }
+    }
+
+    /**
+     * Builds the Bloom filter over the keys of the index,
+     * once the parent iteration is completed
+     */
+    protected void buildFilter() {
+        if (spilled) {
+            long[] keys = fingerprints.toArray();
+            filter = createFilter(keys.length);
+            for (int i = 0; filter != null && i < keys.length; i++) {
+                filter.add(keys[i]);
+            }
+        } else {
+            filter = createFilter(entries.size());
+            if (filter != null) {
+                for (String key : entries.keySet()) {
+                    filter.add(fingerprint(key));
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param keys
+     * @return a Bloom filter sized for the keys or null
+     * if the join indexes are not filtered
+     */
+    protected BloomFilter createFilter(long keys) {
+        double rate = configuration.getFilterFalsePositiveRate();
+        if (rate <= 0 || rate >= 1) {
+            return null;
+        }
+        return new BloomFilter(keys, rate);
+    }
+
+    protected void setFilter(BloomFilter filter) {
+        this.filter = filter;
+    }
+
+    public BloomFilter getFilter() {
+        return filter;
+    }
+
+    public boolean isSpilled() {
+        return spilled;
+    }
+
+    /**
+     *
+     * @param spillable false if the index must stay in memory
+     */
+    public void setSpillable(boolean spillable) {
+        this.spillable = spillable;
+    }
+
+    /**
+     *
+     * @return the approximate number of bytes held by the index
+     */
+    public long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    public boolean hasDeferredJoins() {
+        return deferred;
+    }
+
+    /**
+     * Generates the subject of a parent entry the first time it is joined.
+     * Its rdf:type triples and, if required, its Predicate Object Maps
+     * are generated only once, no matter how many children join it.
+     *
+     * @param entry
+     * @param dataset
+     * @param exeTriplesMap
+     * @return the parent subject or null if none could be generated
+     */
+    public Resource resolve(Entry entry, RMLDataset dataset, String[] exeTriplesMap) {
+        if (!entry.resolved) {
+            entry.resolved = true;
+            entry.subject = processor.processSubjectMap(processor, dataset,
+                    parentTriplesMap, parentTriplesMap.getSubjectMap(),
+                    entry.node, exeTriplesMap);
+            if (entry.subject != null && requiresNestedExecution(exeTriplesMap)) {
+                log.debug("Nested performer is called");
+                NestedRMLPerformer nestedPerformer =
+                        new NestedRMLPerformer(processor);
+                nestedPerformer.perform(entry.node, dataset,
+                        entry.subject, parentTriplesMap, exeTriplesMap, true);
+            }
+        }
+        return entry.subject;
+    }
+
+    //The parent Predicate Object Maps are generated here,
+    //unless the parent Triples Map is executed on its own
+    private boolean requiresNestedExecution(String[] exeTriplesMap) {
+        boolean pomExecution = false;
+        if (exeTriplesMap != null) {
+            RMLExecutionEngine executionEngine =
+                    new RMLExecutionEngine(exeTriplesMap);
+            pomExecution = executionEngine.
+                    checkExecutionList(parentTriplesMap, exeTriplesMap);
+        }
+        return !pomExecution || parentTriplesMap.getSubjectMap().
+                getTermType().equals(TermType.BLANK_NODE);
+    }
+
+    protected long estimateSize(Object node) {
+        if (node instanceof Map) {
+            long estimate = ENTRY_OVERHEAD;
+            for (Object cell : ((Map<?, ?>) node).entrySet()) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) cell;
+                estimate += ENTRY_OVERHEAD
+                        + 2L * String.valueOf(entry.getKey()).length()
+                        + 2L * String.valueOf(entry.getValue()).length();
+            }
+            return estimate;
+        }
+        return NODE_SIZE;
+    }
+
+    private void startSpilling() {
+        log.info("Join index for " + parentTriplesMap.getName()
+                + " exceeds " + configuration.getMemoryBudget()
+                + " bytes, spilling it to disk.");
+        try {
+            File parent = configuration.getSpillDirectory();
+            String prefix = "rml-join-";
+            directory = (parent == null)
+                    ? Files.createTempDirectory(prefix).toFile()
+                    : Files.createTempDirectory(parent.toPath(), prefix).toFile();
+        } catch (IOException ex) {
+            //The other indexes may still spill to their directory
+            log.warn("IOException " + ex + " The join index for "
+                    + parentTriplesMap.getName() + " is kept in memory, "
+                    + "beyond the memory budget.");
+            spillable = false;
+            return;
+        }
+        spilled = true;
+        fingerprints = new LongHashSet(entries.size() * 2);
+        parentPartitions = new PartitionFiles(
+                directory, "parent", configuration.getPartitions());
+        childPartitions = new PartitionFiles(
+                directory, "child", configuration.getPartitions());
+        resolvedOrdinals = new BitSet();
+
+        for (Map.Entry<String, List<Entry>> bucket : entries.entrySet()) {
+            for (Entry entry : bucket.getValue()) {
+                spill(bucket.getKey(), entry.ordinal);
+            }
+        }
+        entries = new HashMap<String, List<Entry>>();
+        memoryUsage = 0;
+    }
+
+    private void spill(String key, long ordinal) {
+        fingerprints.add(fingerprint(key));
+        try {
+            DataOutputStream output =
+                    parentPartitions.getOutput(parentPartitions.partition(key));
+            output.writeByte(1);
+            PartitionFiles.writeString(output, key);
+            output.writeLong(ordinal);
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+        }
+    }
+
+    /**
+     * Defers the join of a child to the end of the iteration,
+     * when the spilled partitions are joined
+     *
+     * @param key
+     * @param subject the child subject
+     * @param predicate
+     * @param graph
+     */
+    public void defer(String key, Resource subject, URI predicate, Resource graph) {
+        deferred = true;
+        try {
+            DataOutputStream output =
+                    childPartitions.getOutput(childPartitions.partition(key));
+            output.writeByte(1);
+            PartitionFiles.writeString(output, key);
+            PartitionFiles.writeResource(output, subject);
+            PartitionFiles.writeResource(output, predicate);
+            PartitionFiles.writeResource(output, graph);
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+        }
+    }
+
+    /**
+     * Completes the deferred joins: each child partition is joined with
+     * its parent partition, the matches are grouped by parent position
+     * and the parent source is iterated once more to generate them.
+     *
+     * @param dataset
+     * @param exeTriplesMap
+     */
+    public void finish(RMLDataset dataset, String[] exeTriplesMap) {
+        if (!deferred) {
+            return;
+        }
+        deferred = false;
+        childPartitions.closeOutputs();
+        int ranges = configuration.getPartitions();
+        long rangeSize = nodes / ranges + 1;
+        PartitionFiles matches = new PartitionFiles(directory, "match", ranges);
+        try {
+            long count = 0;
+            for (int partition = 0; partition < childPartitions.getPartitions(); partition++) {
+                count += joinPartition(partition, matches, rangeSize);
+            }
+            matches.closeOutputs();
+            //The replay may defer new joins to this index
+            childPartitions.delete();
+            log.debug("Spilled join of " + parentTriplesMap.getName()
+                    + " found " + count + " matches.");
+            if (count > 0) {
+                JoinReplayPerformer performer = new JoinReplayPerformer(
+                        processor, this, matches, rangeSize);
+                iterate(dataset, performer, exeTriplesMap,
+                        new HashMap<String, String>());
+            }
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+            childPartitions.delete();
+        } finally {
+            matches.delete();
+        }
+    }
+
+    private long joinPartition(int partition, PartitionFiles matches,
+            long rangeSize) throws IOException {
+        DataInputStream children = childPartitions.getInput(partition);
+        if (children == null) {
+            return 0;
+        }
+        long count = 0;
+        Map<String, List<Long>> parents = loadParentPartition(partition);
+        try {
+            while (children.read() > 0) {
+                String key = PartitionFiles.readString(children);
+                Resource subject = PartitionFiles.readResource(children);
+                Resource predicate = PartitionFiles.readResource(children);
+                Resource graph = PartitionFiles.readResource(children);
+                List<Long> ordinals = parents.get(key);
+                if (ordinals == null) {
+                    continue;
+                }
+                for (Long ordinal : ordinals) {
+                    DataOutputStream output =
+                            matches.getOutput((int) (ordinal / rangeSize));
+                    output.writeByte(1);
+                    output.writeLong(ordinal);
+                    PartitionFiles.writeResource(output, subject);
+                    PartitionFiles.writeResource(output, predicate);
+                    PartitionFiles.writeResource(output, graph);
+                    count++;
+                }
+            }
+        } finally {
+            children.close();
+        }
+        return count;
+    }
+
+    private Map<String, List<Long>> loadParentPartition(int partition)
+            throws IOException {
+        Map<String, List<Long>> parents = new HashMap<String, List<Long>>();
+        DataInputStream input = parentPartitions.getInput(partition);
+        if (input == null) {
+            return parents;
+        }
+        try {
+            while (input.read() > 0) {
+                String key = PartitionFiles.readString(input);
+                long ordinal = input.readLong();
+                List<Long> ordinals = parents.get(key);
+                if (ordinals == null) {
+                    ordinals = new ArrayList<Long>(1);
+                    parents.put(key, ordinals);
+                }
+                ordinals.add(ordinal);
+            }
+        } finally {
+            input.close();
+        }
+        return parents;
+    }
+
+    /**
+     * Generates the join triples of a parent node of the spilled index
+     *
+     * @param node
+     * @param ordinal the position of the node in the parent iteration
+     * @param children the matched children of the node
+     * @param dataset
+     * @param exeTriplesMap
+     */
+    public void replay(Object node, long ordinal, List<Child> children,
+            RMLDataset dataset, String[] exeTriplesMap) {
+        Resource object = processor.processSubjectMap(processor, dataset,
+                parentTriplesMap, parentTriplesMap.getSubjectMap(),
+                node, exeTriplesMap);
+        if (object == null) {
+            return;
+        }
+        if (!resolvedOrdinals.get((int) ordinal)) {
+            resolvedOrdinals.set((int) ordinal);
+            if (requiresNestedExecution(exeTriplesMap)) {
+                NestedRMLPerformer nestedPerformer =
+                        new NestedRMLPerformer(processor);
+                nestedPerformer.perform(node, dataset,
+                        object, parentTriplesMap, exeTriplesMap, true);
+            }
+        }
+        for (Child child : children) {
+            dataset.add(child.subject, child.predicate, object, child.graph);
+        }
+    }
+
+    /**
+     * Releases the spilled partitions
+     */
+    public void close() {
+        if (spilled) {
+            parentPartitions.delete();
+            childPartitions.delete();
+            if (!directory.delete()) {
+                log.debug("Directory " + directory + " could not be deleted.");
+            }
+        }
+    }
+
+    /**
+     *
+     * @param key
+     * @return a 64 bit fingerprint of the key
+     */
+    public static long fingerprint(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public TriplesMap getParentTriplesMap() {
+        return parentTriplesMap;
+    }
+
+    public List<String> getParentReferences() {
+        return parentReferences;
+    }
+
+    public RMLProcessor getProcessor() {
+        return processor;
+    }
+
+    protected void setProcessor(RMLProcessor processor) {
+        this.processor = processor;
+    }
+
+    protected JoinIndexRegistry getRegistry() {
+        return registry;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Orders the join conditions, so the child and the parent keys
+     * are composed in the same order
+     *
+     * @param joinConditions
+     * @return the join conditions with both a child and a parent reference
+     */
+    public static List<JoinCondition> sortJoinConditions(
+            Set<JoinCondition> joinConditions) {
+        List<JoinCondition> sorted = new ArrayList<JoinCondition>();
+        for (JoinCondition joinCondition : joinConditions) {
+            if (joinCondition.getChild() != null
+                    && joinCondition.getParent() != null) {
+                sorted.add(joinCondition);
+            }
+        }
+        Collections.sort(sorted, new Comparator<JoinCondition>() {
+            @Override
+            public int compare(JoinCondition first, JoinCondition second) {
+                int result = first.getParent().compareTo(second.getParent());
+                if (result == 0) {
+                    result = first.getChild().compareTo(second.getChild());
+                }
+                return result;
+            }
+        });
+        return sorted;
+    }
+
+    public static List<String> getParentReferences(List<JoinCondition> joinConditions) {
+        List<String> references = new ArrayList<String>();
+        for (JoinCondition joinCondition : joinConditions) {
+            references.add(joinCondition.getParent());
+        }
+        return references;
+    }
+
+    /**
+     *
+     * @param parentTriplesMap
+     * @param parentReferences
+     * @return the identifier of the index of a parent Triples Map
+     */
+    public static String getIdentifier(
+            TriplesMap parentTriplesMap, List<String> parentReferences) {
+        return parentTriplesMap.getName() + KEY_SEPARATOR
+                + key(parentReferences);
+    }
+
+    /**
+     *
+     * @param values one value per join condition
+     * @return the composite join key
+     */
+    public static String key(List<String> values) {
+        if (values.size() == 1) {
+            return values.get(0);
+        }
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                key.append(KEY_SEPARATOR);
+            }
+            key.append(values.get(i));
+        }
+        return key.toString();
+    }
+
+    /**
+     *
+     * @param key a composite join key
+     * @return the value of each join condition
+     */
+    public static List<String> split(String key) {
+        List<String> values = new ArrayList<String>();
+        int start = 0;
+        int end;
+        while ((end = key.indexOf(KEY_SEPARATOR, start)) >= 0) {
+            values.add(key.substring(start, end));
+            start = end + 1;
+        }
+        values.add(key.substring(start));
+        return values;
+    }
+
+    /**
+     * Combines the values of each join condition into composite keys,
+     * every value of every condition is combined with every other.
+     *
+     * @param values the values of each join condition
+     * @return the composite join keys
+     */
+    public static List<String> keys(List<List<String>> values) {
+        List<List<String>> combinations = new ArrayList<List<String>>();
+        combinations.add(new ArrayList<String>());
+        for (List<String> conditionValues : values) {
+            List<List<String>> extended = new ArrayList<List<String>>();
+            for (List<String> combination : combinations) {
+                for (String value : conditionValues) {
+                    List<String> next = new ArrayList<String>(combination);
+                    next.add(value);
+                    extended.add(next);
+                }
+            }
+            combinations = extended;
+        }
+        List<String> keys = new ArrayList<String>();
+        for (List<String> combination : combinations) {
+            if (!combination.isEmpty()) {
+                keys.add(key(combination));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * A parent node and, once joined, its subject
+     */
+    public static class Entry {
+        private Object node;
+        private long ordinal;
+        private Resource subject = null;
+        private boolean resolved = false;
+
+        Entry(Object node, long ordinal) {
+            this.node = node;
+            this.ordinal = ordinal;
+        }
+
+        //An entry of which only the subject is known
+        Entry(Resource subject) {
+            this.node = null;
+            this.ordinal = -1;
+            this.subject = subject;
+            this.resolved = true;
+        }
+
+        public Object getNode() {
+            return node;
+        }
+
+        public Resource getSubject() {
+            return subject;
+        }
+
+        public boolean isResolved() {
+            return resolved;
+        }
+    }
+
+    /**
+     * A child of a deferred join, waiting for its parent object
+     */
+    public static class Child {
+        private Resource subject;
+        private URI predicate;
+        private Resource graph;
+
+        public Child(Resource subject, URI predicate, Resource graph) {
+            this.subject = subject;
+            this.predicate = predicate;
+            this.graph = graph;
+        }
+    }
+}
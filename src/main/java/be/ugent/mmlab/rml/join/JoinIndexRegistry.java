@@ -0,0 +1,396 @@
+package be.ugent.mmlab.rml.join;
+
+import be.ugent.mmlab.rml.condition.model.std.StdJoinConditionMetric;
+import be.ugent.mmlab.rml.model.JoinCondition;
+import be.ugent.mmlab.rml.model.TriplesMap;
+import be.ugent.mmlab.rml.model.dataset.RMLDataset;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Registry of the join indexes of a mapping run. Each parent Triples Map
+ * is indexed once per set of parent references and the index is shared
+ * by every Referencing Object Map of every child Triples Map.
+ *
+ * @author andimou
+ */
+public class JoinIndexRegistry {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(JoinIndexRegistry.class.getSimpleName());
+
+    private JoinConfiguration configuration;
+    private Map<String, JoinIndex> joinIndexes = new HashMap<String, JoinIndex>();
+    private Map<String, ParentSubjects> parentSubjects =
+            new HashMap<String, ParentSubjects>();
+    //Indexes and subjects of the parameterized parent sources
+    private SourceCache<Object> sourceCache;
+
+    //Statistics
+    private long hits = 0;
+    private long misses = 0;
+    private long buildTime = 0;
+
+    public JoinIndexRegistry() {
+        this(new JoinConfiguration());
+    }
+
+    public JoinIndexRegistry(JoinConfiguration configuration) {
+        this.configuration = configuration;
+        this.sourceCache = new SourceCache<Object>(
+                configuration.getCacheEntries(), configuration.getCacheBytes());
+    }
+
+    /**
+     * Retrieves the join index of the parent Triples Map
+     * or builds it, iterating the parent logical source once
+     *
+     * @param dataset
+     * @param triplesMap the child Triples Map
+     * @param parentTriplesMap
+     * @param joinConditions
+     * @param exeTriplesMap
+     * @return the join index
+     */
+    public JoinIndex getJoinIndex(RMLDataset dataset, TriplesMap triplesMap,
+            TriplesMap parentTriplesMap, Set<JoinCondition> joinConditions,
+            String[] exeTriplesMap) {
+        List<JoinCondition> sortedConditions =
+                JoinIndex.sortJoinConditions(joinConditions);
+        List<String> parentReferences =
+                JoinIndex.getParentReferences(sortedConditions);
+        int position = getMetricPosition(sortedConditions);
+        String metric = null;
+        if (position >= 0) {
+            metric = getMetric(sortedConditions.get(position));
+        }
+        String identifier =
+                JoinIndex.getIdentifier(parentTriplesMap, parentReferences);
+
+        if (metric != null) {
+            identifier += " " + metric;
+        } else if (configuration.isMergeJoin()) {
+            //The parent source is merged with each child source separately
+            identifier += " " + triplesMap.getName();
+        } else {
+            return getJoinIndex(
+                    dataset, parentTriplesMap, parentReferences, exeTriplesMap);
+        }
+        JoinIndex index = joinIndexes.get(identifier);
+        if (index != null) {
+            hits++;
+            return index;
+        }
+        misses++;
+        if (metric != null) {
+            index = new SimilarityJoinIndex(parentTriplesMap,
+                    parentReferences, this, metric, position);
+        } else {
+            index = new MergeJoinIndex(
+                    parentTriplesMap, parentReferences, this);
+        }
+        return register(identifier, index, dataset, exeTriplesMap);
+    }
+
+    /**
+     * Retrieves the join index of a parent logical source bound to the child
+     * by parameters from the source cache or builds it
+     *
+     * @param dataset
+     * @param triplesMap the child Triples Map
+     * @param parentTriplesMap
+     * @param joinConditions
+     * @param exeTriplesMap
+     * @param parameters the parameters of the binding conditions
+     * @return the join index
+     */
+    public JoinIndex getJoinIndex(RMLDataset dataset, TriplesMap triplesMap,
+            TriplesMap parentTriplesMap, Set<JoinCondition> joinConditions,
+            String[] exeTriplesMap, Map<String, String> parameters) {
+        if (parameters == null || parameters.isEmpty()) {
+            return getJoinIndex(dataset, triplesMap, parentTriplesMap,
+                    joinConditions, exeTriplesMap);
+        }
+        List<JoinCondition> sortedConditions =
+                JoinIndex.sortJoinConditions(joinConditions);
+        List<String> parentReferences =
+                JoinIndex.getParentReferences(sortedConditions);
+        int position = getMetricPosition(sortedConditions);
+        String metric = null;
+        if (position >= 0) {
+            metric = getMetric(sortedConditions.get(position));
+        }
+        String identifier = "index "
+                + JoinIndex.getIdentifier(parentTriplesMap, parentReferences)
+                + " " + metric + " " + new TreeMap<String, String>(parameters);
+
+        JoinIndex index = (JoinIndex) sourceCache.get(identifier);
+        if (index != null) {
+            return index;
+        }
+        long startTime = System.nanoTime();
+        if (metric != null) {
+            index = new SimilarityJoinIndex(parentTriplesMap,
+                    parentReferences, this, metric, position);
+        } else {
+            index = new JoinIndex(parentTriplesMap, parentReferences, this);
+        }
+        //Evicted indexes are not finished, so they are kept in memory
+        index.setSpillable(false);
+        index.build(dataset, exeTriplesMap, parameters);
+        buildTime += System.nanoTime() - startTime;
+        sourceCache.put(identifier, index, index.getMemoryUsage());
+        return index;
+    }
+
+    /**
+     * Retrieves the hash join index of the parent Triples Map
+     * or builds it, iterating the parent logical source once
+     *
+     * @param dataset
+     * @param parentTriplesMap
+     * @param parentReferences
+     * @param exeTriplesMap
+     * @return the join index
+     */
+    public JoinIndex getJoinIndex(RMLDataset dataset, TriplesMap parentTriplesMap,
+            List<String> parentReferences, String[] exeTriplesMap) {
+        String identifier =
+                JoinIndex.getIdentifier(parentTriplesMap, parentReferences);
+        JoinIndex index = joinIndexes.get(identifier);
+        if (index != null) {
+            hits++;
+            return index;
+        }
+        misses++;
+        index = createJoinIndex(parentTriplesMap, parentReferences, exeTriplesMap);
+        return register(identifier, index, dataset, exeTriplesMap);
+    }
+
+    private JoinIndex createJoinIndex(TriplesMap parentTriplesMap,
+            List<String> parentReferences, String[] exeTriplesMap) {
+        File directory = configuration.getIndexDirectory();
+        if (directory != null
+                && PersistentJoinIndex.isPersistable(parentTriplesMap, exeTriplesMap)) {
+            File file = PersistentJoinIndex.getFile(directory, parentTriplesMap,
+                    parentReferences, configuration.getMappingDocument());
+            if (file != null) {
+                return new PersistentJoinIndex(
+                        parentTriplesMap, parentReferences, this, file);
+            }
+            log.debug("The join index of " + parentTriplesMap.getName()
+                    + " is not persisted, its source or its conditions"
+                    + " can not be identified.");
+        }
+        return new JoinIndex(parentTriplesMap, parentReferences, this);
+    }
+
+    private JoinIndex register(String identifier, JoinIndex index,
+            RMLDataset dataset, String[] exeTriplesMap) {
+        long startTime = System.nanoTime();
+        //Registered before it is built, so that it is released in any case
+        joinIndexes.put(identifier, index);
+        index.build(dataset, exeTriplesMap, new HashMap<String, String>());
+        buildTime += System.nanoTime() - startTime;
+        return index;
+    }
+
+    private void logFilter(JoinIndex index) {
+        BloomFilter filter = index.getFilter();
+        if (filter == null) {
+            return;
+        }
+        log.info("Bloom filter of " + index.getParentTriplesMap().getName()
+                + " on " + index.getParentReferences() + ": "
+                + filter.getInsertions() + " keys, "
+                + filter.getNumBits() + " bits, "
+                + filter.getRejections() + " children rejected, "
+                + String.format("%.3f", filter.getExpectedFalsePositiveRate() * 100)
+                + "% expected and "
+                + String.format("%.3f", filter.getObservedFalsePositiveRate() * 100)
+                + "% observed false positive rate.");
+    }
+
+    /**
+     *
+     * @param joinConditions
+     * @return true if the join conditions can be joined through an index,
+     * either without metric or with a supported metric
+     */
+    public static boolean isIndexable(Set<JoinCondition> joinConditions) {
+        List<JoinCondition> sortedConditions =
+                JoinIndex.sortJoinConditions(joinConditions);
+        int position = getMetricPosition(sortedConditions);
+        if (position < 0) {
+            return true;
+        }
+        String metric = getMetric(sortedConditions.get(position));
+        return metric == null
+                || SimilarityJoinIndex.JACCARD.equals(metric)
+                || SimilarityJoinIndex.LEVENSHTEIN.equals(metric);
+    }
+
+    private static int getMetricPosition(List<JoinCondition> joinConditions) {
+        for (int i = 0; i < joinConditions.size(); i++) {
+            if (joinConditions.get(i).getClass().getSimpleName().equals(
+                    "StdJoinConditionMetric")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String getMetric(JoinCondition joinCondition) {
+        StdJoinConditionMetric joinConditionMetric =
+                (StdJoinConditionMetric) joinCondition;
+        if (joinConditionMetric.getMetric() == null) {
+            return null;
+        }
+        return joinConditionMetric.getMetric().stringValue();
+    }
+
+    /**
+     * Retrieves the subjects of the parent Triples Map
+     * or generates them, iterating the parent logical source once
+     *
+     * @param dataset
+     * @param parentTriplesMap
+     * @param exeTriplesMap
+     * @param processorParameters
+     * @param parameters
+     * @return the parent subjects
+     */
+    public ParentSubjects getParentSubjects(RMLDataset dataset,
+            TriplesMap parentTriplesMap, String[] exeTriplesMap,
+            Map<String, String> processorParameters, Map<String, String> parameters) {
+        ParentSubjects subjects = parentSubjects.get(parentTriplesMap.getName());
+        if (subjects != null) {
+            hits++;
+            return subjects;
+        }
+        misses++;
+        long startTime = System.nanoTime();
+        subjects = new ParentSubjects(parentTriplesMap);
+        parentSubjects.put(parentTriplesMap.getName(), subjects);
+        subjects.build(dataset, exeTriplesMap, processorParameters, parameters);
+        buildTime += System.nanoTime() - startTime;
+        return subjects;
+    }
+
+    /**
+     * Retrieves the subjects of a parent logical source bound to the child
+     * by parameters from the source cache or generates them, 
+     * together with their Predicate Object Maps
+     *
+     * @param dataset
+     * @param parentTriplesMap
+     * @param exeTriplesMap
+     * @param processorParameters
+     * @param parameters the parameters of the binding conditions
+     * @return the parent subjects
+     */
+    public ParentSubjects getBoundSubjects(RMLDataset dataset,
+            TriplesMap parentTriplesMap, String[] exeTriplesMap,
+            Map<String, String> processorParameters, Map<String, String> parameters) {
+        String identifier = "subjects " + parentTriplesMap.getName() + " "
+                + new TreeMap<String, String>(parameters);
+        ParentSubjects subjects = (ParentSubjects) sourceCache.get(identifier);
+        if (subjects != null) {
+            return subjects;
+        }
+        long startTime = System.nanoTime();
+        subjects = new ParentSubjects(parentTriplesMap, this, true);
+        subjects.build(dataset, exeTriplesMap, processorParameters, parameters);
+        buildTime += System.nanoTime() - startTime;
+        sourceCache.put(identifier, subjects, subjects.getMemoryUsage());
+        return subjects;
+    }
+
+    /**
+     * Completes the joins deferred by the spilled join indexes.
+     * Completing a join may defer joins of other indexes,
+     * so it is repeated until none is pending.
+     *
+     * @param dataset
+     * @param exeTriplesMap
+     */
+    public void finish(RMLDataset dataset, String[] exeTriplesMap) {
+        boolean pending = true;
+        while (pending) {
+            pending = false;
+            for (JoinIndex index : new ArrayList<JoinIndex>(joinIndexes.values())) {
+                if (index.hasDeferredJoins()) {
+                    pending = true;
+                    index.finish(dataset, exeTriplesMap);
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the join indexes and reports their statistics
+     */
+    public void close() {
+        for (JoinIndex index : joinIndexes.values()) {
+            logFilter(index);
+            index.close();
+        }
+        if (hits + misses > 0) {
+            log.info("Join indexes: " + misses + " built in "
+                    + (buildTime / 1000000) + " ms, "
+                    + hits + " lookups served from the registry, "
+                    + String.format("%.1f", getHitRatio() * 100) + "% hit ratio.");
+        }
+        if (sourceCache.getHits() + sourceCache.getMisses() > 0) {
+            log.info("Source cache: " + sourceCache.getHits() + " hits, "
+                    + sourceCache.getMisses() + " misses, "
+                    + sourceCache.getEvictions() + " evictions, "
+                    + String.format("%.1f", sourceCache.getHitRatio() * 100)
+                    + "% hit ratio.");
+        }
+        sourceCache.clear();
+        joinIndexes.clear();
+        parentSubjects.clear();
+    }
+
+    public SourceCache<Object> getSourceCache() {
+        return sourceCache;
+    }
+
+    public JoinConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     *
+     * @return the time spent building indexes in nanoseconds
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    public double getHitRatio() {
+        if (hits + misses == 0) {
+            return 0;
+        }
+        return (double) hits / (hits + misses);
+    }
+}
@@ -0,0 +1,298 @@
+package be.ugent.mmlab.rml.join;
+
+import be.ugent.mmlab.rml.input.processor.AbstractInputProcessor;
+import be.ugent.mmlab.rml.input.processor.SourceProcessor;
+import be.ugent.mmlab.rml.model.TriplesMap;
+import be.ugent.mmlab.rml.model.dataset.RMLDataset;
+import be.ugent.mmlab.rml.performer.JoinIndexPerformer;
+import be.ugent.mmlab.rml.processor.RMLProcessor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Sort-merge join of a child source and a parent source which are both
+ * sorted on their join keys. The parent source is streamed side by side
+ * with the child source, so only the parent nodes of the current key are
+ * kept in memory.
+ *
+ * The keys are ordered as strings, value by value for composite keys, so
+ * sources sorted numerically, with 10 after 2, are not sorted for the merge.
+ * The order of both sources is verified while they are merged. As soon
+ * as a key is out of order, the join falls back to the hash join index
+ * of the registry for the rest of the child iteration.
+ *
+ * The merge join is not chosen per map: the join strategy of the
+ * configuration applies to every join without metric of the run.
+ *
+ * @author andimou
+ */
+public class MergeJoinIndex extends JoinIndex {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(MergeJoinIndex.class.getSimpleName());
+
+    private static final int QUEUE_SIZE = 1024;
+    //Marks the end of the parent stream
+    private static final Item END = new Item(null, null, -1);
+
+    private BlockingQueue<Item> queue = new ArrayBlockingQueue<Item>(QUEUE_SIZE);
+    private Thread producer;
+    private volatile boolean cancelled = false;
+
+    private Item pending = null;
+    private boolean exhausted = false;
+    private String groupKey = null;
+    private List<Entry> group = Collections.emptyList();
+    private String lastChildKey = null;
+    private JoinIndex fallback = null;
+    private RMLDataset dataset;
+    private String[] exeTriplesMap;
+
+    public MergeJoinIndex(TriplesMap parentTriplesMap,
+            List<String> parentReferences, JoinIndexRegistry registry) {
+        super(parentTriplesMap, parentReferences, registry);
+    }
+
+    /**
+     * Starts streaming the parent logical source,
+     * the nodes are consumed as the children probe them
+     *
+     * @param dataset
+     * @param exeTriplesMap
+     * @param parameters
+     */
+    @Override
+    public void build(final RMLDataset dataset, final String[] exeTriplesMap,
+            Map<String, String> parameters) {
+        final TriplesMap parentTriplesMap = getParentTriplesMap();
+        this.dataset = dataset;
+        this.exeTriplesMap = exeTriplesMap;
+        log.debug("Streaming " + parentTriplesMap.getName() + " for a merge join on "
+                + getParentReferences());
+        //The parent nodes are iterated and joined by different processors
+        setProcessor(createProcessor(parameters));
+        final RMLProcessor streamProcessor = createProcessor(parameters);
+        if (getProcessor() == null || streamProcessor == null) {
+            log.error("No processor for " + parentTriplesMap.getName());
+            exhausted = true;
+            return;
+        }
+        SourceProcessor inputProcessor = new AbstractInputProcessor();
+        final InputStream input = inputProcessor.getInputStream(
+                parentTriplesMap.getLogicalSource(), parameters);
+        if (input == null) {
+            log.debug("No input retrieved for " + parentTriplesMap.getName());
+            exhausted = true;
+            return;
+        }
+
+        producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    streamProcessor.execute(dataset, parentTriplesMap,
+                            new JoinIndexPerformer(streamProcessor, MergeJoinIndex.this),
+                            input, exeTriplesMap, false);
+                } catch (Exception ex) {
+                    if (!cancelled) {
+                        log.error("Exception " + ex);
+                    }
+                } finally {
+                    try {
+                        input.close();
+                    } catch (IOException ex) {
+                        log.error("IOException " + ex);
+                    }
+                    put(END);
+                }
+            }
+        }, "merge-join-" + parentTriplesMap.getName());
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Called by the parent stream for every indexed parent node
+     */
+    @Override
+    public void add(String key, Object node, long ordinal) {
+        put(new Item(key, node, ordinal));
+    }
+
+    private void put(Item item) {
+        if (cancelled) {
+            return;
+        }
+        try {
+            queue.put(item);
+        } catch (InterruptedException ex) {
+            cancelled = true;
+        }
+    }
+
+    private Item take() {
+        try {
+            return queue.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return END;
+        }
+    }
+
+    /**
+     *
+     * @param key the composite value of the child references
+     * @return the parent entries with the same key or an empty list
+     */
+    @Override
+    public List<Entry> probe(String key) {
+        if (fallback == null && lastChildKey != null
+                && compareKeys(key, lastChildKey) < 0) {
+            fallBack("the child key " + key + " follows " + lastChildKey);
+        }
+        if (fallback != null) {
+            return fallback.probe(key);
+        }
+        lastChildKey = key;
+
+        while (groupKey == null || compareKeys(groupKey, key) < 0) {
+            if (!nextGroup()) {
+                break;
+            }
+        }
+        if (fallback != null) {
+            return fallback.probe(key);
+        }
+        if (groupKey != null && compareKeys(groupKey, key) == 0) {
+            return group;
+        }
+        return Collections.emptyList();
+    }
+
+    //Reads the parent nodes of the next key
+    private boolean nextGroup() {
+        if (exhausted) {
+            return false;
+        }
+        Item first = (pending != null) ? pending : take();
+        pending = null;
+        if (first == END) {
+            exhausted = true;
+            return false;
+        }
+        if (groupKey != null && compareKeys(first.key, groupKey) < 0) {
+            fallBack("the parent key " + first.key + " follows " + groupKey);
+            return false;
+        }
+        groupKey = first.key;
+        group = new ArrayList<Entry>(1);
+        group.add(new Entry(first.node, first.ordinal));
+        while (true) {
+            Item next = take();
+            if (next != END && compareKeys(next.key, groupKey) == 0) {
+                group.add(new Entry(next.node, next.ordinal));
+            } else {
+                pending = next;
+                break;
+            }
+        }
+        return true;
+    }
+
+    private void fallBack(String reason) {
+        log.info("The sources of " + getParentTriplesMap().getName()
+                + " are not sorted, " + reason
+                + ". Falling back to the hash join.");
+        cancel();
+        group = Collections.emptyList();
+        fallback = getRegistry().getJoinIndex(dataset, getParentTriplesMap(),
+                getParentReferences(), exeTriplesMap);
+    }
+
+    private void cancel() {
+        cancelled = true;
+        exhausted = true;
+        queue.clear();
+        if (producer != null) {
+            producer.interrupt();
+        }
+    }
+
+    @Override
+    public boolean contains(String key) {
+        if (fallback != null) {
+            return fallback.contains(key);
+        }
+        return !probe(key).isEmpty();
+    }
+
+    @Override
+    public boolean isSpilled() {
+        return fallback != null && fallback.isSpilled();
+    }
+
+    @Override
+    public void defer(String key, Resource subject, URI predicate, Resource graph) {
+        fallback.defer(key, subject, predicate, graph);
+    }
+
+    @Override
+    public Resource resolve(Entry entry, RMLDataset dataset, String[] exeTriplesMap) {
+        if (fallback != null) {
+            return fallback.resolve(entry, dataset, exeTriplesMap);
+        }
+        return super.resolve(entry, dataset, exeTriplesMap);
+    }
+
+    @Override
+    public void close() {
+        cancel();
+    }
+
+    /**
+     * Compares composite keys value by value, each value as a string.
+     * A single ordering keeps the comparison transitive, whatever mix of
+     * numbers and strings the values are.
+     *
+     * @param first
+     * @param second
+     * @return
+     */
+    public static int compareKeys(String first, String second) {
+        List<String> firstValues = split(first);
+        List<String> secondValues = split(second);
+        int length = Math.min(firstValues.size(), secondValues.size());
+        for (int i = 0; i < length; i++) {
+            int comparison = firstValues.get(i).compareTo(secondValues.get(i));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return firstValues.size() - secondValues.size();
+    }
+
+    private static class Item {
+        private String key;
+        private Object node;
+        private long ordinal;
+
+        Item(String key, Object node, long ordinal) {
+            this.key = key;
+            this.node = node;
+            this.ordinal = ordinal;
+        }
+    }
+}
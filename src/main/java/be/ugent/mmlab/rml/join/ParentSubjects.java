@@ -0,0 +1,148 @@
+package be.ugent.mmlab.rml.join;
+
+import be.ugent.mmlab.rml.input.processor.AbstractInputProcessor;
+import be.ugent.mmlab.rml.input.processor.SourceProcessor;
+import be.ugent.mmlab.rml.model.TriplesMap;
+import be.ugent.mmlab.rml.model.dataset.RMLDataset;
+import be.ugent.mmlab.rml.performer.ParentSubjectsPerformer;
+import be.ugent.mmlab.rml.processor.RMLProcessor;
+import be.ugent.mmlab.rml.processor.RMLProcessorFactory;
+import be.ugent.mmlab.rml.processor.concrete.ConcreteRMLProcessorFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.openrdf.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * The subjects of a parent Triples Map, generated once and replayed 
+ * for every child of a Referencing Object Map without join conditions.
+ * If the parent logical source is bound to the child by parameters, 
+ * the nested Predicate Object Maps of the parents are generated as well.
+ *
+ * @author andimou
+ */
+public class ParentSubjects {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(ParentSubjects.class.getSimpleName());
+
+    //Approximate heap cost of a subject
+    private static final int SUBJECT_SIZE = 64;
+
+    private TriplesMap parentTriplesMap;
+    private JoinIndexRegistry registry;
+    private boolean nested;
+    private RMLProcessor processor;
+    private List<Resource> subjects = new ArrayList<Resource>();
+    private Set<Resource> distinct = new HashSet<Resource>();
+    private boolean iterationStatus = false;
+    private long memoryUsage = 0;
+
+    public ParentSubjects(TriplesMap parentTriplesMap) {
+        this(parentTriplesMap, new JoinIndexRegistry(), false);
+    }
+
+    /**
+     *
+     * @param parentTriplesMap
+     * @param registry
+     * @param nested true if the nested Predicate Object Maps are generated
+     */
+    public ParentSubjects(TriplesMap parentTriplesMap,
+            JoinIndexRegistry registry, boolean nested) {
+        this.parentTriplesMap = parentTriplesMap;
+        this.registry = registry;
+        this.nested = nested;
+    }
+
+    /**
+     * Iterates the parent logical source once and generates its subjects
+     *
+     * @param dataset
+     * @param exeTriplesMap
+     * @param processorParameters the parameters of the parent processor
+     * @param parameters the parameters of the parent logical source
+     */
+    public void build(RMLDataset dataset, String[] exeTriplesMap,
+            Map<String, String> processorParameters, Map<String, String> parameters) {
+        log.debug("Generating the subjects of " + parentTriplesMap.getName());
+        RMLProcessorFactory factory = new ConcreteRMLProcessorFactory();
+        processor = factory.create(
+                parentTriplesMap.getLogicalSource().getReferenceFormulation(),
+                processorParameters, parentTriplesMap);
+        if (processor == null) {
+            log.error("No processor for " + parentTriplesMap.getName());
+            return;
+        }
+        processor.setJoinIndexRegistry(registry);
+
+        SourceProcessor inputProcessor = new AbstractInputProcessor();
+        InputStream input = inputProcessor.getInputStream(
+                parentTriplesMap.getLogicalSource(), parameters);
+        if (input == null) {
+            log.debug("No input retrieved for " + parentTriplesMap.getName());
+            return;
+        }
+        processor.execute(dataset, parentTriplesMap,
+                new ParentSubjectsPerformer(processor, this),
+                input, exeTriplesMap, nested);
+        iterationStatus = processor.getIterationStatus();
+        try {
+            input.close();
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+        }
+        //Only the list is replayed
+        distinct = null;
+        log.debug(parentTriplesMap.getName() + " has " 
+                + subjects.size() + " distinct subjects.");
+    }
+
+    /**
+     *
+     * @param subject a subject of the parent Triples Map
+     */
+    public void add(Resource subject) {
+        if (distinct.add(subject)) {
+            subjects.add(subject);
+            memoryUsage += SUBJECT_SIZE + 2L * subject.stringValue().length();
+        }
+    }
+
+    public List<Resource> getSubjects() {
+        return subjects;
+    }
+
+    /**
+     *
+     * @return the iteration status of the parent processor
+     */
+    public boolean getIterationStatus() {
+        return iterationStatus;
+    }
+
+    /**
+     *
+     * @return the approximate number of bytes held by the subjects
+     */
+    public long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    public RMLProcessor getProcessor() {
+        return processor;
+    }
+
+    public TriplesMap getParentTriplesMap() {
+        return parentTriplesMap;
+    }
+}
@@ -0,0 +1,197 @@
+package be.ugent.mmlab.rml.join;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.BNodeImpl;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * A set of hash partitions spilled to disk. Each partition is a file
+ * of records which is written sequentially and read back as a whole.
+ *
+ * @author andimou
+ */
+public class PartitionFiles {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(PartitionFiles.class.getSimpleName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte NULL = 0;
+    private static final byte IRI = 1;
+    private static final byte BLANK_NODE = 2;
+    private static final byte LITERAL = 3;
+
+    private File directory;
+    private String prefix;
+    private DataOutputStream[] outputs;
+
+    public PartitionFiles(File directory, String prefix, int partitions) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.outputs = new DataOutputStream[partitions];
+    }
+
+    public int getPartitions() {
+        return outputs.length;
+    }
+
+    /**
+     *
+     * @param key
+     * @return the partition of a join key
+     */
+    public int partition(String key) {
+        return (key.hashCode() & 0x7fffffff) % outputs.length;
+    }
+
+    public DataOutputStream getOutput(int partition) throws IOException {
+        if (outputs[partition] == null) {
+            outputs[partition] = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(getFile(partition), true), BUFFER_SIZE));
+        }
+        return outputs[partition];
+    }
+
+    /**
+     *
+     * @param partition
+     * @return the partition's records or null if nothing was written to it
+     * @throws IOException
+     */
+    public DataInputStream getInput(int partition) throws IOException {
+        File file = getFile(partition);
+        if (!file.exists()) {
+            return null;
+        }
+        return new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), BUFFER_SIZE));
+    }
+
+    public void closeOutputs() {
+        for (int i = 0; i < outputs.length; i++) {
+            if (outputs[i] != null) {
+                try {
+                    outputs[i].close();
+                } catch (IOException ex) {
+                    log.error("IOException " + ex);
+                }
+                outputs[i] = null;
+            }
+        }
+    }
+
+    public void delete() {
+        closeOutputs();
+        for (int i = 0; i < outputs.length; i++) {
+            File file = getFile(i);
+            if (file.exists() && !file.delete()) {
+                log.debug("Partition " + file + " could not be deleted.");
+            }
+        }
+    }
+
+    private File getFile(int partition) {
+        return new File(directory, prefix + "-" + partition + ".bin");
+    }
+
+    public static void writeString(DataOutputStream output, String value)
+            throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    public static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    public static void writeResource(DataOutputStream output, Resource resource)
+            throws IOException {
+        if (resource == null) {
+            output.writeByte(NULL);
+        } else if (resource instanceof BNode) {
+            output.writeByte(BLANK_NODE);
+            writeString(output, resource.stringValue());
+        } else {
+            output.writeByte(IRI);
+            writeString(output, resource.stringValue());
+        }
+    }
+
+    public static Resource readResource(DataInputStream input) throws IOException {
+        return readResource(input, input.readByte());
+    }
+
+    private static Resource readResource(DataInputStream input, byte type)
+            throws IOException {
+        switch (type) {
+            case IRI:
+                return new URIImpl(readString(input));
+            case BLANK_NODE:
+                return new BNodeImpl(readString(input));
+            default:
+                return null;
+        }
+    }
+
+    public static void writeValue(DataOutputStream output, Value value)
+            throws IOException {
+        if (!(value instanceof Literal)) {
+            writeResource(output, (Resource) value);
+            return;
+        }
+        Literal literal = (Literal) value;
+        output.writeByte(LITERAL);
+        writeString(output, literal.getLabel());
+        String language = literal.getLanguage();
+        URI datatype = literal.getDatatype();
+        output.writeBoolean(language != null);
+        if (language != null) {
+            writeString(output, language);
+        }
+        output.writeBoolean(datatype != null);
+        if (datatype != null) {
+            writeString(output, datatype.stringValue());
+        }
+    }
+
+    public static Value readValue(DataInputStream input) throws IOException {
+        byte type = input.readByte();
+        if (type != LITERAL) {
+            return readResource(input, type);
+        }
+        String label = readString(input);
+        String language = input.readBoolean() ? readString(input) : null;
+        URI datatype = input.readBoolean() ? new URIImpl(readString(input)) : null;
+        if (language != null) {
+            return new LiteralImpl(label, language);
+        }
+        if (datatype != null) {
+            return new LiteralImpl(label, datatype);
+        }
+        return new LiteralImpl(label);
+    }
+}
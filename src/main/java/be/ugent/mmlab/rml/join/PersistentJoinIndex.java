@@ -0,0 +1,503 @@
+package be.ugent.mmlab.rml.join;
+
+import be.ugent.mmlab.rml.model.RDFTerm.GraphMap;
+import be.ugent.mmlab.rml.model.RDFTerm.TermType;
+import be.ugent.mmlab.rml.model.TriplesMap;
+import be.ugent.mmlab.rml.model.dataset.RMLDataset;
+import be.ugent.mmlab.rml.processor.RMLProcessor;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.openrdf.model.Resource;
+import org.openrdf.model.impl.URIImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Join index which is persisted to a memory-mapped file and reused by
+ * later runs. The file is named after the join, the parent Triples Map
+ * and its references, and after a checksum of the parent source, its
+ * size and modification time, the local mapping document and the
+ * description of the parent subjects, so it is rebuilt as soon as
+ * any of them changes. A conditional subject map is only described by
+ * the mapping document, so its index is not persisted without one.
+ *
+ * Once an index is rebuilt, the older files of the same join are deleted,
+ * as are the files of the directory which were not used for 30 days.
+ *
+ * Only the parent subjects are persisted, not the parent nodes. The index
+ * is therefore only used when the parent subjects are IRIs and every
+ * Triples Map is executed, so the parent Predicate Object Maps are
+ * generated by the parent Triples Map itself.
+ *
+ * The file consists of a header, an open addressing table of
+ * key fingerprints and record offsets, and the records: the key
+ * and the subjects of its parent nodes.
+ *
+ * @author andimou
+ */
+public class PersistentJoinIndex extends JoinIndex {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(PersistentJoinIndex.class.getSimpleName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x524d4c4a;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 12;
+    private static final String FILE_PREFIX = "rml-join-";
+    private static final String FILE_SUFFIX = ".idx";
+    //Age of the files of the directory which are deleted as unused
+    private static final long MAX_UNUSED_AGE = 30L * 24 * 60 * 60 * 1000;
+
+    private File file;
+    private MappedByteBuffer buffer = null;
+    private int slots = 0;
+    private RMLDataset dataset;
+    //Subjects of the index while it is built
+    private Map<String, List<String>> subjects =
+            new HashMap<String, List<String>>();
+
+    public PersistentJoinIndex(TriplesMap parentTriplesMap,
+            List<String> parentReferences, JoinIndexRegistry registry, File file) {
+        super(parentTriplesMap, parentReferences, registry);
+        this.file = file;
+        //Only the subjects are kept, the index is never spilled
+        setSpillable(false);
+    }
+
+    /**
+     * Maps the persisted index or, if there is none yet,
+     * builds the index and persists it
+     *
+     * @param dataset
+     * @param exeTriplesMap
+     * @param parameters
+     */
+    @Override
+    public void build(RMLDataset dataset, String[] exeTriplesMap,
+            Map<String, String> parameters) {
+        if (file.exists() && load()) {
+            log.info("Join index for " + getParentTriplesMap().getName()
+                    + " is mapped from " + file + ".");
+            //The modification time tells when the index was last used
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                log.debug("File " + file + " could not be touched.");
+            }
+            buildFilter();
+            removeStaleFiles();
+            return;
+        }
+        this.dataset = dataset;
+        super.build(dataset, exeTriplesMap, parameters);
+        this.dataset = null;
+        if (store()) {
+            log.info("Join index for " + getParentTriplesMap().getName()
+                    + " is persisted to " + file + ".");
+            if (load()) {
+                subjects = null;
+            }
+            removeStaleFiles();
+        }
+    }
+
+    /**
+     * Deletes the older files of the same join
+     * and the files unused for too long
+     */
+    private void removeStaleFiles() {
+        File[] files = file.getAbsoluteFile().getParentFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        String name = file.getName();
+        String join = name.substring(0, name.lastIndexOf('-') + 1);
+        long expiry = System.currentTimeMillis() - MAX_UNUSED_AGE;
+        for (File other : files) {
+            String otherName = other.getName();
+            if (!otherName.startsWith(FILE_PREFIX) || otherName.equals(name)) {
+                continue;
+            }
+            boolean replaced = otherName.startsWith(join)
+                    && otherName.endsWith(FILE_SUFFIX);
+            if (replaced || other.lastModified() < expiry) {
+                if (other.delete()) {
+                    log.info("Stale join index " + other + " is deleted.");
+                } else {
+                    log.debug("File " + other + " could not be deleted.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates the subject of the parent node right away
+     */
+    @Override
+    public void add(String key, Object node, long ordinal) {
+        RMLProcessor processor = getProcessor();
+        Resource subject = processor.processSubjectMap(processor, dataset,
+                getParentTriplesMap(), getParentTriplesMap().getSubjectMap(),
+                node, null);
+        if (subject == null) {
+            return;
+        }
+        List<String> bucket = subjects.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<String>(1);
+            subjects.put(key, bucket);
+        }
+        bucket.add(subject.stringValue());
+    }
+
+    @Override
+    public List<Entry> probe(String key) {
+        List<String> values;
+        if (buffer != null) {
+            values = read(key);
+        } else {
+            values = subjects.get(key);
+        }
+        if (values == null) {
+            recordFalsePositive();
+            return Collections.emptyList();
+        }
+        List<Entry> entries = new ArrayList<Entry>(values.size());
+        for (String value : values) {
+            entries.add(new Entry(new URIImpl(value)));
+        }
+        return entries;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        boolean found;
+        if (buffer != null) {
+            found = read(key) != null;
+        } else {
+            found = subjects.containsKey(key);
+        }
+        if (!found) {
+            recordFalsePositive();
+        }
+        return found;
+    }
+
+    /**
+     * The filter of a mapped index is built from its table of fingerprints
+     */
+    @Override
+    protected void buildFilter() {
+        BloomFilter filter = createFilter(getSize());
+        if (filter != null && buffer != null) {
+            for (int slot = 0; slot < slots; slot++) {
+                int position = HEADER_SIZE + slot * SLOT_SIZE;
+                if (buffer.getInt(position + 8) != 0) {
+                    filter.add(buffer.getLong(position));
+                }
+            }
+        } else if (filter != null) {
+            for (String key : subjects.keySet()) {
+                filter.add(fingerprint(key));
+            }
+        }
+        setFilter(filter);
+    }
+
+    @Override
+    public int getSize() {
+        return (buffer != null) ? buffer.getInt(12) : subjects.size();
+    }
+
+    private boolean load() {
+        try {
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = input.getChannel();
+                if (channel.size() < HEADER_SIZE
+                        || channel.size() > Integer.MAX_VALUE) {
+                    log.error("Join index " + file + " is invalid.");
+                    return false;
+                }
+                MappedByteBuffer mapped = channel.map(
+                        FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                    log.error("Join index " + file + " has an unknown format.");
+                    return false;
+                }
+                slots = mapped.getInt(8);
+                buffer = mapped;
+                return true;
+            } finally {
+                //The mapping stays valid once the file is closed
+                input.close();
+            }
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+            return false;
+        }
+    }
+
+    private boolean store() {
+        int keys = subjects.size();
+        int tableSlots = Integer.highestOneBit(Math.max(keys * 2, 2) - 1) << 1;
+        long[] fingerprints = new long[tableSlots];
+        int[] offsets = new int[tableSlots];
+        long dataStart = HEADER_SIZE + (long) tableSlots * SLOT_SIZE;
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            RandomAccessFile output = new RandomAccessFile(temporary, "rw");
+            try {
+                output.setLength(0);
+                output.seek(dataStart);
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(output.getChannel()), 64 * 1024));
+                for (Map.Entry<String, List<String>> bucket : subjects.entrySet()) {
+                    long offset = dataStart + data.size();
+                    if (offset > Integer.MAX_VALUE || data.size() < 0) {
+                        log.error("Join index for " + getParentTriplesMap().getName()
+                                + " is too large to be persisted.");
+                        return false;
+                    }
+                    long fingerprint = fingerprint(bucket.getKey());
+                    int slot = (int) fingerprint & (tableSlots - 1);
+                    while (offsets[slot] != 0) {
+                        slot = (slot + 1) & (tableSlots - 1);
+                    }
+                    fingerprints[slot] = fingerprint;
+                    offsets[slot] = (int) offset;
+                    writeBytes(data, bucket.getKey().getBytes(UTF_8));
+                    data.writeInt(bucket.getValue().size());
+                    for (String subject : bucket.getValue()) {
+                        writeBytes(data, subject.getBytes(UTF_8));
+                    }
+                }
+                data.flush();
+
+                output.seek(0);
+                DataOutputStream table = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(output.getChannel()), 64 * 1024));
+                table.writeInt(MAGIC);
+                table.writeInt(VERSION);
+                table.writeInt(tableSlots);
+                table.writeInt(keys);
+                for (int i = 0; i < tableSlots; i++) {
+                    table.writeLong(fingerprints[i]);
+                    table.writeInt(offsets[i]);
+                }
+                table.flush();
+            } finally {
+                output.close();
+            }
+            if ((file.exists() && !file.delete()) || !temporary.renameTo(file)) {
+                log.error("Join index " + file + " could not be replaced.");
+                return false;
+            }
+            return true;
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+            return false;
+        } finally {
+            if (temporary.exists() && !temporary.delete()) {
+                log.debug("File " + temporary + " could not be deleted.");
+            }
+        }
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes)
+            throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    //Absolute reads only, so the mapped index is probed without locks
+    private List<String> read(String key) {
+        byte[] bytes = key.getBytes(UTF_8);
+        long fingerprint = fingerprint(key);
+        int slot = (int) fingerprint & (slots - 1);
+        while (true) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            int offset = buffer.getInt(position + 8);
+            if (offset == 0) {
+                return null;
+            }
+            if (buffer.getLong(position) == fingerprint && matches(offset, bytes)) {
+                int cursor = offset + 4 + bytes.length;
+                int count = buffer.getInt(cursor);
+                cursor += 4;
+                List<String> values = new ArrayList<String>(count);
+                for (int i = 0; i < count; i++) {
+                    int length = buffer.getInt(cursor);
+                    byte[] value = new byte[length];
+                    for (int j = 0; j < length; j++) {
+                        value[j] = buffer.get(cursor + 4 + j);
+                    }
+                    values.add(new String(value, UTF_8));
+                    cursor += 4 + length;
+                }
+                return values;
+            }
+            slot = (slot + 1) & (slots - 1);
+        }
+    }
+
+    private boolean matches(int offset, byte[] key) {
+        if (buffer.getInt(offset) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + 4 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param parentTriplesMap
+     * @param exeTriplesMap
+     * @return true if the joins of the parent Triples Map
+     * only require the subjects of its nodes
+     */
+    public static boolean isPersistable(TriplesMap parentTriplesMap,
+            String[] exeTriplesMap) {
+        return exeTriplesMap == null && parentTriplesMap.getSubjectMap()
+                .getTermType().equals(TermType.IRI);
+    }
+
+    /**
+     *
+     * @param directory
+     * @param parentTriplesMap
+     * @param parentReferences
+     * @param mappingDocument the local mapping document or null
+     * @return the file of the persisted index or null if the parent
+     * source is not a local file or its subjects can not be described
+     */
+    public static File getFile(File directory, TriplesMap parentTriplesMap,
+            List<String> parentReferences, File mappingDocument) {
+        File source = getSourceFile(parentTriplesMap);
+        if (source == null) {
+            return null;
+        }
+        //The conditions of the subjects are only known from the mapping document
+        if (mappingDocument == null && parentTriplesMap.getSubjectMap().getClass()
+                .getSimpleName().equals("StdConditionSubjectMap")) {
+            return null;
+        }
+        try {
+            MessageDigest join = MessageDigest.getInstance("SHA-1");
+            join.update((parentTriplesMap.getName() + '\n' + source.getAbsolutePath()
+                    + '\n' + parentReferences).getBytes(UTF_8));
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            update(digest, source);
+            if (mappingDocument != null) {
+                update(digest, mappingDocument);
+            }
+            digest.update(getMappingDescription(
+                    parentTriplesMap, parentReferences).getBytes(UTF_8));
+            StringBuilder name = new StringBuilder(FILE_PREFIX);
+            name.append(toHex(join.digest()).substring(0, 16)).append('-')
+                    .append(toHex(digest.digest())).append(FILE_SUFFIX);
+            return new File(directory, name.toString());
+        } catch (NoSuchAlgorithmException ex) {
+            log.error("NoSuchAlgorithmException " + ex);
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+        }
+        return null;
+    }
+
+    //The size and modification time, then the content of the file
+    private static void update(MessageDigest digest, File file) throws IOException {
+        digest.update((file.length() + "\n" + file.lastModified() + "\n")
+                .getBytes(UTF_8));
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] chunk = new byte[64 * 1024];
+            int read;
+            while ((read = input.read(chunk)) > 0) {
+                digest.update(chunk, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static File getSourceFile(TriplesMap parentTriplesMap) {
+        String source = parentTriplesMap.getLogicalSource().getSource().getTemplate();
+        if (source == null) {
+            return null;
+        }
+        File file = new File(source);
+        if (file.isFile()) {
+            return file;
+        }
+        URL resource = PersistentJoinIndex.class.getResource(source);
+        if (resource != null && resource.getProtocol().equals("file")) {
+            file = new File(resource.getFile());
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    //Everything of the parent Triples Map the persisted index depends on
+    private static String getMappingDescription(TriplesMap parentTriplesMap,
+            List<String> parentReferences) {
+        StringBuilder description = new StringBuilder();
+        description.append(VERSION).append('\n')
+                .append(parentTriplesMap.getName()).append('\n')
+                .append(parentTriplesMap.getLogicalSource().getReferenceFormulation()).append('\n')
+                .append(parentTriplesMap.getLogicalSource().getIterator()).append('\n')
+                .append(parentTriplesMap.getSubjectMap().getStringTemplate()).append('\n')
+                .append(parentTriplesMap.getSubjectMap().getConstantValue()).append('\n')
+                .append(parentTriplesMap.getSubjectMap().getTermType()).append('\n')
+                .append(parentTriplesMap.getSubjectMap().getClass().getName()).append('\n')
+                .append(parentReferences).append('\n');
+        //Sorted, as the sets of the mapping have no order
+        Set<String> classIRIs = new TreeSet<String>();
+        for (org.openrdf.model.URI classIRI : parentTriplesMap.getSubjectMap().getClassIRIs()) {
+            classIRIs.add(classIRI.stringValue());
+        }
+        Set<String> graphMaps = new TreeSet<String>();
+        for (GraphMap graphMap : parentTriplesMap.getSubjectMap().getGraphMaps()) {
+            graphMaps.add(graphMap.getConstantValue() + " "
+                    + graphMap.getStringTemplate());
+        }
+        description.append(classIRIs).append('\n').append(graphMaps);
+        return description.toString();
+    }
+}
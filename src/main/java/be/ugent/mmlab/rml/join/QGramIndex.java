@@ -0,0 +1,112 @@
+package be.ugent.mmlab.rml.join;
+
+import info.debatty.java.stringsimilarity.Jaccard;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * RML Processor
+ *
+ * Inverted lists of q-grams for Jaccard joins. Two values within the
+ * maximum distance share at least a minimum number of q-grams, so only
+ * the values counted often enough in the lists of the child's q-grams
+ * are candidates.
+ *
+ * @author andimou
+ */
+public class QGramIndex implements SimilarityIndex {
+
+    //Approximate heap cost of a key and its list, besides the key's content
+    private static final int LIST_OVERHEAD = 96;
+    //Approximate heap cost of a boxed id in a list
+    private static final int ID_SIZE = 20;
+
+    private Jaccard jaccard;
+    private double minSimilarity;
+    private Map<String, List<Integer>> lists = new HashMap<String, List<Integer>>();
+    //Values without q-grams only match themselves
+    private Map<String, List<Integer>> values = new HashMap<String, List<Integer>>();
+    private int size = 0;
+    private long memoryUsage = 0;
+
+    /**
+     *
+     * @param jaccard the metric of the join
+     * @param maxDistance the maximum Jaccard distance of a match
+     */
+    public QGramIndex(Jaccard jaccard, double maxDistance) {
+        this.jaccard = jaccard;
+        this.minSimilarity = 1 - maxDistance;
+    }
+
+    @Override
+    public void add(String value, int id) {
+        size = Math.max(size, id + 1);
+        append(values, value, id);
+        for (String qgram : jaccard.getProfile(value).keySet()) {
+            append(lists, qgram, id);
+        }
+    }
+
+    @Override
+    public Collection<Integer> candidates(String value) {
+        List<Integer> candidates = new ArrayList<Integer>();
+        if (minSimilarity <= 0) {
+            //Every value is within the distance
+            for (int id = 0; id < size; id++) {
+                candidates.add(id);
+            }
+            return candidates;
+        }
+
+        Set<String> qgrams = jaccard.getProfile(value).keySet();
+        //J(a, b) >= s implies |a & b| >= s * |a|
+        int minOverlap = Math.max(1,
+                (int) Math.ceil(minSimilarity * qgrams.size() - 1e-9));
+        Map<Integer, Integer> overlaps = new HashMap<Integer, Integer>();
+        for (String qgram : qgrams) {
+            List<Integer> list = lists.get(qgram);
+            if (list == null) {
+                continue;
+            }
+            for (Integer id : list) {
+                Integer overlap = overlaps.get(id);
+                overlaps.put(id, overlap == null ? 1 : overlap + 1);
+            }
+        }
+        for (Map.Entry<Integer, Integer> overlap : overlaps.entrySet()) {
+            if (overlap.getValue() >= minOverlap) {
+                candidates.add(overlap.getKey());
+            }
+        }
+        List<Integer> equal = values.get(value);
+        if (equal != null) {
+            for (Integer id : equal) {
+                if (!overlaps.containsKey(id) || overlaps.get(id) < minOverlap) {
+                    candidates.add(id);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    private void append(Map<String, List<Integer>> map, String key, int id) {
+        List<Integer> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Integer>(1);
+            map.put(key, list);
+            memoryUsage += LIST_OVERHEAD + 2L * key.length();
+        }
+        list.add(id);
+        memoryUsage += ID_SIZE;
+    }
+}
@@ -0,0 +1,35 @@
+package be.ugent.mmlab.rml.join;
+
+import java.util.Collection;
+
+/**
+ * RML Processor
+ *
+ * Blocking index of the values of a metric join. It returns the candidates
+ * which may be within the distance of a value, the candidates are then
+ * verified with the metric itself.
+ *
+ * @author andimou
+ */
+public interface SimilarityIndex {
+
+    /**
+     *
+     * @param value a parent value
+     * @param id the position of the parent entry
+     */
+    public void add(String value, int id);
+
+    /**
+     *
+     * @param value a child value
+     * @return the positions of the parent entries which may match the value
+     */
+    public Collection<Integer> candidates(String value);
+
+    /**
+     *
+     * @return the approximate number of bytes held by the index
+     */
+    public long getMemoryUsage();
+}
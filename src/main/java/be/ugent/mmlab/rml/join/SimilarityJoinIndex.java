@@ -0,0 +1,144 @@
+package be.ugent.mmlab.rml.join;
+
+import be.ugent.mmlab.rml.model.TriplesMap;
+import info.debatty.java.stringsimilarity.Jaccard;
+import info.debatty.java.stringsimilarity.Levenshtein;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Join index of a join with a crml metric. The parent values of the
+ * metric's join condition are kept in a blocking index, q-gram inverted
+ * lists for Jaccard and a BK-tree for Levenshtein. A child is only
+ * compared with the candidates of the blocking index, on every join
+ * condition, instead of with every parent node.
+ *
+ * @author andimou
+ */
+public class SimilarityJoinIndex extends JoinIndex {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(SimilarityJoinIndex.class.getSimpleName());
+
+    public static final String JACCARD = "http://semweb.mmlab.be/ns/crml#Jaccard";
+    public static final String LEVENSHTEIN = "http://semweb.mmlab.be/ns/crml#Levenstein";
+
+    private String metric;
+    //Position of the metric's join condition in the composite keys
+    private int position;
+    private double maxDistance;
+    private Jaccard jaccard = new Jaccard();
+    private Levenshtein levenshtein = new Levenshtein();
+    private SimilarityIndex index;
+    private List<Entry> entries = new ArrayList<Entry>();
+    private List<List<String>> values = new ArrayList<List<String>>();
+    //Approximate number of bytes held by the entries and their values
+    private long entriesSize = 0;
+
+    /**
+     *
+     * @param parentTriplesMap
+     * @param parentReferences
+     * @param registry
+     * @param metric the crml metric of the join
+     * @param position the position of the metric's join condition
+     */
+    public SimilarityJoinIndex(TriplesMap parentTriplesMap,
+            List<String> parentReferences, JoinIndexRegistry registry,
+            String metric, int position) {
+        super(parentTriplesMap, parentReferences, registry);
+        this.metric = metric;
+        this.position = position;
+        //Each metric has a distance of its own: a ratio or a number of edits
+        if (JACCARD.equals(metric)) {
+            this.maxDistance = registry.getConfiguration().getMaxJaccardDistance();
+            index = new QGramIndex(jaccard, maxDistance);
+        } else {
+            this.maxDistance = registry.getConfiguration().getMaxLevenshteinDistance();
+            index = new BKTree(levenshtein, maxDistance);
+        }
+    }
+
+    /**
+     * The parent nodes are kept in memory, a similarity index is not spilled
+     */
+    @Override
+    public void add(String key, Object node, long ordinal) {
+        List<String> parentValues = split(key);
+        index.add(parentValues.get(position), entries.size());
+        entries.add(new Entry(node, ordinal));
+        values.add(parentValues);
+        entriesSize += ENTRY_OVERHEAD + 2L * key.length() + estimateSize(node);
+    }
+
+    /**
+     *
+     * @param key the composite value of the child references
+     * @return the parent entries within the maximum distance
+     * on every join condition
+     */
+    @Override
+    public List<Entry> probe(String key) {
+        List<String> childValues = split(key);
+        List<Entry> matches = new ArrayList<Entry>();
+        for (Integer id : index.candidates(childValues.get(position))) {
+            if (verify(childValues, values.get(id))) {
+                matches.add(entries.get(id));
+            }
+        }
+        log.debug(matches.size() + " parent nodes are within the distance.");
+        return matches;
+    }
+
+    /**
+     *
+     * @return the approximate number of bytes held by the parent entries
+     * and the blocking index
+     */
+    @Override
+    public long getMemoryUsage() {
+        return entriesSize + index.getMemoryUsage();
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return !probe(key).isEmpty();
+    }
+
+    /**
+     * Similar keys differ, so the keys of a similarity index are not filtered
+     */
+    @Override
+    protected void buildFilter() {
+        setFilter(null);
+    }
+
+    private boolean verify(List<String> childValues, List<String> parentValues) {
+        if (childValues.size() != parentValues.size()) {
+            return false;
+        }
+        for (int i = 0; i < childValues.size(); i++) {
+            //Values without q-grams have no Jaccard distance
+            if (!(distance(childValues.get(i), parentValues.get(i)) <= maxDistance)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double distance(String child, String parent) {
+        if (JACCARD.equals(metric)) {
+            return jaccard.distance(child, parent);
+        }
+        return levenshtein.distance(child, parent);
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+}
@@ -0,0 +1,133 @@
+package be.ugent.mmlab.rml.join;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Least recently used cache of what was generated from parameterized
+ * logical sources, keyed by the source and its resolved parameters.
+ * The least recently used values are evicted when the cache holds
+ * too many values or too many bytes.
+ *
+ * @author andimou
+ */
+public class SourceCache<V> {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(SourceCache.class.getSimpleName());
+
+    private int maxEntries;
+    private long maxBytes;
+    private long bytes = 0;
+    private LinkedHashMap<String, Weighted<V>> values =
+            new LinkedHashMap<String, Weighted<V>>(16, 0.75f, true);
+
+    //Statistics
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     *
+     * @param maxEntries the maximum number of cached values
+     * @param maxBytes the maximum approximate size of the cached values
+     */
+    public SourceCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     *
+     * @param key
+     * @return the cached value or null
+     */
+    public V get(String key) {
+        Weighted<V> value = values.get(key);
+        if (value == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return value.value;
+    }
+
+    /**
+     *
+     * @param key
+     * @param value
+     * @param size the approximate size of the value in bytes
+     */
+    public void put(String key, V value, long size) {
+        if (size > maxBytes || maxEntries <= 0) {
+            log.debug("The value of " + key + " is too large to be cached.");
+            return;
+        }
+        Weighted<V> previous = values.put(key, new Weighted<V>(value, size));
+        if (previous != null) {
+            bytes -= previous.size;
+        }
+        bytes += size;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Weighted<V>>> iterator =
+                values.entrySet().iterator();
+        while ((values.size() > maxEntries || bytes > maxBytes)
+                && iterator.hasNext()) {
+            Weighted<V> eldest = iterator.next().getValue();
+            iterator.remove();
+            bytes -= eldest.size;
+            evictions++;
+        }
+    }
+
+    public void clear() {
+        values.clear();
+        bytes = 0;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public double getHitRatio() {
+        if (hits + misses == 0) {
+            return 0;
+        }
+        return (double) hits / (hits + misses);
+    }
+
+    private static class Weighted<V> {
+        private V value;
+        private long size;
+
+        Weighted(V value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
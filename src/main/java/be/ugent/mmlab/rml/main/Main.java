@@ -1,7 +1,6 @@
 package be.ugent.mmlab.rml.main;
 
 import be.ugent.mmlab.rml.config.RMLConfiguration;
-import be.ugent.mmlab.rml.core.RMLEngine;
 import be.ugent.mmlab.rml.core.StdRMLEngine;
 import be.ugent.mmlab.rml.core.StdMetadataRMLEngine;
 import be.ugent.mmlab.rml.mapdochandler.extraction.std.StdRMLMappingFactory;
@@ -115,7 +114,13 @@ public class Main {
             if(metadataLevel.equals("None") && metadataFormat == null
                     && (metadataVocab == null || !metadataVocab.contains("co"))){
                 log.debug("Mapping without metadata...");
-                RMLEngine engine = new StdRMLEngine(outputFile);
+                StdRMLEngine engine = new StdRMLEngine(outputFile);
+                engine.setJoinConfiguration(
+                        RMLConfiguration.processJoinConfiguration(commandLine));
+                engine.setDatasetConfiguration(
+                        RMLConfiguration.processDatasetConfiguration(commandLine));
+                engine.setDeduplication(commandLine.hasOption("dd"));
+                engine.setOffHeapDeduplication(commandLine.hasOption("do"));
                 engine.run(mapping, outputFile, outputFormat, 
                         graphName, parameters, exeTriplesMap,
                         null, null, null);
@@ -123,6 +128,10 @@ public class Main {
             else {
                 log.debug("Mapping with metadata...");
                 StdMetadataRMLEngine engine = new StdMetadataRMLEngine(outputFile);
+                engine.setJoinConfiguration(
+                        RMLConfiguration.processJoinConfiguration(commandLine));
+                engine.setDeduplication(commandLine.hasOption("dd"));
+                engine.setOffHeapDeduplication(commandLine.hasOption("do"));
                 engine.run(mapping, outputFile, outputFormat, 
                         graphName, parameters, exeTriplesMap, 
                         metadataLevel, metadataFormat, metadataVocab);
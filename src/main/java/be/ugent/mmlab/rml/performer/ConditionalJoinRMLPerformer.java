@@ -19,7 +19,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.openrdf.model.Resource;
-import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.slf4j.Logger;
@@ -119,15 +118,11 @@ public class ConditionalJoinRMLPerformer extends NodeRMLPerformer{
                     object = processor.processSubjectMap(this.processor, dataset,
                             map, map.getSubjectMap(), node, exeTriplesMap);
                     if (subject != null && object != null) {
-                        List<Statement> triples =
-                                dataset.tuplePattern(subject, predicate, object);
-                        if (triples.size() == 0) {
-                            dataset.add(subject, predicate, object, graph);
-                            log.debug("Subject " + subject
-                                    + " Predicate " + predicate
-                                    + " Object " + object.toString());
-                            result = true;
-                        }
+                        dataset.add(subject, predicate, object, graph);
+                        log.debug("Subject " + subject
+                                + " Predicate " + predicate
+                                + " Object " + object.toString());
+                        result = true;
 
                         if (exeTriplesMap != null) {
                             RMLExecutionEngine executionEngine =
@@ -0,0 +1,67 @@
+package be.ugent.mmlab.rml.performer;
+
+import be.ugent.mmlab.rml.join.JoinIndex;
+import be.ugent.mmlab.rml.logicalsourcehandler.termmap.TermMapProcessor;
+import be.ugent.mmlab.rml.model.TriplesMap;
+import be.ugent.mmlab.rml.model.dataset.RMLDataset;
+import be.ugent.mmlab.rml.processor.RMLProcessor;
+import be.ugent.mmlab.rml.processor.concrete.ConcreteTermMapFactory;
+import be.ugent.mmlab.rml.processor.concrete.TermMapProcessorFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Performer to index the nodes of a parent Triples Map
+ * by the values of its join references
+ *
+ * @author andimou
+ */
+public class JoinIndexPerformer extends NodeRMLPerformer {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(JoinIndexPerformer.class.getSimpleName());
+
+    private TermMapProcessor termMapProcessor;
+    private JoinIndex index;
+    //Position of the current node in the parent iteration
+    private long ordinal = 0;
+
+    public JoinIndexPerformer(RMLProcessor processor, JoinIndex index) {
+        super(processor);
+        this.index = index;
+        TermMapProcessorFactory factory = new ConcreteTermMapFactory();
+        this.termMapProcessor = factory.create(index.getParentTriplesMap().
+                getLogicalSource().getReferenceFormulation(), processor);
+    }
+
+    /**
+     * Index the node by the first value of each parent reference
+     *
+     * @param node current object in parent iteration
+     * @param dataset
+     * @param map
+     */
+    @Override
+    public boolean perform(Object node, RMLDataset dataset, TriplesMap map,
+    String[] exeTriplesMap, Map<String, String> parameters, boolean pomExecution) {
+        long position = ordinal++;
+        List<String> key = new ArrayList<String>();
+        for (String reference : index.getParentReferences()) {
+            List<String> values =
+                    termMapProcessor.extractValueFromNode(node, reference);
+            if (values == null || values.isEmpty() || values.get(0) == null) {
+                log.debug("No value for " + reference + ", node is not indexed.");
+                return false;
+            }
+            key.add(values.get(0));
+        }
+        index.add(JoinIndex.key(key), node, position);
+        return true;
+    }
+}
@@ -3,12 +3,10 @@ package be.ugent.mmlab.rml.performer;
 import be.ugent.mmlab.rml. model.dataset.RMLDataset;
 import be.ugent.mmlab.rml.model.TriplesMap;
 import be.ugent.mmlab.rml.processor.RMLProcessor;
-import java.util.List;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.openrdf.model.Resource;
-import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 
@@ -52,9 +50,7 @@ public class JoinRMLPerformer extends NodeRMLPerformer{
             result = false;
         }       
         
-        List<Statement> triples =
-                dataset.tuplePattern(subject, predicate, object);
-        if (triples.size() == 0) {
+        if (object != null) {
             //add the join triple
             dataset.add(subject, predicate, object);
         }
@@ -0,0 +1,102 @@
+package be.ugent.mmlab.rml.performer;
+
+import be.ugent.mmlab.rml.join.JoinIndex;
+import be.ugent.mmlab.rml.join.PartitionFiles;
+import be.ugent.mmlab.rml.model.TriplesMap;
+import be.ugent.mmlab.rml.model.dataset.RMLDataset;
+import be.ugent.mmlab.rml.processor.RMLProcessor;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RML Processor
+ *
+ * Performer to generate the deferred joins of a spilled join index
+ * while the parent Triples Map is iterated once more.
+ * The matches are read range by range, following the parent iteration.
+ *
+ * @author andimou
+ */
+public class JoinReplayPerformer extends NodeRMLPerformer {
+
+    // Log
+    private static final Logger log =
+            LoggerFactory.getLogger(JoinReplayPerformer.class.getSimpleName());
+
+    private JoinIndex index;
+    private PartitionFiles matches;
+    private long rangeSize;
+    //Position of the current node in the parent iteration
+    private long ordinal = 0;
+    private int range = -1;
+    private Map<Long, List<JoinIndex.Child>> children =
+            new HashMap<Long, List<JoinIndex.Child>>();
+
+    public JoinReplayPerformer(RMLProcessor processor, JoinIndex index,
+            PartitionFiles matches, long rangeSize) {
+        super(processor);
+        this.index = index;
+        this.matches = matches;
+        this.rangeSize = rangeSize;
+    }
+
+    /**
+     * Generate the join triples of the node, if it was matched
+     *
+     * @param node current object in parent iteration
+     * @param dataset
+     * @param map
+     */
+    @Override
+    public boolean perform(Object node, RMLDataset dataset, TriplesMap map,
+    String[] exeTriplesMap, Map<String, String> parameters, boolean pomExecution) {
+        long position = ordinal++;
+        int current = (int) (position / rangeSize);
+        if (current != range) {
+            range = current;
+            loadRange(range);
+        }
+        List<JoinIndex.Child> matched = children.remove(position);
+        if (matched == null) {
+            return false;
+        }
+        index.replay(node, position, matched, dataset, exeTriplesMap);
+        return true;
+    }
+
+    private void loadRange(int range) {
+        children.clear();
+        try {
+            DataInputStream input = matches.getInput(range);
+            if (input == null) {
+                return;
+            }
+            try {
+                while (input.read() > 0) {
+                    long position = input.readLong();
+                    Resource subject = PartitionFiles.readResource(input);
+                    URI predicate = (URI) PartitionFiles.readResource(input);
+                    Resource graph = PartitionFiles.readResource(input);
+                    List<JoinIndex.Child> matched = children.get(position);
+                    if (matched == null) {
+                        matched = new ArrayList<JoinIndex.Child>(1);
+                        children.put(position, matched);
+                    }
+                    matched.add(new JoinIndex.Child(subject, predicate, graph));
+                }
+            } finally {
+                input.close();
+            }
+        } catch (IOException ex) {
+            log.error("IOException " + ex);
+        }
+    }
+}
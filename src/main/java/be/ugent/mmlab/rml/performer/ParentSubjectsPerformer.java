@@ -0,0 +1,53 @@
+package be.ugent.mmlab.rml.performer;
+
+import be.ugent.mmlab.rml.join.ParentSubjects;
+import be.ugent.mmlab.rml.model.TriplesMap;
+import be.ugent.mmlab.rml.model.dataset.RMLDataset;
+import be.ugent.mmlab.rml.processor.RMLProcessor;
+import java.util.Map;
+import org.openrdf.model.Resource;
+
+/**
+ * RML Processor
+ *
+ * Performer to collect the subjects of a parent Triples Map
+ * and, if required, to generate their Predicate Object Maps
+ *
+ * @author andimou
+ */
+public class ParentSubjectsPerformer extends NodeRMLPerformer {
+
+    private ParentSubjects parentSubjects;
+
+    public ParentSubjectsPerformer(
+            RMLProcessor processor, ParentSubjects parentSubjects) {
+        super(processor);
+        this.parentSubjects = parentSubjects;
+    }
+
+    /**
+     * Generate the subject of the node and keep it
+     *
+     * @param node current object in parent iteration
+     * @param dataset
+     * @param map
+     */
+    @Override
+    public boolean perform(Object node, RMLDataset dataset, TriplesMap map,
+    String[] exeTriplesMap, Map<String, String> parameters, boolean pomExecution) {
+        Resource subject = processor.processSubjectMap(this.processor,
+                dataset, map, map.getSubjectMap(), node, exeTriplesMap);
+        if (subject == null) {
+            return false;
+        }
+        parentSubjects.add(subject);
+
+        if (pomExecution) {
+            NestedRMLPerformer nestedPerformer =
+                    new NestedRMLPerformer(processor);
+            nestedPerformer.perform(
+                    node, dataset, map, exeTriplesMap, parameters, pomExecution);
+        }
+        return true;
+    }
+}
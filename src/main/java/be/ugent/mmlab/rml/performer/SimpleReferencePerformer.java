@@ -13,7 +13,6 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.openrdf.model.Resource;
-import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.impl.URIImpl;
 
@@ -55,14 +54,10 @@ public class SimpleReferencePerformer extends NodeRMLPerformer {
             Resource object = processor.processSubjectMap(this.processor,
                     dataset, map, map.getSubjectMap(), node, exeTriplesMap); 
             if (object != null) {
-                List<Statement> triples =
-                        dataset.tuplePattern(subject, predicate, object);
-                if(triples.size() == 0) {
-                    dataset.add(subject, predicate, object, graph);
-                    log.debug("Subject " + subject
-                            + " Predicate " + predicate
-                            + " Object " + object.toString());
-                }
+                dataset.add(subject, predicate, object, graph);
+                log.debug("Subject " + subject
+                        + " Predicate " + predicate
+                        + " Object " + object.toString());
                 
                 if ((map.getLogicalSource().getReferenceFormulation().toString().
                         equals("CSV"))
@@ -103,14 +98,10 @@ public class SimpleReferencePerformer extends NodeRMLPerformer {
                     termMapProcessor.processTermMap(map.getSubjectMap(), node);        
             for(String value : values){
                 Resource object = new URIImpl(value);
-                List<Statement> triples =
-                        dataset.tuplePattern(subject, predicate, object);
-                if (triples.size() == 0) {
-                    dataset.add(subject, predicate, object);
-                    log.debug("Subject " + subject
-                            + " Predicate " + predicate
-                            + " Object " + object.toString());
-                }
+                dataset.add(subject, predicate, object);
+                log.debug("Subject " + subject
+                        + " Predicate " + predicate
+                        + " Object " + object.toString());
             }   
         }    
         return result;
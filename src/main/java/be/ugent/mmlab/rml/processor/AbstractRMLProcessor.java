@@ -1,6 +1,7 @@
 package be.ugent.mmlab.rml.processor;
 
 import be.ugent.mmlab.rml.condition.model.Condition;
+import be.ugent.mmlab.rml.join.JoinIndexRegistry;
 import be.ugent.mmlab.rml.model.RDFTerm.GraphMap;
 import be.ugent.mmlab.rml.model.dataset.RMLDataset;
 import be.ugent.mmlab.rml.model.LogicalSource;
@@ -36,6 +37,8 @@ public abstract class AbstractRMLProcessor implements RMLProcessor {
     protected Map<String, String> parameters;
     protected MetadataGenerator metadataGenerator = null;
     protected boolean iterationStatus = false;
+    //Join indexes of the parent Triples Maps, built once per mapping run
+    protected JoinIndexRegistry joinIndexRegistry = new JoinIndexRegistry();
 
     /**
      * Gets the globally defined identifier-to-path map
@@ -154,14 +157,14 @@ public abstract class AbstractRMLProcessor implements RMLProcessor {
                         new PredicateMapProcessor(map, processor);
                 //Get the predicates
                 List<URI> predicates =
-                        preMapProcessor.processPredicateMap(predicateMap, node);
+                        preMapProcessor.processPredicateMap(dataset, predicateMap, node);
                 if(graphMap == null){
                     graphMap = predicateMap.getGraphMap();
                 }
 
                 if (predicates.size() > 0) {
                     URI predicate = predicates.get(0);
-                    ObjectMapProcessor predicateObjectProcessor;
+                    StdObjectMapProcessor predicateObjectProcessor;
                     if (dataset.getMetadataLevel().equals("triple")
                             || dataset.getMetadataVocab().contains("co")) {
                         predicateObjectProcessor =
@@ -171,6 +174,7 @@ public abstract class AbstractRMLProcessor implements RMLProcessor {
                         predicateObjectProcessor =
                                 new StdObjectMapProcessor(map, processor);
                     }
+                    predicateObjectProcessor.setJoinIndexRegistry(joinIndexRegistry);
 
                     //Process the joins first
                     Set<ReferencingObjectMap> referencingObjectMaps =
@@ -205,6 +209,16 @@ public abstract class AbstractRMLProcessor implements RMLProcessor {
         return this.metadataGenerator ;
     }
     
+    @Override
+    public JoinIndexRegistry getJoinIndexRegistry(){
+        return this.joinIndexRegistry;
+    }
+    
+    @Override
+    public void setJoinIndexRegistry(JoinIndexRegistry joinIndexRegistry){
+        this.joinIndexRegistry = joinIndexRegistry;
+    }
+    
     @Override
     public Integer getEnumerator(){
         return this.enumerator;
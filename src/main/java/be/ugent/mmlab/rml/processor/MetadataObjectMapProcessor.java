@@ -12,7 +12,6 @@ import be.ugent.mmlab.rml.model.std.StdConditionObjectMap;
 import java.util.List;
 import java.util.Set;
 import org.openrdf.model.Resource;
-import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.impl.URIImpl;
@@ -52,7 +51,7 @@ public class MetadataObjectMapProcessor extends StdObjectMapProcessor implements
         for (ObjectMap objectMap : objectMaps) {
             boolean flag = true;
             //Get the one or more objects returned by the object map
-            List<Value> objects = processObjectMap(objectMap, node);
+            List<Value> objects = processObjectMap(dataset, objectMap, node);
             
             if(objectMap.getClass().getSimpleName().equals("StdConditionObjectMap")){
                 log.debug("Conditional Object Map");
@@ -71,16 +70,12 @@ public class MetadataObjectMapProcessor extends StdObjectMapProcessor implements
                     if (object.stringValue() != null) {
                         Set<GraphMap> graphs = pom.getGraphMaps();
                         if (graphs.isEmpty() && subject != null) {
-                            List<Statement> triples = 
-                                    dataset.tuplePattern(subject, predicate, object);
-                            if(triples.isEmpty()){
-                                dataset.add(subject, predicate, object); 
-                                log.debug("Should log triple level metadata...");
-                                     
-                                    metadataGenerator.generateTripleMetaData(
-                                        dataset, pom.getOwnTriplesMap(), 
-                                        subject, predicate, object, null);
-                            }
+                            dataset.add(subject, predicate, object); 
+                            log.debug("Should log triple level metadata...");
+                                 
+                                metadataGenerator.generateTripleMetaData(
+                                    dataset, pom.getOwnTriplesMap(), 
+                                    subject, predicate, object, null);
                         } else {
                             for (GraphMap graph : graphs) {
                                 Resource graphResource = new URIImpl(
@@ -9,7 +9,6 @@ import be.ugent.mmlab.rml.model.dataset.RMLDataset;
 import java.util.List;
 import java.util.Set;
 import org.openrdf.model.Resource;
-import org.openrdf.model.Statement;
 import org.openrdf.model.impl.URIImpl;
 import org.openrdf.model.vocabulary.RDF;
 import org.slf4j.Logger;
@@ -56,25 +55,21 @@ public class MetadataSubjectMapProcessor extends StdSubjectMapProcessor implemen
         if (subject != null) {
             for (org.openrdf.model.URI classIRI : classIRIs) {
                 if (subjectMap.getGraphMaps().isEmpty()) {
-                    List<Statement> triples =
-                            dataset.tuplePattern(subject, RDF.TYPE, classIRI);
-                    if (triples.isEmpty()) {
-                        if(vocabs.contains("void") && 
-                                dataset.getMetadataLevel().equals("triplesmap") || 
-                                dataset.getMetadataLevel().equals("triple")){
-                            dataset.addToRepository(
-                                    map, subject, RDF.TYPE, classIRI);
-                        }
-                        else{
-                            log.debug("Adding to general repository...");
-                            dataset.add(subject, RDF.TYPE, classIRI);
-                        }
+                    if(vocabs.contains("void") && 
+                            dataset.getMetadataLevel().equals("triplesmap") || 
+                            dataset.getMetadataLevel().equals("triple")){
+                        dataset.addToRepository(
+                                map, subject, RDF.TYPE, classIRI);
+                    }
+                    else{
+                        log.debug("Adding to general repository...");
+                        dataset.add(subject, RDF.TYPE, classIRI);
+                    }
 
-                        if (dataset.getMetadataLevel().equals("triple")) {
-                            if (flag == true) {
-                                metadataGenerator.generateTripleMetaData(dataset,
-                                        map, subject, RDF.TYPE, classIRI, null);
-                            }
+                    if (dataset.getMetadataLevel().equals("triple")) {
+                        if (flag == true) {
+                            metadataGenerator.generateTripleMetaData(dataset,
+                                    map, subject, RDF.TYPE, classIRI, null);
                         }
                     }
                 } else {
@@ -1,9 +1,11 @@
 package be.ugent.mmlab.rml.processor;
 
 import be.ugent.mmlab.rml.condition.model.Condition;
+import be.ugent.mmlab.rml.dataset.TermDictionary;
 import be.ugent.mmlab.rml.logicalsourcehandler.termmap.TermMapProcessor;
 import be.ugent.mmlab.rml.model.RDFTerm.PredicateMap;
 import be.ugent.mmlab.rml.model.TriplesMap;
+import be.ugent.mmlab.rml.model.dataset.RMLDataset;
 import be.ugent.mmlab.rml.model.std.StdConditionPredicateMap;
 import be.ugent.mmlab.rml.processor.concrete.ConcreteTermMapFactory;
 import be.ugent.mmlab.rml.processor.concrete.TermMapProcessorFactory;
@@ -11,7 +13,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import org.openrdf.model.URI;
-import org.openrdf.model.impl.URIImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,12 +43,14 @@ public class PredicateMapProcessor {
     /**
      * process a predicate map
      *
+     * @param dataset the dataset of the run, which interns the predicates
      * @param predicateMap
      * @param node
      * @return the uri of the extracted predicate
      */
     
-    public List<URI> processPredicateMap(PredicateMap predicateMap, Object node) {
+    public List<URI> processPredicateMap(
+            RMLDataset dataset, PredicateMap predicateMap, Object node) {
         List<URI> uris = new ArrayList<>();
         boolean result = false;
         
@@ -68,12 +71,13 @@ public class PredicateMapProcessor {
             List<String> values =
                     this.termMapProcessor.processTermMap(predicateMap, node);
 
+            TermDictionary dictionary = TermDictionary.of(dataset);
             for (String value : values) {
                 //TODO: add better control
                 if (value.startsWith("www.")) {
                     value = "http://" + value;
                 }
-                uris.add(new URIImpl(value));
+                uris.add(dictionary.uri(value));
             }
         }
         //return the uri
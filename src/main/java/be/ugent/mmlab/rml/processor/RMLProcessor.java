@@ -1,5 +1,6 @@
 package be.ugent.mmlab.rml.processor;
 
+import be.ugent.mmlab.rml.join.JoinIndexRegistry;
 import be.ugent.mmlab.rml.metadata.MetadataGenerator;
 import be.ugent.mmlab.rml.model.RDFTerm.GraphMap;
 import be.ugent.mmlab.rml.model.dataset.RMLDataset;
@@ -78,4 +79,16 @@ public interface RMLProcessor {
      * @return
      */
     public boolean getIterationStatus();
+    
+    /**
+     *
+     * @return
+     */
+    public JoinIndexRegistry getJoinIndexRegistry();
+    
+    /**
+     *
+     * @param joinIndexRegistry the join indexes of the mapping run
+     */
+    public void setJoinIndexRegistry(JoinIndexRegistry joinIndexRegistry);
 }
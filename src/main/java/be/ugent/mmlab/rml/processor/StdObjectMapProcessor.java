@@ -3,9 +3,13 @@ package be.ugent.mmlab.rml.processor;
 import be.ugent.mmlab.rml.condition.model.BindingCondition;
 import be.ugent.mmlab.rml.condition.model.Condition;
 import be.ugent.mmlab.rml.condition.model.std.StdJoinConditionMetric;
+import be.ugent.mmlab.rml.dataset.TermDictionary;
 import be.ugent.mmlab.rml.model.std.ConditionReferencingObjectMap;
 import be.ugent.mmlab.rml.input.processor.AbstractInputProcessor;
 import be.ugent.mmlab.rml.input.processor.SourceProcessor;
+import be.ugent.mmlab.rml.join.JoinIndex;
+import be.ugent.mmlab.rml.join.JoinIndexRegistry;
+import be.ugent.mmlab.rml.join.ParentSubjects;
 import be.ugent.mmlab.rml.logicalsourcehandler.termmap.TermMapProcessor;
 import be.ugent.mmlab.rml.model.JoinCondition;
 import be.ugent.mmlab.rml.model.PredicateObjectMap;
@@ -19,7 +23,6 @@ import be.ugent.mmlab.rml.model.std.StdConditionObjectMap;
 import static be.ugent.mmlab.rml.model.RDFTerm.TermType.BLANK_NODE;
 
 import be.ugent.mmlab.rml.performer.ConditionalJoinRMLPerformer;
-import be.ugent.mmlab.rml.performer.JoinRMLPerformer;
 import be.ugent.mmlab.rml.performer.RMLPerformer;
 import be.ugent.mmlab.rml.performer.SimpleReferencePerformer;
 import be.ugent.mmlab.rml.processor.concrete.ConcreteRMLProcessorFactory;
@@ -36,7 +39,6 @@ import java.util.Map;
 import java.util.Set;
 
 import org.openrdf.model.Resource;
-import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.impl.BNodeImpl;
@@ -53,6 +55,8 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
     private static final Logger log = LoggerFactory.getLogger(StdObjectMapProcessor.class);
 
     protected TermMapProcessor termMapProcessor;
+    //Join indexes shared by the object map processors of the mapping run
+    protected JoinIndexRegistry joinIndexRegistry = new JoinIndexRegistry();
 
     public StdObjectMapProcessor(TriplesMap map) {
         TermMapProcessorFactory factory = new ConcreteTermMapFactory();
@@ -66,6 +70,10 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
                 map.getLogicalSource().getReferenceFormulation(), processor);
     }
 
+    public void setJoinIndexRegistry(JoinIndexRegistry joinIndexRegistry) {
+        this.joinIndexRegistry = joinIndexRegistry;
+    }
+
     @Override
     public void processPredicateObjectMap_ObjMap(
             RMLDataset dataset, Resource subject, URI predicate,
@@ -77,7 +85,7 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
                 continue;
             boolean flag = true;
             //Get the one or more objects returned by the object map
-            List<Value> objects = processObjectMap(objectMap, node);
+            List<Value> objects = processObjectMap(dataset, objectMap, node);
 
             if (objectMap.getClass().getSimpleName().equals("StdConditionObjectMap")) {
                 StdConditionObjectMap tmp = (StdConditionObjectMap) objectMap;
@@ -99,17 +107,8 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
 
                 for (Value object : objects) {
                     if (object.stringValue() != null) {
-                        if (graphMap == null && subject != null) {
-                            //TODO: This control is redundant, ignore it if needed
-                            List<Statement> triples =
-                                    dataset.tuplePattern(subject, predicate, object);
-                            if (triples.size() == 0) {
-                                dataset.add(subject, predicate, object, graphResource);
-                            }
-                        } else {
-                            dataset.add(subject, predicate, object, graphResource);
-                        }
-
+                        //The duplicates are suppressed by the dataset, on demand
+                        dataset.add(subject, predicate, object, graphResource);
                     }
                 }
             } else {
@@ -118,7 +117,8 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
         }
     }
 
-    public List<Value> processObjectMap(ObjectMap objectMap, Object node) {
+    public List<Value> processObjectMap(
+            RMLDataset dataset, ObjectMap objectMap, Object node) {
         List<Value> valueList = new ArrayList<>();
         //A Term map returns one or more values (in case expression matches more)
         if (objectMap != null && !objectMap.getTermType().equals(BLANK_NODE)) {
@@ -126,6 +126,11 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
             for (String value : values) {
                 valueList = this.termMapProcessor.applyTermType(value, valueList, objectMap);
             }
+            //The recurring values are shared by the nodes of the run
+            TermDictionary dictionary = TermDictionary.of(dataset);
+            for (int i = 0; i < valueList.size(); i++) {
+                valueList.set(i, dictionary.intern(valueList.get(i)));
+            }
         } else {
             valueList.add(new BNodeImpl(null));
         }
@@ -210,11 +215,8 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
 
             }*/
             //Create the processor based on the parent triples map to perform the join
-            RMLProcessorFactory factory = new ConcreteRMLProcessorFactory();
-            QLVocabulary.QLTerm referenceFormulation =
-                    parentTriplesMap.getLogicalSource().getReferenceFormulation();
-            RMLProcessor processor = factory.create(
-                    referenceFormulation, parameters, parentTriplesMap);
+            RMLProcessor processor = null;
+            Map<String, String> processorParameters = parameters;
             parameters = processBindingConditions(node, bindingConditions);
 
             if (condResult || parameters.size() > 0) {
@@ -224,21 +226,23 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
                     if (!parentTriplesMap.getLogicalSource().getSource().getTemplate().equals(
                             map.getLogicalSource().getSource().getTemplate())) {
 
-                        SourceProcessor inputProcessor = new AbstractInputProcessor();
-                        InputStream input = inputProcessor.getInputStream(
-                                parentTriplesMap.getLogicalSource(), parameters);
-
                         if (conditions == null) {
                             //different Logical Source AND no Join Conditions AND no Bind Conditions
 
-                            process_difLS_noJC_noBC(processor, dataset, subject,
-                                    predicate, parentTriplesMap, input, exeTriplesMap);
+                            ParentSubjects subjects = joinIndexRegistry.getParentSubjects(
+                                    dataset, parentTriplesMap, exeTriplesMap, 
+                                    processorParameters, parameters);
+                            process_difLS_noJC_noBC(subjects, dataset, subject, predicate);
                             //continue;
                         } else {
                             //different Logical Source AND no join Conditions AND Binding Conditions
+                            ParentSubjects subjects = joinIndexRegistry.getBoundSubjects(
+                                    dataset, parentTriplesMap, exeTriplesMap, 
+                                    processorParameters, parameters);
+                            processor = subjects.getProcessor();
 
-                            boolean result = process_difLS_noJC_withBC(processor, dataset, subject,
-                                    predicate, parentTriplesMap, input, exeTriplesMap);
+                            boolean result = process_difLS_noJC_withBC(
+                                    subjects, dataset, subject, predicate);
                             if (!result) {
                                 log.debug("Check for falllback object maps");
                                 Set<ReferencingObjectMap> fallbackReferencingObjectMaps =
@@ -246,8 +250,9 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
                                 log.debug("Found {} fallback Referencing Object Maps", fallbackReferencingObjectMaps);
                                 //Process the joins first
                                 if (fallbackReferencingObjectMaps.size() > 0) {
-                                    ObjectMapProcessor predicateObjectProcessor =
+                                    StdObjectMapProcessor predicateObjectProcessor =
                                             new StdObjectMapProcessor(map, processor);
+                                    predicateObjectProcessor.setJoinIndexRegistry(joinIndexRegistry);
                                     predicateObjectProcessor.processPredicateObjectMap_RefObjMap(
                                             dataset, subject, predicate, fallbackReferencingObjectMaps, node,
                                             map, parameters, exeTriplesMap, graphMap);
@@ -256,12 +261,27 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
                         }
                     } else {
                         //same Logical Source and no Conditions
+                        processor = createProcessor(parentTriplesMap, processorParameters);
 
                         process_sameLS_noJC(processor, dataset, node,
                                 map, subject, predicate, parentTriplesMap,
                                 parameters, exeTriplesMap, (Resource) graphMapValue);
                     }
+                } else if (JoinIndexRegistry.isIndexable(joinConditions)) {
+                    log.debug("Referencing Object Map with join conditions, probing the join index.");
+                    JoinIndex index = joinIndexRegistry.getJoinIndex(dataset, map,
+                            parentTriplesMap, joinConditions, exeTriplesMap, parameters);
+                    processor = index.getProcessor();
+                    boolean result = process_withJC_indexed(node, index, subject,
+                            predicate, dataset, joinConditions, exeTriplesMap,
+                            (Resource) graphMapValue);
+                    if (!result) {
+                        log.debug("Processing fallbacks...");
+                        processFallbackMaps(dataset, subject, predicate, map, processor,
+                                referencingObjectMap, node, parameters, exeTriplesMap);
+                    }
                 } else {
+                    processor = createProcessor(parentTriplesMap, processorParameters);
                     SourceProcessor inputProcessor = new AbstractInputProcessor();
                     InputStream input = inputProcessor.getInputStream(
                             parentTriplesMap.getLogicalSource(), parameters);
@@ -280,12 +300,26 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
                     }
                 }
             } else {
+                processor = createProcessor(parentTriplesMap, processorParameters);
                 processFallbackMaps(dataset, subject, predicate, map, processor,
                         referencingObjectMap, node, parameters, exeTriplesMap);
             }
         }
     }
 
+    private RMLProcessor createProcessor(
+            TriplesMap parentTriplesMap, Map<String, String> parameters) {
+        RMLProcessorFactory factory = new ConcreteRMLProcessorFactory();
+        QLVocabulary.QLTerm referenceFormulation =
+                parentTriplesMap.getLogicalSource().getReferenceFormulation();
+        RMLProcessor processor =
+                factory.create(referenceFormulation, parameters, parentTriplesMap);
+        if (processor != null) {
+            processor.setJoinIndexRegistry(joinIndexRegistry);
+        }
+        return processor;
+    }
+
     private void processFallbackMaps(RMLDataset dataset, Resource subject,
                                      URI predicate, TriplesMap map, RMLProcessor processor,
                                      ReferencingObjectMap referencingObjectMap, Object node,
@@ -298,8 +332,9 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
             log.debug("Found fallbacks {}", fallbackReferencingObjectMaps);
             //Process the joins first
             if (fallbackReferencingObjectMaps.size() > 0) {
-                ObjectMapProcessor predicateObjectProcessor =
+                StdObjectMapProcessor predicateObjectProcessor =
                         new StdObjectMapProcessor(map, processor);
+                predicateObjectProcessor.setJoinIndexRegistry(joinIndexRegistry);
                 predicateObjectProcessor.processPredicateObjectMap_RefObjMap(
                         dataset, subject, predicate, fallbackReferencingObjectMaps, node,
                         map, parameters, exeTriplesMap, fallbackGraphMap);
@@ -348,24 +383,24 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
     }
 
     //TODO: Check the following two
-    private void process_difLS_noJC_noBC(RMLProcessor processor,
-            RMLDataset dataset, Resource subject, URI predicate,
-            TriplesMap parentTriplesMap, InputStream input, String[] exeTriplesMap) {
+    private void process_difLS_noJC_noBC(ParentSubjects parentSubjects,
+            RMLDataset dataset, Resource subject, URI predicate) {
         log.debug("Referencing Object Map with Logical Source without join and binding conditions.");
-        RMLPerformer performer = new JoinRMLPerformer(processor, subject, predicate);
-        processor.execute(dataset, parentTriplesMap, performer, input,
-                exeTriplesMap, false);
+        if (subject == null) {
+            return;
+        }
+        for (Resource object : parentSubjects.getSubjects()) {
+            //add the join triple
+            dataset.add(subject, predicate, object);
+        }
     }
 
-    private boolean process_difLS_noJC_withBC(RMLProcessor processor,
-            RMLDataset dataset, Resource subject, URI predicate,
-            TriplesMap parentTriplesMap, InputStream input, String[] exeTriplesMap) {
+    private boolean process_difLS_noJC_withBC(ParentSubjects parentSubjects,
+            RMLDataset dataset, Resource subject, URI predicate) {
         log.debug("Referencing Object Map with Logical Source without join conditions but with bind conditions.");
-        RMLPerformer performer = new JoinRMLPerformer(processor, subject, predicate);
-        processor.execute(dataset, parentTriplesMap, performer, input,
-                exeTriplesMap, true);
+        process_difLS_noJC_noBC(parentSubjects, dataset, subject, predicate);
 
-        return processor.getIterationStatus();
+        return parentSubjects.getIterationStatus();
     }
 
     private void process_sameLS_noJC(RMLProcessor processor, RMLDataset dataset,
@@ -467,6 +502,89 @@ public class StdObjectMapProcessor implements ObjectMapProcessor {
         return true;
     }
 
+    /**
+     * Extracts the child values of each join condition
+     * and combines them into the join keys of the node
+     *
+     * @param node
+     * @param joinConditions sorted join conditions
+     * @param parentTriplesMap
+     * @return the join keys
+     */
+    private List<String> extractJoinKeys(Object node,
+            List<JoinCondition> joinConditions, TriplesMap parentTriplesMap) {
+        List<List<String>> values = new ArrayList<List<String>>();
+        for (JoinCondition joinCondition : joinConditions) {
+            String child = joinCondition.getChild();
+            List<String> childValues;
+            if (child.contains("{")) {
+                childValues = termMapProcessor.templateHandler(
+                        child, node, parentTriplesMap.getLogicalSource().getReferenceFormulation(), null);
+                log.debug("child template {}", childValues);
+            } else {
+                childValues = termMapProcessor.extractValueFromNode(node, child);
+            }
+            if (childValues == null) {
+                childValues = new ArrayList<String>();
+            }
+            values.add(childValues);
+        }
+        return JoinIndex.keys(values);
+    }
+
+    /**
+     * Joins the child node with the parent nodes of the join index
+     *
+     * @return false if the child node has join values but no parent matches
+     */
+    private boolean process_withJC_indexed(Object node, JoinIndex index,
+            Resource subject, URI predicate, RMLDataset dataset,
+            Set<JoinCondition> joinConditions, String[] exeTriplesMap,
+            Resource graph) {
+        List<String> keys = extractJoinKeys(node,
+                JoinIndex.sortJoinConditions(joinConditions),
+                index.getParentTriplesMap());
+        if (keys.isEmpty()) {
+            log.debug("No join values for the child node.");
+            return true;
+        }
+        //Children without parent skip the index altogether
+        List<String> candidates = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            if (index.mightContain(key)) {
+                candidates.add(key);
+            }
+        }
+        if (candidates.isEmpty()) {
+            log.debug("The child node has no parent node.");
+            return false;
+        }
+        keys = candidates;
+
+        boolean result = false;
+        if (index.isSpilled()) {
+            //The join is completed when the iteration finishes
+            for (String key : keys) {
+                if (subject != null && index.contains(key)) {
+                    index.defer(key, subject, predicate, graph);
+                    result = true;
+                }
+            }
+            return result;
+        }
+        for (String key : keys) {
+            for (JoinIndex.Entry entry : index.probe(key)) {
+                Resource object = index.resolve(entry, dataset, exeTriplesMap);
+                if (subject == null || object == null) {
+                    continue;
+                }
+                result = true;
+                dataset.add(subject, predicate, object, graph);
+            }
+        }
+        return result;
+    }
+
     private String handleRelevantExpression(
             TriplesMap map, TriplesMap parentTriplesMap) {
         int end = map.getLogicalSource().getIterator().length();
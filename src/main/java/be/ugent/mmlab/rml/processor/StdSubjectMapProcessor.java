@@ -1,6 +1,7 @@
 package be.ugent.mmlab.rml.processor;
 
 import be.ugent.mmlab.rml.condition.model.Condition;
+import be.ugent.mmlab.rml.dataset.TermDictionary;
 import be.ugent.mmlab.rml.logicalsourcehandler.termmap.TermMapProcessor;
 import static be.ugent.mmlab.rml.model.RDFTerm.TermType.BLANK_NODE;
 import static be.ugent.mmlab.rml.model.RDFTerm.TermType.IRI;
@@ -16,7 +17,6 @@ import java.util.Set;
 import org.apache.commons.lang.RandomStringUtils;
 import org.openrdf.model.Resource;
 import org.openrdf.model.impl.BNodeImpl;
-import org.openrdf.model.impl.URIImpl;
 import org.openrdf.model.vocabulary.RDF;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,7 +93,7 @@ public class StdSubjectMapProcessor implements SubjectMapProcessor {
                         }
                     }
                     try {
-                        subject = new URIImpl(value);
+                        subject = TermDictionary.of(dataset).uri(value);
                     } catch (Exception e) {
                         return null;
                     }
@@ -103,7 +103,7 @@ public class StdSubjectMapProcessor implements SubjectMapProcessor {
                             RandomStringUtils.randomAlphanumeric(10));
                     break;
                 default:
-                    subject = new URIImpl(value);
+                    subject = TermDictionary.of(dataset).uri(value);
             }
         }
         return subject;
@@ -134,14 +134,14 @@ public class StdSubjectMapProcessor implements SubjectMapProcessor {
                     //List<Statement> triples =
                     //        dataset.tuplePattern(subject, RDF.TYPE, classIRI);
                     //if (triples.size() == 0) {
-                        dataset.add(subject, RDF.TYPE, classIRI);
+                    dataset.add(subject, RDF.TYPE, classIRI);
                     //}
                 } else {
                     for (GraphMap graphMap : subjectMap.getGraphMaps()) {
                         if (graphMap.getConstantValue() != null) {
-                            dataset.add(
-                                    subject, RDF.TYPE, classIRI,
-                                    new URIImpl(graphMap.getConstantValue().toString()));
+                            Resource graph = TermDictionary.of(dataset).uri(
+                                    graphMap.getConstantValue().toString());
+                            dataset.add(subject, RDF.TYPE, classIRI, graph);
                         }
                     }
                 }
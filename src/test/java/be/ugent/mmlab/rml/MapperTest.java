@@ -1,19 +1,23 @@
 package be.ugent.mmlab.rml;
 
-import be.ugent.mmlab.rml.core.RMLEngine;
 import be.ugent.mmlab.rml.core.StdRMLEngine;
 import be.ugent.mmlab.rml.model.dataset.RMLDataset;
-import be.ugent.mmlab.rml.model.dataset.StdRMLDataset;
+import be.ugent.mmlab.rml.dataset.StdRMLDataset;
+import be.ugent.mmlab.rml.join.JoinConfiguration;
 import be.ugent.mmlab.rml.mapdochandler.extraction.std.StdRMLMappingFactory;
 import be.ugent.mmlab.rml.mapdochandler.retrieval.RMLDocRetrieval;
 import be.ugent.mmlab.rml.model.RMLMapping;
+import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import static junit.framework.TestCase.assertTrue;
 import junit.framework.TestSuite;
+import org.apache.commons.io.FileUtils;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.openrdf.repository.Repository;
@@ -311,6 +315,115 @@ public class MapperTest
                 assertMap(fileToRMLFile, null, triplesMap)));
     }
        
+    public void testExampleJoin() {
+        //The expected output is the one of the nested loop join
+        URL fileToRMLFile = getClass().getResource("/exampleJoin/exampleJoin.rml.ttl");
+        URL fileToOutputFile = getClass().getResource("/exampleJoin/exampleJoin.output.ttl");
+        assertTrue(desiredOutput(fileToOutputFile).isEqualTo(
+                assertMap(fileToRMLFile, null, null)));
+    }
+    
+    public void testExampleJoinSpilled() throws IOException {
+        URL fileToRMLFile = getClass().getResource("/exampleJoin/exampleJoin.rml.ttl");
+        URL fileToOutputFile = getClass().getResource("/exampleJoin/exampleJoin.output.ttl");
+        File directory = Files.createTempDirectory("rml-spill").toFile();
+        try {
+            //Every index outgrows a budget of a byte and is spilled
+            JoinConfiguration configuration = new JoinConfiguration();
+            configuration.setMemoryBudget(1);
+            configuration.setPartitions(4);
+            configuration.setSpillDirectory(directory);
+            assertTrue(desiredOutput(fileToOutputFile).isEqualTo(
+                    assertMap(fileToRMLFile, null, null, configuration, false)));
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+    
+    public void testExampleJoinMerge() {
+        URL fileToRMLFile = getClass().getResource("/exampleJoin/exampleJoin.rml.ttl");
+        URL fileToOutputFile = getClass().getResource("/exampleJoin/exampleJoin.output.ttl");
+        JoinConfiguration configuration = new JoinConfiguration();
+        configuration.setJoinStrategy(JoinConfiguration.MERGE);
+        assertTrue(desiredOutput(fileToOutputFile).isEqualTo(
+                assertMap(fileToRMLFile, null, null, configuration, false)));
+    }
+    
+    public void testExampleJoinMergeFallback() {
+        //Sorted numerically, the keys are out of order as strings
+        URL fileToRMLFile = getClass().getResource(
+                "/exampleJoin/exampleJoinNumeric.rml.ttl");
+        URL fileToOutputFile = getClass().getResource(
+                "/exampleJoin/exampleJoinNumeric.output.ttl");
+        JoinConfiguration configuration = new JoinConfiguration();
+        configuration.setJoinStrategy(JoinConfiguration.MERGE);
+        assertTrue(desiredOutput(fileToOutputFile).isEqualTo(
+                assertMap(fileToRMLFile, null, null, configuration, false)));
+    }
+    
+    public void testExampleJoinPersisted() throws IOException {
+        URL fileToOutputFile = getClass().getResource("/exampleJoin/exampleJoin.output.ttl");
+        URL fileToChangedOutputFile = getClass().getResource(
+                "/exampleJoin/exampleJoin_b.output.ttl");
+        File directory = Files.createTempDirectory("rml-index").toFile();
+        try {
+            //The parent source is copied, so that it can be changed
+            File source = new File(directory, "Country.csv");
+            FileUtils.copyFile(new File("src/test/resources/exampleJoin/Country.csv"), source);
+            String mapping = FileUtils.readFileToString(
+                    new File("src/test/resources/exampleJoin/exampleJoin.rml.ttl"), "UTF-8");
+            File mappingFile = new File(directory, "exampleJoin.rml.ttl");
+            FileUtils.writeStringToFile(mappingFile, mapping.replace(
+                    "src/test/resources/exampleJoin/Country.csv",
+                    source.getAbsolutePath()), "UTF-8");
+            File indexDirectory = new File(directory, "index");
+            assertTrue(indexDirectory.mkdir());
+            JoinConfiguration configuration = new JoinConfiguration();
+            configuration.setIndexDirectory(indexDirectory);
+            URL fileToRMLFile = mappingFile.toURI().toURL();
+
+            assertTrue(desiredOutput(fileToOutputFile).isEqualTo(
+                    assertMap(fileToRMLFile, null, null, configuration, false)));
+            String[] built = indexDirectory.list();
+            assertEquals(1, built.length);
+
+            //The index is reused
+            assertTrue(desiredOutput(fileToOutputFile).isEqualTo(
+                    assertMap(fileToRMLFile, null, null, configuration, false)));
+            assertEquals(built[0], indexDirectory.list()[0]);
+            assertEquals(1, indexDirectory.list().length);
+
+            //The index is rebuilt once the parent source changes
+            FileUtils.copyFile(new File(
+                    "src/test/resources/exampleJoin/Country_b.csv"), source);
+            assertTrue(desiredOutput(fileToChangedOutputFile).isEqualTo(
+                    assertMap(fileToRMLFile, null, null, configuration, false)));
+            String[] rebuilt = indexDirectory.list();
+            assertEquals(1, rebuilt.length);
+            assertFalse(built[0].equals(rebuilt[0]));
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+    
+    public void testExampleDeduplication() {
+        URL fileToRMLFile = getClass().getResource("/exampleJoin/exampleDedup.rml.ttl");
+        URL fileToOutputFile = getClass().getResource("/exampleJoin/exampleDedup.output.ttl");
+        RMLDataset output = assertMap(fileToRMLFile, null, null,
+                new JoinConfiguration(), true);
+        assertTrue(desiredOutput(fileToOutputFile).isEqualTo(output));
+        //The duplicates of the second DE row are never added
+        output.getSize();
+        assertEquals(0, ((be.ugent.mmlab.rml.dataset.RMLDataset) output)
+                .getStatistics().getDuplicates());
+        
+        output = assertMap(fileToRMLFile, null, null, new JoinConfiguration(), false);
+        assertTrue(desiredOutput(fileToOutputFile).isEqualTo(output));
+        output.getSize();
+        assertEquals(2, ((be.ugent.mmlab.rml.dataset.RMLDataset) output)
+                .getStatistics().getDuplicates());
+    }
+       
     private RMLDataset desiredOutput (URL outputURL){
         RMLDataset desiredOutput = new StdRMLDataset(false);
         desiredOutput.addFile(outputURL.getFile(), RDFFormat.TURTLE);
@@ -325,6 +438,13 @@ public class MapperTest
     
     private RMLDataset assertMap(URL mappingURL, 
             Map<String, String> parameters, String[] triplesMap) {
+        return assertMap(mappingURL, parameters, triplesMap, 
+                new JoinConfiguration(), false);
+    }
+    
+    private RMLDataset assertMap(URL mappingURL, 
+            Map<String, String> parameters, String[] triplesMap,
+            JoinConfiguration joinConfiguration, boolean deduplication) {
         RMLDataset dataset;
         try {
             StdRMLMappingFactory mappingFactory = new StdRMLMappingFactory();
@@ -339,7 +459,9 @@ public class MapperTest
             log.info("========================================");
             log.info("Extracting the RML Mapping Definitions..");
             log.info("========================================");
-            RMLEngine engine = new StdRMLEngine();
+            StdRMLEngine engine = new StdRMLEngine();
+            engine.setJoinConfiguration(joinConfiguration);
+            engine.setDeduplication(deduplication);
             RMLMapping mapping = mappingFactory.extractRMLMapping(repository);
             
             log.info("========================================");
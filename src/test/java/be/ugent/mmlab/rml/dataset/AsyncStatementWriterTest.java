@@ -0,0 +1,78 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Tests the hand over of the statements to the serializer thread
+ */
+public class AsyncStatementWriterTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    private final URI subject = vf.createURI("http://example.com/s");
+    private final URI predicate = vf.createURI("http://example.com/p");
+
+    public AsyncStatementWriterTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(AsyncStatementWriterTest.class);
+    }
+
+    public void testOrder() throws Exception {
+        //A small buffer, so that the mapping thread waits
+        List<Statement> written = new ArrayList<Statement>();
+        AsyncStatementWriter writer =
+                new AsyncStatementWriter(new StatementCollector(written), 3);
+        for (int i = 0; i < 20000; i++) {
+            writer.handleStatement(statement(i));
+        }
+        writer.close();
+        assertFalse(writer.isFailed());
+        assertEquals(20000, written.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(statement(i), written.get(i));
+        }
+    }
+
+    public void testFailure() throws Exception {
+        final List<Statement> written = new ArrayList<Statement>();
+        AsyncStatementWriter writer = new AsyncStatementWriter(new RDFHandlerBase() {
+            @Override
+            public void handleStatement(Statement st) throws RDFHandlerException {
+                if (written.size() == 10) {
+                    throw new RDFHandlerException("Disk full");
+                }
+                written.add(st);
+            }
+        }, 16);
+        for (int i = 0; i < 1000; i++) {
+            writer.handleStatement(statement(i));
+        }
+        try {
+            writer.close();
+            fail("The failure of the serializer is thrown");
+        } catch (RDFHandlerException ex) {
+            assertEquals("Disk full", ex.getCause().getMessage());
+        }
+        assertTrue(writer.isFailed());
+        assertEquals(10, written.size());
+    }
+
+    private Statement statement(int i) {
+        return vf.createStatement(subject, predicate, vf.createLiteral(i));
+    }
+}
@@ -0,0 +1,258 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+/**
+ * Reads back the output of the binary writer
+ */
+public class BinaryRDFWriterTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    public BinaryRDFWriterTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(BinaryRDFWriterTest.class);
+    }
+
+    public void testRoundTrip() throws Exception {
+        URI person = vf.createURI("http://example.com/person/1");
+        URI friend = vf.createURI("http://example.com/person/2");
+        URI knows = vf.createURI("http://example.com/knows");
+        URI name = vf.createURI("http://example.com/name");
+        Resource address = vf.createBNode("address1");
+        List<Statement> statements = Arrays.asList(
+                vf.createStatement(person, knows, friend),
+                vf.createStatement(friend, knows, person),
+                vf.createStatement(person, name, vf.createLiteral("Anna")),
+                vf.createStatement(person, name, vf.createLiteral("Anna", "en")),
+                vf.createStatement(person, name, vf.createLiteral("Annä \"A\"")),
+                vf.createStatement(friend, name, vf.createLiteral("12", XMLSchema.INTEGER)),
+                vf.createStatement(friend, vf.createURI("http://example.com/address"), address),
+                vf.createStatement(address, name, vf.createLiteral("")),
+                //A predicate which is an object too
+                vf.createStatement(knows, name, vf.createLiteral("knows")),
+                vf.createStatement(person, name, knows));
+        byte[] output = write(null, BinaryRDFWriter.DEFAULT_RUN_SIZE, statements);
+        assertEquals(new HashSet<Statement>(statements), read(output));
+    }
+
+    public void testDuplicatesAndGraphs() throws Exception {
+        URI subject = vf.createURI("http://example.com/s");
+        URI predicate = vf.createURI("http://example.com/p");
+        Value object = vf.createLiteral("o");
+        List<Statement> statements = Arrays.asList(
+                vf.createStatement(subject, predicate, object),
+                vf.createStatement(subject, predicate, object),
+                //The graph is dropped, the triple kept
+                vf.createStatement(subject, predicate, vf.createLiteral("g"),
+                vf.createURI("http://example.com/g")));
+        Set<Statement> triples = read(
+                write(null, BinaryRDFWriter.DEFAULT_RUN_SIZE, statements));
+        assertEquals(2, triples.size());
+        assertTrue(triples.contains(vf.createStatement(subject, predicate, object)));
+        assertTrue(triples.contains(
+                vf.createStatement(subject, predicate, vf.createLiteral("g"))));
+    }
+
+    public void testMultiPassMerge() throws Exception {
+        //A triple per run of terms and three per run of triples,
+        //more runs than are merged in one pass
+        List<Statement> statements = new ArrayList<Statement>();
+        for (int i = 0; i < 300; i++) {
+            statements.add(vf.createStatement(
+                    vf.createURI("http://example.com/s" + (i % 70)),
+                    vf.createURI("http://example.com/p" + (i % 3)),
+                    vf.createLiteral(i % 150)));
+        }
+        File directory = Files.createTempDirectory("binary-test").toFile();
+        try {
+            byte[] output = write(directory, 3, statements);
+            assertEquals(new HashSet<Statement>(statements), read(output));
+            //The runs are deleted
+            assertEquals(0, directory.list().length);
+        } finally {
+            directory.delete();
+        }
+    }
+
+    private byte[] write(File directory, int runSize, List<Statement> statements)
+            throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRDFWriter writer = new BinaryRDFWriter(out, directory, runSize);
+        writer.startRDF();
+        for (Statement st : statements) {
+            writer.handleStatement(st);
+        }
+        writer.endRDF();
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the header, the dictionary and the triples
+     */
+    private Set<Statement> read(byte[] bytes) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        byte[] magic = new byte[4];
+        input.readFully(magic);
+        assertEquals("$RMB", new String(magic, "US-ASCII"));
+        assertEquals(1, input.readByte());
+        long count = input.readLong();
+        long[] counts = new long[4];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = input.readLong();
+        }
+        List<List<String>> sections = new ArrayList<List<String>>();
+        for (int i = 0; i < counts.length; i++) {
+            sections.add(readSection(input));
+            assertEquals(counts[i], sections.get(i).size());
+        }
+        List<String> shared = sections.get(0);
+        List<String> predicateTerms = sections.get(3);
+
+        assertEquals(1, input.readByte());
+        long[] predicates = readSequence(input);
+        long[] predicateBits = readSequence(input);
+        long[] objects = readSequence(input);
+        long[] objectBits = readSequence(input);
+        assertEquals(-1, input.read());
+        assertEquals(count, objects.length);
+
+        //The subjects follow each other from 1
+        long[] subjects = new long[predicates.length];
+        long subject = 1;
+        for (int i = 0; i < predicates.length; i++) {
+            subjects[i] = subject;
+            if (predicateBits[i] == 1) {
+                subject++;
+            }
+        }
+        Set<Statement> statements = new HashSet<Statement>();
+        int pair = 0;
+        for (int i = 0; i < objects.length; i++) {
+            statements.add(vf.createStatement(
+                    (Resource) value(term(shared, sections.get(1), subjects[pair])),
+                    (URI) value(predicateTerms.get((int) predicates[pair] - 1)),
+                    value(term(shared, sections.get(2), objects[i]))));
+            if (objectBits[i] == 1) {
+                pair++;
+            }
+        }
+        assertEquals(predicates.length, pair);
+        assertEquals(count, statements.size());
+        return statements;
+    }
+
+    //The shared terms come first, the other ones after them
+    private String term(List<String> shared, List<String> others, long id) {
+        return (id <= shared.size()) ? shared.get((int) id - 1)
+                : others.get((int) (id - shared.size()) - 1);
+    }
+
+    private Value value(String term) {
+        if (term.startsWith("_:")) {
+            return vf.createBNode(term.substring(2));
+        }
+        if (!term.startsWith("\"")) {
+            return vf.createURI(term);
+        }
+        int end = term.lastIndexOf('"');
+        String label = term.substring(1, end);
+        String rest = term.substring(end + 1);
+        if (rest.startsWith("@")) {
+            return vf.createLiteral(label, rest.substring(1));
+        }
+        if (rest.startsWith("^^<")) {
+            return vf.createLiteral(label,
+                    vf.createURI(rest.substring(3, rest.length() - 1)));
+        }
+        return vf.createLiteral(label);
+    }
+
+    private List<String> readSection(DataInputStream input) throws IOException {
+        long count = input.readLong();
+        int blockSize = input.readInt();
+        long[] offsets = new long[(int) input.readLong()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = input.readLong();
+        }
+        byte[] data = new byte[(int) input.readLong()];
+        input.readFully(data);
+        ByteArrayInputStream block = new ByteArrayInputStream(data);
+        List<String> terms = new ArrayList<String>();
+        byte[] previous = new byte[0];
+        for (int i = 0; i < count; i++) {
+            int prefix = 0;
+            if (i % blockSize == 0) {
+                assertEquals(offsets[i / blockSize], data.length - block.available());
+            } else {
+                prefix = readVByte(block);
+            }
+            byte[] term = Arrays.copyOf(previous, prefix + readVByte(block));
+            block.read(term, prefix, term.length - prefix);
+            terms.add(new String(term, "UTF-8"));
+            previous = term;
+        }
+        assertEquals(0, block.available());
+        //The sections are sorted
+        List<String> sorted = new ArrayList<String>(terms);
+        Collections.sort(sorted);
+        assertEquals(sorted, terms);
+        return terms;
+    }
+
+    private int readVByte(ByteArrayInputStream input) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        while (((b = input.read()) & 0x80) != 0) {
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        }
+        return value | (b << shift);
+    }
+
+    private long[] readSequence(DataInputStream input) throws IOException {
+        int width = input.readByte();
+        long[] values = new long[(int) input.readLong()];
+        long[] words = new long[(int) input.readLong()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = input.readLong();
+        }
+        for (int i = 0; i < values.length; i++) {
+            long bit = (long) i * width;
+            int word = (int) (bit / 64);
+            int offset = (int) (bit % 64);
+            long value = words[word] >>> offset;
+            if (offset + width > 64) {
+                value |= words[word + 1] << (64 - offset);
+            }
+            values[i] = value & ((1L << width) - 1);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,70 @@
+package be.ugent.mmlab.rml.dataset;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+/**
+ * Tests the live counters of the datasets
+ */
+public class DatasetStatisticsTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    private final Resource subject = vf.createURI("http://example.com/s");
+    private final URI predicate = vf.createURI("http://example.com/p");
+    private final Resource graph = vf.createURI("http://example.com/g");
+
+    public DatasetStatisticsTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(DatasetStatisticsTest.class);
+    }
+
+    public void testCounters() {
+        DatasetStatistics statistics = new DatasetStatistics();
+        statistics.setTriplesMap("#Person");
+        statistics.recordStatement();
+        statistics.recordStatement(graph, null);
+        statistics.setTriplesMap(null);
+        statistics.recordStatement(graph);
+        assertEquals(4, statistics.getStatements());
+        assertEquals(Long.valueOf(2),
+                statistics.getGraphCounts().get(DatasetStatistics.DEFAULT_GRAPH));
+        assertEquals(Long.valueOf(2),
+                statistics.getGraphCounts().get(graph.stringValue()));
+        //The statements without Triples Map are not counted per Triples Map
+        assertEquals(1, statistics.getTriplesMapCounts().size());
+        assertEquals(Long.valueOf(3), statistics.getTriplesMapCounts().get("#Person"));
+
+        statistics.recordDuplicates(2);
+        statistics.setStatements(2);
+        assertEquals(2, statistics.getStatements());
+        assertEquals(2, statistics.getDuplicates());
+    }
+
+    public void testDataset() {
+        StdRMLDataset dataset = new StdRMLDataset(false);
+        dataset.getStatistics().setTriplesMap("#Person");
+        for (int i = 0; i < 3; i++) {
+            dataset.add(subject, predicate, vf.createLiteral(i));
+        }
+        dataset.add(subject, predicate, vf.createLiteral(0));
+        dataset.add(subject, predicate, vf.createLiteral(0), graph);
+        //The duplicates are known once reconciled with the store
+        assertEquals(5, dataset.getStatistics().getStatements());
+        assertEquals(4, dataset.getSize());
+        assertEquals(4, dataset.getStatistics().getStatements());
+        assertEquals(1, dataset.getStatistics().getDuplicates());
+        assertEquals(Long.valueOf(5),
+                dataset.getStatistics().getTriplesMapCounts().get("#Person"));
+        dataset.closeRepository();
+    }
+}
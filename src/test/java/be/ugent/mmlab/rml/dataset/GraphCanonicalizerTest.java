@@ -0,0 +1,144 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+/**
+ * Tests the comparison of graphs by their canonical form
+ */
+public class GraphCanonicalizerTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    private final URI predicate = vf.createURI("http://example.com/p");
+    private final URI name = vf.createURI("http://example.com/name");
+
+    //The Frucht graph: cubic, without symmetries,
+    //its blank nodes are not told apart by color refinement
+    private static final int[] FRUCHT = {-5, -2, -4, 2, 5, -2, 2, 5, -2, -5, 4, 2};
+
+    public GraphCanonicalizerTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(GraphCanonicalizerTest.class);
+    }
+
+    public void testLabelsAndOrder() {
+        //Addresses of a person, as a mapping generates them
+        List<Statement> graph = new ArrayList<Statement>();
+        URI person = vf.createURI("http://example.com/person");
+        for (int i = 0; i < 5; i++) {
+            BNode address = vf.createBNode("a" + i);
+            graph.add(vf.createStatement(person, predicate, address));
+            graph.add(vf.createStatement(address, name, vf.createLiteral("street")));
+        }
+        GraphCanonicalizer canonicalizer = canonicalize(graph);
+        GraphCanonicalizer other = canonicalize(relabel(graph, 5, 1));
+        assertTrue(canonicalizer.isIsomorphic(other));
+        assertEquals(canonicalizer.getHash(), other.getHash());
+        assertEquals(10, canonicalizer.getSize());
+    }
+
+    public void testRegularGraph() {
+        List<Statement> frucht = new ArrayList<Statement>();
+        for (int i = 0; i < FRUCHT.length; i++) {
+            edge(frucht, i, (i + 1) % FRUCHT.length);
+            int other = (i + FRUCHT[i] + FRUCHT.length) % FRUCHT.length;
+            if (i < other) {
+                edge(frucht, i, other);
+            }
+        }
+        GraphCanonicalizer canonicalizer = canonicalize(frucht);
+        for (long seed = 1; seed <= 5; seed++) {
+            GraphCanonicalizer other =
+                    canonicalize(relabel(frucht, FRUCHT.length, seed));
+            assertTrue("Relabeling " + seed, canonicalizer.isIsomorphic(other));
+        }
+        assertFalse(canonicalizer.isTruncated());
+    }
+
+    public void testSameColors() {
+        //A cycle of six blank nodes and two cycles of three
+        //have the same colors, but are not the same graph
+        List<Statement> hexagon = new ArrayList<Statement>();
+        List<Statement> triangles = new ArrayList<Statement>();
+        for (int i = 0; i < 6; i++) {
+            edge(hexagon, i, (i + 1) % 6);
+            edge(triangles, i, (i % 3 == 2) ? i - 2 : i + 1);
+        }
+        assertFalse(canonicalize(hexagon).isIsomorphic(canonicalize(triangles)));
+        assertTrue(canonicalize(hexagon).isIsomorphic(
+                canonicalize(relabel(hexagon, 6, 1))));
+    }
+
+    public void testDifferentGraphs() {
+        List<Statement> graph = new ArrayList<Statement>();
+        List<Statement> other = new ArrayList<Statement>();
+        BNode node = vf.createBNode("n");
+        graph.add(vf.createStatement(node, name, vf.createLiteral("a")));
+        other.add(vf.createStatement(node, name, vf.createLiteral("b")));
+        assertFalse(canonicalize(graph).isIsomorphic(canonicalize(other)));
+        //A duplicate statement is counted once
+        other.add(vf.createStatement(node, name, vf.createLiteral("b")));
+        assertEquals(1, canonicalize(other).getSize());
+        assertEquals(0, canonicalize(new ArrayList<Statement>()).getSize());
+    }
+
+    //Both directions, so that every blank node looks the same
+    private void edge(List<Statement> graph, int first, int second) {
+        graph.add(vf.createStatement(vf.createBNode("b" + first), predicate,
+                vf.createBNode("b" + second)));
+        graph.add(vf.createStatement(vf.createBNode("b" + second), predicate,
+                vf.createBNode("b" + first)));
+    }
+
+    //Renames the blank nodes in a random order and shuffles the statements
+    private List<Statement> relabel(List<Statement> graph, int size, long seed) {
+        Random random = new Random(seed);
+        List<Integer> labels = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++) {
+            labels.add(i);
+        }
+        Collections.shuffle(labels, random);
+        List<Statement> relabeled = new ArrayList<Statement>();
+        for (Statement st : graph) {
+            relabeled.add(vf.createStatement(
+                    (Resource) relabel(st.getSubject(), labels),
+                    st.getPredicate(), relabel(st.getObject(), labels)));
+        }
+        Collections.shuffle(relabeled, random);
+        return relabeled;
+    }
+
+    private Value relabel(Value value, List<Integer> labels) {
+        if (!(value instanceof BNode)) {
+            return value;
+        }
+        String id = ((BNode) value).getID();
+        int index = Integer.parseInt(id.substring(1));
+        return vf.createBNode("x" + id.charAt(0) + labels.get(index));
+    }
+
+    private GraphCanonicalizer canonicalize(List<Statement> graph) {
+        GraphCanonicalizer canonicalizer = new GraphCanonicalizer();
+        for (Statement st : graph) {
+            canonicalizer.handleStatement(st);
+        }
+        return canonicalizer;
+    }
+}
@@ -0,0 +1,162 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.commons.io.FileUtils;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Tests the output of each named graph to a file of its own
+ */
+public class GraphOutputsTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    private final URI predicate = vf.createURI("http://example.com/p");
+    private File directory;
+
+    public GraphOutputsTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(GraphOutputsTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("graphs-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    public void testAppendedGraphs() throws Exception {
+        //Three graphs written in turn, two files open at once
+        FileDataset dataset = new FileDataset(
+                new File(directory, "out.nq").getPath(), "nquads");
+        dataset.setGraphOutputs(2);
+        write(dataset, 3, 90);
+        dataset.closeRepository();
+        assertEquals(100, dataset.getSize());
+
+        //The default graph stays in the target
+        List<Statement> defaultGraph =
+                parse(new File(directory, "out.nq"), RDFFormat.NQUADS, false);
+        assertEquals(10, defaultGraph.size());
+        for (Statement st : defaultGraph) {
+            assertNull(st.getContext());
+        }
+        //A graph reopened is appended to its file
+        List<String> manifest = FileUtils.readLines(
+                new File(directory, "out.nq.manifest"), "UTF-8");
+        assertEquals(4, manifest.size());
+        for (int graph = 0; graph < 3; graph++) {
+            File file = new File(directory, "out-" + graph + "-0.nq");
+            List<Statement> statements = parse(file, RDFFormat.NQUADS, false);
+            assertEquals(30, statements.size());
+            for (Statement st : statements) {
+                assertEquals(graph(graph), st.getContext());
+            }
+            assertEquals(file.getName() + "\t" + graph(graph).stringValue() + "\t30",
+                    manifest.get(graph + 1));
+        }
+        //The target, its manifest and a file per graph
+        assertEquals(5, directory.list().length);
+    }
+
+    public void testGraphParts() throws Exception {
+        //A graph reopened continues in a new part for Turtle
+        FileDataset dataset = new FileDataset(
+                new File(directory, "out.ttl").getPath(), "turtle");
+        dataset.setGraphOutputs(1);
+        write(dataset, 2, 12);
+        dataset.closeRepository();
+
+        List<String> manifest = FileUtils.readLines(
+                new File(directory, "out.ttl.manifest"), "UTF-8");
+        assertEquals(13, manifest.size());
+        int[] triples = new int[2];
+        for (String line : manifest.subList(1, manifest.size())) {
+            String[] fields = line.split("\t");
+            assertTrue(fields[0], fields[0].matches("out-[01]-[0-5]\\.ttl"));
+            int graph = Integer.parseInt(fields[0].split("-")[1]);
+            assertEquals(graph(graph).stringValue(), fields[1]);
+            assertEquals("1", fields[2]);
+            triples[graph] += parse(new File(directory, fields[0]),
+                    RDFFormat.TURTLE, false).size();
+        }
+        assertEquals(6, triples[0]);
+        assertEquals(6, triples[1]);
+    }
+
+    public void testCompressedGraphs() throws Exception {
+        //The members appended to a gzip file are read as one
+        FileDataset dataset = new FileDataset(
+                new File(directory, "out.nq.gz").getPath(), "nquads");
+        dataset.setGraphOutputs(1);
+        write(dataset, 2, 40);
+        dataset.closeRepository();
+        assertEquals(10, parse(new File(directory, "out.nq.gz"),
+                RDFFormat.NQUADS, true).size());
+        for (int graph = 0; graph < 2; graph++) {
+            List<Statement> statements = parse(new File(directory,
+                    "out-" + graph + "-0.nq.gz"), RDFFormat.NQUADS, true);
+            assertEquals(20, statements.size());
+            for (Statement st : statements) {
+                assertEquals(graph(graph), st.getContext());
+            }
+        }
+    }
+
+    //The named graphs in turn, then ten statements of the default graph
+    private void write(FileDataset dataset, int graphs, int statements) {
+        for (int i = 0; i < statements; i++) {
+            dataset.add(vf.createURI("http://example.com/s" + i), predicate,
+                    vf.createLiteral(i), graph(i % graphs));
+        }
+        for (int i = 0; i < 10; i++) {
+            dataset.add(vf.createURI("http://example.com/d" + i), predicate,
+                    vf.createLiteral(i));
+        }
+    }
+
+    private URI graph(int graph) {
+        return vf.createURI("http://example.com/g" + graph);
+    }
+
+    private List<Statement> parse(File file, RDFFormat format, boolean compressed)
+            throws Exception {
+        List<Statement> statements = new ArrayList<Statement>();
+        RDFParser parser = Rio.createParser(format);
+        parser.setRDFHandler(new StatementCollector(statements));
+        InputStream input = new FileInputStream(file);
+        if (compressed) {
+            input = new GZIPInputStream(input);
+        }
+        try {
+            parser.parse(input, "http://example.com/");
+        } finally {
+            input.close();
+        }
+        return statements;
+    }
+}
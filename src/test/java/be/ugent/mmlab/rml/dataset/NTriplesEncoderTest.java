@@ -0,0 +1,115 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+
+/**
+ * Compares the output of the N-Triples encoder to the one of the Rio writers
+ */
+public class NTriplesEncoderTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    //Printable ASCII, non-ASCII text, control characters, DEL,
+    //a surrogate pair and unpaired surrogates
+    private static final String[] LABELS = {
+        "plain",
+        "caf\u00e9 \u4e2d\u6587 \u00ff\u0080\uffff",
+        "tab\tnewline\nreturn\r\u0000\u0001\u000b\u000c\u001f",
+        "del\u007f",
+        "pair\ud83d\ude00",
+        "high\ud83d",
+        "low\ude00end",
+        "quote\" backslash\\",
+        ""
+    };
+
+    public NTriplesEncoderTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(NTriplesEncoderTest.class);
+    }
+
+    public void testNTriples() throws Exception {
+        assertSameBytes(RDFFormat.NTRIPLES, statements());
+    }
+
+    public void testNQuads() throws Exception {
+        assertSameBytes(RDFFormat.NQUADS, statements());
+    }
+
+    public void testInternedTerms() throws Exception {
+        //The encodings kept by the terms are the ones written in place
+        TermDictionary dictionary = new TermDictionary(1000);
+        Statement[] statements = statements();
+        for (int i = 0; i < statements.length; i++) {
+            Statement st = statements[i];
+            Resource context = st.getContext();
+            statements[i] = vf.createStatement(
+                    (Resource) dictionary.intern(st.getSubject()),
+                    (URI) dictionary.intern(st.getPredicate()),
+                    dictionary.intern(st.getObject()),
+                    context == null ? null : (Resource) dictionary.intern(context));
+        }
+        assertSameBytes(RDFFormat.NQUADS, statements);
+        assertSameBytes(RDFFormat.NQUADS, statements);
+    }
+
+    private Statement[] statements() {
+        Statement[] statements = new Statement[LABELS.length * 5];
+        URI predicate = vf.createURI("http://example.com/p");
+        URI graph = vf.createURI("http://example.com/graph/\u00e9");
+        int i = 0;
+        for (String label : LABELS) {
+            URI subject = vf.createURI("http://example.com/" + label);
+            Value[] objects = {
+                vf.createLiteral(label),
+                vf.createLiteral(label, "en"),
+                vf.createLiteral(label, vf.createURI("http://example.com/type/" + label)),
+                vf.createLiteral(label, XMLSchema.STRING),
+                vf.createBNode("b" + i)
+            };
+            for (Value object : objects) {
+                statements[i] = (i % 2 == 0)
+                        ? vf.createStatement(subject, predicate, object)
+                        : vf.createStatement(subject, predicate, object, graph);
+                i++;
+            }
+        }
+        return statements;
+    }
+
+    private void assertSameBytes(RDFFormat format, Statement[] statements)
+            throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        RDFWriter rio = Rio.createWriter(format, expected);
+        RDFWriter encoder = new NTriplesEncoder(actual, format);
+        rio.startRDF();
+        encoder.startRDF();
+        for (Statement st : statements) {
+            rio.handleStatement(st);
+            encoder.handleStatement(st);
+        }
+        rio.endRDF();
+        encoder.endRDF();
+        assertTrue(new String(actual.toByteArray(), "UTF-8"),
+                Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+    }
+}
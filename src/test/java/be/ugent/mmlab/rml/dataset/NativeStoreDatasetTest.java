@@ -0,0 +1,145 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryResult;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.nativerdf.NativeStore;
+
+/**
+ * Tests the bulk load into the native store
+ */
+public class NativeStoreDatasetTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    private final URI predicate = vf.createURI("http://example.com/p");
+    private final URI graph = vf.createURI("http://example.com/g");
+
+    private File dataDir;
+
+    public NativeStoreDatasetTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(NativeStoreDatasetTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        dataDir = Files.createTempDirectory("native-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(dataDir);
+    }
+
+    public void testBulkLoad() throws Exception {
+        //Batches and transactions smaller than the statements
+        NativeStoreDataset dataset = createDataset();
+        Set<Statement> expected = new HashSet<Statement>();
+        for (int i = 99; i >= 0; i--) {
+            URI subject = vf.createURI("http://example.com/s" + (i % 60));
+            if (i % 2 == 0) {
+                dataset.add(subject, predicate, vf.createLiteral(i % 60));
+                expected.add(vf.createStatement(subject, predicate,
+                        vf.createLiteral(i % 60)));
+            } else {
+                dataset.add(subject, predicate, vf.createLiteral(i % 60), graph);
+                expected.add(vf.createStatement(subject, predicate,
+                        vf.createLiteral(i % 60), graph));
+            }
+        }
+        //The duplicates are counted, not stored
+        assertEquals(expected.size(), dataset.getSize());
+        assertEquals(100 - expected.size(),
+                dataset.getStatistics().getDuplicates());
+        assertEquals(2, dataset.getStatistics().getGraphCounts().size());
+        dataset.closeRepository();
+        assertEquals(expected.size(), dataset.getSize());
+        //The statements compare without their graphs
+        Set<Statement> stored = read();
+        assertEquals(expected, stored);
+        for (Statement st : stored) {
+            int number = Integer.parseInt(st.getObject().stringValue());
+            assertEquals((number % 2 == 0) ? null : graph, st.getContext());
+        }
+    }
+
+    public void testExistingStore() throws Exception {
+        URI subject = vf.createURI("http://example.com/s");
+        NativeStoreDataset dataset = createDataset();
+        dataset.add(subject, predicate, vf.createLiteral("a"));
+        dataset.add(subject, predicate, vf.createLiteral("b"));
+        dataset.closeRepository();
+
+        //The statements of the store are not counted as the ones of the run
+        dataset = createDataset();
+        dataset.add(subject, predicate, vf.createLiteral("b"));
+        dataset.add(subject, predicate, vf.createLiteral("c"));
+        assertEquals(1, dataset.getSize());
+        dataset.closeRepository();
+        assertEquals(3, read().size());
+    }
+
+    public void testEmpty() throws Exception {
+        NativeStoreDataset dataset = createDataset();
+        assertEquals(0, dataset.getSize());
+        dataset.closeRepository();
+        assertEquals(0, read().size());
+    }
+
+    private NativeStoreDataset createDataset() {
+        NativeStoreDataset dataset = new NativeStoreDataset(
+                dataDir, NativeStoreDataset.DEFAULT_INDEXES);
+        dataset.setSortedBatchSize(7);
+        dataset.setTransactionSize(20);
+        return dataset;
+    }
+
+    //Opens the store again, as it is left on disk
+    private Set<Statement> read() throws Exception {
+        SailRepository repository = new SailRepository(new NativeStore(dataDir));
+        repository.initialize();
+        Set<Statement> statements = new HashSet<Statement>();
+        try {
+            RepositoryConnection con = repository.getConnection();
+            try {
+                RepositoryResult<Statement> result =
+                        con.getStatements(null, null, null, false);
+                while (result.hasNext()) {
+                    statements.add(result.next());
+                }
+                result.close();
+            } finally {
+                con.close();
+            }
+        } finally {
+            repository.shutDown();
+        }
+        return statements;
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,82 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads the output of the parallel gzip stream back with the JDK's gzip
+ */
+public class ParallelGzipOutputStreamTest
+        extends TestCase {
+
+    public ParallelGzipOutputStreamTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ParallelGzipOutputStreamTest.class);
+    }
+
+    public void testBlocks() throws Exception {
+        //Lines of N-Triples over many blocks, on several threads
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(3);
+        while (text.length() < 1024 * 1024) {
+            text.append("<http://example.com/s").append(random.nextInt(1000))
+                    .append("> <http://example.com/p> \"")
+                    .append(random.nextLong()).append("\" .\n");
+        }
+        byte[] data = text.toString().getBytes("UTF-8");
+        for (int level : new int[]{1, 6, 9}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ParallelGzipOutputStream gzip =
+                    new ParallelGzipOutputStream(out, level, 32 * 1024, 4);
+            //Writes of any size, across the blocks
+            int position = 0;
+            boolean flushed = false;
+            while (position < data.length) {
+                if (random.nextInt(4) == 0) {
+                    gzip.write(data[position++]);
+                } else {
+                    int count = Math.min(data.length - position, random.nextInt(70000));
+                    gzip.write(data, position, count);
+                    position += count;
+                }
+                if (!flushed && position >= data.length / 2) {
+                    gzip.flush();
+                    flushed = true;
+                }
+            }
+            gzip.close();
+            byte[] compressed = out.toByteArray();
+            assertTrue(compressed.length < data.length / 2);
+            assertTrue("Level " + level, Arrays.equals(data, gunzip(compressed)));
+        }
+    }
+
+    public void testEmpty() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, 6);
+        gzip.close();
+        //Closed once
+        gzip.close();
+        assertEquals(0, gunzip(out.toByteArray()).length);
+    }
+
+    private byte[] gunzip(byte[] compressed) throws IOException {
+        GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        try {
+            return IOUtils.toByteArray(input);
+        } finally {
+            input.close();
+        }
+    }
+}
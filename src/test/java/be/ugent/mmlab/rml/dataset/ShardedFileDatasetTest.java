@@ -0,0 +1,135 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.commons.io.FileUtils;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Tests the sharded, rolling file output and its manifest
+ */
+public class ShardedFileDatasetTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    private final URI predicate = vf.createURI("http://example.com/p");
+    private File directory;
+
+    public ShardedFileDatasetTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ShardedFileDatasetTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("sharded-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    public void testShardsAndRollover() throws Exception {
+        File target = new File(directory, "out.nt");
+        ShardedFileDataset dataset =
+                new ShardedFileDataset(target.getPath(), "ntriples", 3);
+        dataset.setRollover(10, 0);
+        for (int i = 0; i < 100; i++) {
+            dataset.add(vf.createURI("http://example.com/s" + (i % 20)),
+                    predicate, vf.createLiteral(i));
+        }
+        dataset.closeRepository();
+        assertEquals(100, dataset.getSize());
+
+        //Each subject is written to one shard only
+        Map<String, String> shards = new HashMap<String, String>();
+        Set<Statement> statements = new HashSet<Statement>();
+        List<String> manifest = FileUtils.readLines(
+                new File(directory, "out.nt.manifest"), "UTF-8");
+        assertEquals(dataset.getFiles().size() + 1, manifest.size());
+        for (File file : dataset.getFiles()) {
+            assertTrue(file.getName(), file.getName().matches("out-[0-2]-[0-9]+\\.nt"));
+            String shard = file.getName().split("-")[1];
+            List<Statement> triples = parse(file);
+            assertTrue(triples.size() <= 10);
+            for (Statement st : triples) {
+                String previous = shards.put(st.getSubject().stringValue(), shard);
+                assertTrue(previous == null || previous.equals(shard));
+            }
+            statements.addAll(triples);
+            assertTrue(manifest.contains(file.getName() + "\t" + shard + "\t"
+                    + triples.size() + "\t" + file.length()));
+        }
+        assertEquals(100, statements.size());
+        assertEquals(20, shards.size());
+    }
+
+    public void testRolloverBytes() throws Exception {
+        File target = new File(directory, "out.nt");
+        ShardedFileDataset dataset =
+                new ShardedFileDataset(target.getPath(), "ntriples", 1);
+        dataset.setRollover(0, 100 * 1024);
+        for (int i = 0; i < 10000; i++) {
+            dataset.add(vf.createURI("http://example.com/s"), predicate,
+                    vf.createLiteral(i));
+        }
+        dataset.closeRepository();
+        //The bytes are counted as they are flushed, a file exceeds
+        //the limit by the buffer of its writer at most
+        List<File> files = dataset.getFiles();
+        assertTrue(files.size() > 1);
+        int triples = 0;
+        for (File file : files) {
+            assertTrue(file.length() <= 100 * 1024 + 64 * 1024);
+            triples += parse(file).size();
+        }
+        assertEquals(10000, triples);
+    }
+
+    public void testEmpty() throws Exception {
+        File target = new File(directory, "empty.nt");
+        ShardedFileDataset dataset =
+                new ShardedFileDataset(target.getPath(), "ntriples", 2);
+        dataset.closeRepository();
+        assertTrue(dataset.getFiles().isEmpty());
+        assertEquals("# file\tshard\ttriples\tbytes\n", FileUtils.readFileToString(
+                new File(directory, "empty.nt.manifest"), "UTF-8")
+                .replace("\r", ""));
+    }
+
+    private List<Statement> parse(File file) throws Exception {
+        List<Statement> statements = new ArrayList<Statement>();
+        RDFParser parser = Rio.createParser(RDFFormat.NTRIPLES);
+        parser.setRDFHandler(new StatementCollector(statements));
+        InputStream input = new FileInputStream(file);
+        try {
+            parser.parse(input, "");
+        } finally {
+            input.close();
+        }
+        return statements;
+    }
+}
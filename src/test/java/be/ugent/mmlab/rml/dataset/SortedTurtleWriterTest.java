@@ -0,0 +1,135 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.util.ModelUtil;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Reads the grouped Turtle and TriG output back with the Rio parsers
+ */
+public class SortedTurtleWriterTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    private final URI graph = vf.createURI("http://example.com/graph");
+
+    public SortedTurtleWriterTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(SortedTurtleWriterTest.class);
+    }
+
+    public void testTurtle() throws Exception {
+        List<Statement> statements = statements(false);
+        String output = write(RDFFormat.TURTLE, statements);
+        assertTrue(ModelUtil.equals(statements, parse(RDFFormat.TURTLE, output)));
+        //Each subject is written once
+        for (int i = 0; i < 5; i++) {
+            assertEquals(output, 1, count(output, "\nex:s" + i + " "));
+        }
+    }
+
+    public void testTriG() throws Exception {
+        List<Statement> statements = statements(true);
+        String output = write(RDFFormat.TRIG, statements);
+        assertSameGraphs(statements, parse(RDFFormat.TRIG, output));
+    }
+
+    private List<Statement> statements(boolean graphs) {
+        List<Statement> statements = new ArrayList<Statement>();
+        URI name = vf.createURI("http://example.com/name");
+        Value[] objects = {
+            vf.createLiteral("plain"),
+            vf.createLiteral("quote \" and\nnewline"),
+            vf.createLiteral("en", "en"),
+            vf.createLiteral("12", XMLSchema.INTEGER),
+            vf.createURI("http://other.org/o"),
+            vf.createBNode("b1")
+        };
+        for (int i = 0; i < 5; i++) {
+            URI subject = vf.createURI("http://example.com/s" + i);
+            Resource context = (graphs && i % 2 == 1) ? graph : null;
+            statements.add(vf.createStatement(subject, RDF.TYPE,
+                    vf.createURI("http://example.com/Person"), context));
+            for (Value object : objects) {
+                statements.add(vf.createStatement(subject, name, object, context));
+            }
+        }
+        statements.add(vf.createStatement(vf.createBNode("b1"), name,
+                vf.createLiteral("node")));
+        Collections.shuffle(statements, new Random(5));
+        return statements;
+    }
+
+    //ModelUtil compares the statements without their graph
+    private void assertSameGraphs(List<Statement> expected, List<Statement> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (Resource context : new Resource[]{null, graph}) {
+            assertTrue(String.valueOf(context), ModelUtil.equals(
+                    inGraph(expected, context), inGraph(actual, context)));
+        }
+    }
+
+    private List<Statement> inGraph(List<Statement> statements, Resource context) {
+        List<Statement> inGraph = new ArrayList<Statement>();
+        for (Statement st : statements) {
+            if ((context == null) ? st.getContext() == null
+                    : context.equals(st.getContext())) {
+                inGraph.add(st);
+            }
+        }
+        return inGraph;
+    }
+
+    //Runs of four statements, so that the sort spills
+    private String write(RDFFormat format, List<Statement> statements)
+            throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SortedTurtleWriter writer = new SortedTurtleWriter(out, format, null, 4);
+        writer.handleNamespace("ex", "http://example.com/");
+        writer.startRDF();
+        for (Statement st : statements) {
+            writer.handleStatement(st);
+        }
+        writer.endRDF();
+        return new String(out.toByteArray(), "UTF-8");
+    }
+
+    private List<Statement> parse(RDFFormat format, String output) throws Exception {
+        List<Statement> statements = new ArrayList<Statement>();
+        RDFParser parser = Rio.createParser(format);
+        parser.setRDFHandler(new StatementCollector(statements));
+        parser.parse(new ByteArrayInputStream(output.getBytes("UTF-8")), "");
+        return statements;
+    }
+
+    private int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
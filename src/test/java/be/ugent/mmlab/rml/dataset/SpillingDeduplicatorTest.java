@@ -0,0 +1,99 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Tests the duplicate suppression within a memory budget
+ */
+public class SpillingDeduplicatorTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    private final URI predicate = vf.createURI("http://example.com/p");
+    private final Resource graph = vf.createURI("http://example.com/g");
+
+    public SpillingDeduplicatorTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(SpillingDeduplicatorTest.class);
+    }
+
+    public void testSmallBudget() throws Exception {
+        //The filter is too small for the triples, some new ones
+        //are candidates and are only written once verified
+        File directory = Files.createTempDirectory("dedup-test").toFile();
+        try {
+            SpillingDeduplicator deduplicator =
+                    new SpillingDeduplicator(4096, directory);
+            List<Statement> output = new ArrayList<Statement>();
+            for (int i = 0; i < 150000; i++) {
+                offer(deduplicator, i, output);
+            }
+            for (int i = 0; i < 1000; i++) {
+                offer(deduplicator, i, output);
+            }
+            long candidates = deduplicator.getCandidates();
+            assertTrue(candidates > 1000);
+            long verified = deduplicator.finish(new StatementCollector(output));
+            assertEquals(candidates - 1000, verified);
+            assertEquals(1000, deduplicator.getDuplicates());
+            assertEquals(150000, output.size());
+
+            Set<String> distinct = new HashSet<String>();
+            for (Statement st : output) {
+                assertTrue(st.toString(), distinct.add(st + " " + st.getContext()));
+            }
+            deduplicator.close();
+            assertEquals(0, directory.list().length);
+        } finally {
+            directory.delete();
+        }
+    }
+
+    //The same triple in another graph is another statement
+    private void offer(SpillingDeduplicator deduplicator, int i,
+            List<Statement> output) {
+        Resource subject = vf.createURI("http://example.com/s" + (i / 2));
+        Value object = vf.createLiteral((i / 2) % 7);
+        Resource context = (i % 2 == 0) ? null : graph;
+        if (deduplicator.offer(subject, predicate, object, context)) {
+            output.add((context == null)
+                    ? vf.createStatement(subject, predicate, object)
+                    : vf.createStatement(subject, predicate, object, context));
+        }
+    }
+
+    public void testLargeBudget() throws Exception {
+        //The new triples are written at once
+        SpillingDeduplicator deduplicator =
+                new SpillingDeduplicator(16L * 1024 * 1024, null);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(deduplicator.offer(vf.createURI("http://example.com/s" + i),
+                    predicate, vf.createLiteral(i), null));
+        }
+        assertFalse(deduplicator.offer(vf.createURI("http://example.com/s0"),
+                predicate, vf.createLiteral(0), null));
+        List<Statement> output = new ArrayList<Statement>();
+        assertEquals(0, deduplicator.finish(new StatementCollector(output)));
+        assertEquals(1, deduplicator.getDuplicates());
+        deduplicator.close();
+    }
+}
@@ -0,0 +1,83 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Tests the external sort of the statements
+ */
+public class StatementSorterTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    private final URI predicate = vf.createURI("http://example.com/p");
+    private final URI graph = vf.createURI("http://example.com/g");
+
+    public StatementSorterTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(StatementSorterTest.class);
+    }
+
+    public void testInMemory() throws Exception {
+        StatementSorter sorter = new StatementSorter(null, 100, true);
+        URI subject = vf.createURI("http://example.com/s");
+        sorter.add(vf.createStatement(subject, predicate, vf.createLiteral("b"), graph));
+        sorter.add(vf.createStatement(subject, predicate, vf.createLiteral("a")));
+        sorter.add(vf.createStatement(subject, predicate, vf.createLiteral("b"), graph));
+        sorter.add(vf.createStatement(subject, RDF.TYPE, vf.createURI("http://example.com/T")));
+        List<Statement> sorted = replay(sorter);
+        //The default graph first, rdf:type first
+        assertEquals(3, sorted.size());
+        assertEquals(RDF.TYPE, sorted.get(0).getPredicate());
+        assertEquals(vf.createLiteral("a"), sorted.get(1).getObject());
+        assertEquals(graph, sorted.get(2).getContext());
+    }
+
+    public void testMultiPassMerge() throws Exception {
+        //Two statements per run, more runs than are merged in one pass
+        File directory = Files.createTempDirectory("sorter-test").toFile();
+        try {
+            StatementSorter sorter = new StatementSorter(directory, 2, false);
+            for (int i = 299; i >= 0; i--) {
+                sorter.add(statement(i % 200));
+            }
+            List<Statement> sorted = replay(sorter);
+            assertEquals(200, sorted.size());
+            for (int i = 0; i < sorted.size(); i++) {
+                assertEquals(statement(i), sorted.get(i));
+            }
+            //The runs are deleted
+            assertEquals(0, directory.list().length);
+        } finally {
+            directory.delete();
+        }
+    }
+
+    //The subjects sort as their numbers
+    private Statement statement(int i) {
+        return vf.createStatement(vf.createURI(
+                String.format("http://example.com/s%03d", i)),
+                predicate, vf.createLiteral(i));
+    }
+
+    private List<Statement> replay(StatementSorter sorter) throws Exception {
+        List<Statement> statements = new ArrayList<Statement>();
+        sorter.replay(new StatementCollector(statements));
+        return statements;
+    }
+}
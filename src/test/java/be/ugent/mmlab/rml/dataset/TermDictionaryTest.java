@@ -0,0 +1,96 @@
+package be.ugent.mmlab.rml.dataset;
+
+import java.util.Arrays;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+/**
+ * Tests the interning of the terms of a run
+ */
+public class TermDictionaryTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    public TermDictionaryTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TermDictionaryTest.class);
+    }
+
+    public void testInterning() {
+        TermDictionary dictionary = new TermDictionary(1000);
+        URI first = dictionary.uri("http://example.com/p");
+        assertSame(first, dictionary.uri("http://example.com/p"));
+        assertSame(first, dictionary.intern(vf.createURI("http://example.com/p")));
+
+        Value[] literals = {
+            vf.createLiteral("x"),
+            vf.createLiteral("x", "en"),
+            vf.createLiteral("x", XMLSchema.INTEGER)
+        };
+        for (Value literal : literals) {
+            Value interned = dictionary.intern(literal);
+            assertEquals(literal, interned);
+            assertSame(interned, dictionary.intern(literal));
+        }
+        //The datatypes are interned too
+        assertSame(dictionary.uri(XMLSchema.INTEGER.stringValue()),
+                ((Literal) dictionary.intern(literals[2])).getDatatype());
+        BNode node = vf.createBNode();
+        assertSame(node, dictionary.intern(node));
+        assertTrue(dictionary.getHits() > 0);
+    }
+
+    public void testLongTerms() {
+        TermDictionary dictionary = new TermDictionary(1000);
+        char[] chars = new char[TermDictionary.MAX_TERM_LENGTH + 1];
+        Arrays.fill(chars, 'a');
+        String label = new String(chars);
+        Value literal = vf.createLiteral(label);
+        assertSame(literal, dictionary.intern(literal));
+        String iri = "http://example.com/" + label;
+        assertEquals(iri, dictionary.uri(iri).stringValue());
+        assertNotSame(dictionary.uri(iri), dictionary.uri(iri));
+    }
+
+    public void testGenerations() {
+        //The recurring term stays while the others are dropped
+        TermDictionary dictionary = new TermDictionary(4);
+        URI recurring = dictionary.uri("http://example.com/recurring");
+        URI dropped = dictionary.uri("http://example.com/0");
+        for (int i = 1; i < 100; i++) {
+            dictionary.uri("http://example.com/" + i);
+            assertSame(recurring, dictionary.uri("http://example.com/recurring"));
+        }
+        assertNotSame(dropped, dictionary.uri("http://example.com/0"));
+        assertEquals(dropped, dictionary.uri("http://example.com/0"));
+    }
+
+    public void testDataset() {
+        StdRMLDataset dataset = new StdRMLDataset(false);
+        //Without a dictionary nothing is interned
+        URI uri = TermDictionary.of(dataset).uri("http://example.com/s");
+        assertNotSame(uri, TermDictionary.of(dataset).uri("http://example.com/s"));
+
+        TermDictionary dictionary = new TermDictionary(1000);
+        dataset.setTermDictionary(dictionary);
+        assertSame(dictionary, TermDictionary.of(dataset));
+        uri = TermDictionary.of(dataset).uri("http://example.com/s");
+        assertSame(uri, TermDictionary.of(dataset).uri("http://example.com/s"));
+        dataset.setTermDictionary(null);
+        assertNotSame(dictionary, TermDictionary.of(dataset));
+        assertNotSame(dictionary, TermDictionary.of(null));
+        dataset.closeRepository();
+    }
+}
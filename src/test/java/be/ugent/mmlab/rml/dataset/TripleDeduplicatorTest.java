@@ -0,0 +1,103 @@
+package be.ugent.mmlab.rml.dataset;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+/**
+ * Tests the duplicate suppression of the triples added to a dataset
+ */
+public class TripleDeduplicatorTest
+        extends TestCase {
+
+    private static final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    private final Resource subject = vf.createURI("http://example.com/s");
+    private final URI predicate = vf.createURI("http://example.com/p");
+
+    public TripleDeduplicatorTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TripleDeduplicatorTest.class);
+    }
+
+    public void testDuplicates() {
+        TripleDeduplicator deduplicator = new TripleDeduplicator();
+        Value object = vf.createLiteral("o");
+        assertTrue(deduplicator.add(subject, predicate, object, null));
+        assertFalse(deduplicator.add(subject, predicate, object, null));
+        //The same triple is kept once per graph
+        assertTrue(deduplicator.add(subject, predicate, object,
+                vf.createURI("http://example.com/g")));
+        assertEquals(2, deduplicator.size());
+        assertEquals(1, deduplicator.getDuplicates());
+    }
+
+    public void testOffHeap() {
+        TripleDeduplicator deduplicator = new TripleDeduplicator(true, 16);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(deduplicator.add(subject, predicate,
+                    vf.createLiteral(i), null));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(deduplicator.add(subject, predicate,
+                    vf.createLiteral(i), null));
+        }
+        assertEquals(1000, deduplicator.size());
+    }
+
+    public void testTermKinds() {
+        //Terms which print alike are different terms
+        Value[] objects = {
+            vf.createURI("_:x"),
+            vf.createBNode("x"),
+            vf.createLiteral("x"),
+            vf.createLiteral("x", XMLSchema.INTEGER),
+            vf.createLiteral("x", "en"),
+            vf.createLiteral("x", vf.createURI("http://example.com/en")),
+            vf.createLiteral("_:x")
+        };
+        TripleDeduplicator deduplicator = new TripleDeduplicator();
+        for (Value object : objects) {
+            assertTrue(object.toString(),
+                    deduplicator.add(subject, predicate, object, null));
+        }
+        assertEquals(0, deduplicator.getDuplicates());
+        //A plain literal is an xsd:string
+        assertFalse(deduplicator.add(subject, predicate,
+                vf.createLiteral("x", XMLSchema.STRING), null));
+    }
+
+    public void testDataset() {
+        StdRMLDataset dataset = new StdRMLDataset(false);
+        TripleDeduplicator deduplicator = new TripleDeduplicator();
+        dataset.setTripleDeduplicator(deduplicator);
+        Value object = vf.createLiteral("o");
+        Resource first = vf.createURI("http://example.com/g1");
+        Resource second = vf.createURI("http://example.com/g2");
+        Resource third = vf.createURI("http://example.com/g3");
+        dataset.add(subject, predicate, object);
+        dataset.add(subject, predicate, object);
+        dataset.add(subject, predicate, object, first, second);
+        //Only the graph the triple is new in is added
+        dataset.add(subject, predicate, object, second, third);
+        assertEquals(4, dataset.getSize());
+        assertEquals(2, deduplicator.getDuplicates());
+        //The suppressed triples never reach the dataset
+        assertEquals(0, dataset.getStatistics().getDuplicates());
+
+        dataset.setTripleDeduplicator(null);
+        dataset.add(subject, predicate, object);
+        assertEquals(4, dataset.getSize());
+        assertEquals(1, dataset.getStatistics().getDuplicates());
+        dataset.closeRepository();
+    }
+}
@@ -0,0 +1,58 @@
+package be.ugent.mmlab.rml.join;
+
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the false negatives and positives of the join Bloom filter
+ */
+public class BloomFilterTest
+        extends TestCase {
+
+    public BloomFilterTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(BloomFilterTest.class);
+    }
+
+    public void testFalsePositiveRate() {
+        Random random = new Random(7);
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        long[] keys = new long[10000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+            filter.add(keys[i]);
+        }
+        assertEquals(keys.length, filter.getInsertions());
+        //No key which was added is rejected
+        for (long key : keys) {
+            assertTrue(filter.mightContain(key));
+        }
+        assertEquals(0, filter.getRejections());
+
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                filter.recordFalsePositive();
+            }
+        }
+        double expected = filter.getExpectedFalsePositiveRate();
+        assertEquals(0.01, expected, 0.005);
+        assertEquals(expected, filter.getObservedFalsePositiveRate(), 0.005);
+        assertEquals(100000, filter.getRejections() + filter.getFalsePositives());
+    }
+
+    public void testSmallFilter() {
+        //The filter has at least a word and a hash
+        BloomFilter filter = new BloomFilter(0, 0.5);
+        assertEquals(64, filter.getNumBits());
+        assertTrue(filter.getHashes() >= 1);
+        assertFalse(filter.mightContain(1));
+        filter.add(1);
+        assertTrue(filter.mightContain(1));
+        assertEquals(0, new BloomFilter(10, 0.1).getObservedFalsePositiveRate(), 0);
+    }
+}
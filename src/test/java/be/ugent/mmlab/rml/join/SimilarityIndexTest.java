@@ -0,0 +1,93 @@
+package be.ugent.mmlab.rml.join;
+
+import info.debatty.java.stringsimilarity.Jaccard;
+import info.debatty.java.stringsimilarity.Levenshtein;
+import java.util.Collection;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests that the blocking indexes of the metric joins miss no match
+ */
+public class SimilarityIndexTest
+        extends TestCase {
+
+    private static final String[] VALUES = randomValues(500);
+
+    public SimilarityIndexTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(SimilarityIndexTest.class);
+    }
+
+    public void testBKTree() {
+        Levenshtein levenshtein = new Levenshtein();
+        for (double maxDistance : new double[]{0, 1, 2}) {
+            BKTree tree = new BKTree(levenshtein, maxDistance);
+            fill(tree);
+            int largest = 0;
+            for (String value : VALUES) {
+                Collection<Integer> candidates = tree.candidates(value);
+                for (int id = 0; id < VALUES.length; id++) {
+                    if (levenshtein.distance(value, VALUES[id]) <= maxDistance) {
+                        assertTrue(value + " " + VALUES[id], candidates.contains(id));
+                    }
+                }
+                largest = Math.max(largest, candidates.size());
+            }
+            //The tree prunes the values out of reach
+            assertTrue(largest < VALUES.length);
+        }
+    }
+
+    public void testQGramIndex() {
+        Jaccard jaccard = new Jaccard(2);
+        for (double maxDistance : new double[]{0, 0.3, 0.6}) {
+            QGramIndex index = new QGramIndex(jaccard, maxDistance);
+            fill(index);
+            int largest = 0;
+            for (String value : VALUES) {
+                Collection<Integer> candidates = index.candidates(value);
+                for (int id = 0; id < VALUES.length; id++) {
+                    if (jaccard.distance(value, VALUES[id]) <= maxDistance) {
+                        assertTrue(value + " " + VALUES[id], candidates.contains(id));
+                    }
+                }
+                largest = Math.max(largest, candidates.size());
+            }
+            assertTrue(largest < VALUES.length);
+        }
+        //Every value is within the distance 1
+        QGramIndex index = new QGramIndex(jaccard, 1);
+        fill(index);
+        assertEquals(VALUES.length, index.candidates("zz").size());
+    }
+
+    //The memory grows with the values
+    private void fill(SimilarityIndex index) {
+        long memory = index.getMemoryUsage();
+        for (int id = 0; id < VALUES.length; id++) {
+            index.add(VALUES[id], id);
+            assertTrue(index.getMemoryUsage() > memory);
+            memory = index.getMemoryUsage();
+        }
+    }
+
+    //Short words of few letters, so that many are close to each other
+    private static String[] randomValues(int size) {
+        Random random = new Random(42);
+        String[] values = new String[size];
+        for (int i = 0; i < size; i++) {
+            char[] chars = new char[3 + random.nextInt(6)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) ('a' + random.nextInt(5));
+            }
+            values[i] = new String(chars);
+        }
+        return values;
+    }
+}
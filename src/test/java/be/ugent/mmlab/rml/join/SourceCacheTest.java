@@ -0,0 +1,65 @@
+package be.ugent.mmlab.rml.join;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the eviction of the cached parent sources
+ */
+public class SourceCacheTest
+        extends TestCase {
+
+    public SourceCacheTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(SourceCacheTest.class);
+    }
+
+    public void testMaxEntries() {
+        SourceCache<String> cache = new SourceCache<String>(2, 1000);
+        cache.put("a", "A", 10);
+        cache.put("b", "B", 10);
+        //a is used again, so b is the least recently used
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C", 10);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.75, cache.getHitRatio(), 1e-9);
+    }
+
+    public void testMaxBytes() {
+        SourceCache<String> cache = new SourceCache<String>(100, 100);
+        cache.put("a", "A", 40);
+        cache.put("b", "B", 40);
+        cache.put("c", "C", 40);
+        assertEquals(2, cache.size());
+        assertEquals(80, cache.getBytes());
+        assertNull(cache.get("a"));
+        //A replaced value is counted once
+        cache.put("b", "B2", 20);
+        assertEquals(60, cache.getBytes());
+        assertEquals("B2", cache.get("b"));
+        //A value larger than the cache is not cached
+        cache.put("d", "D", 101);
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    public void testDisabled() {
+        SourceCache<String> cache = new SourceCache<String>(0, 100);
+        cache.put("a", "A", 1);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getHitRatio(), 1e-9);
+    }
+}